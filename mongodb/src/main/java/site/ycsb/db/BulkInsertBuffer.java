@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import site.ycsb.measurements.Measurements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers inserts per target collection. Each buffer is written with a single
+ * unordered <code>insertMany</code> once it holds <code>batchSize</code>
+ * documents or, if a byte limit is set, <code>batchBytes</code> bytes of BSON.
+ * <p>
+ * Not thread safe, every thread writing documents uses its own buffer.
+ * </p>
+ *
+ * @param <T> The document type, {@link Document} or {@link RawBsonDocument}.
+ */
+final class BulkInsertBuffer<T> {
+
+  /** The options to use for inserting many documents. */
+  private static final InsertManyOptions INSERT_UNORDERED = new InsertManyOptions().ordered(false);
+
+  /** The class of the buffered documents. */
+  private final Class<T> documentClass;
+
+  /** Codec used to size documents when a byte limit is set. */
+  private final Codec<T> codec;
+
+  /** The number of documents that triggers a flush of a collection's buffer. */
+  private final int batchSize;
+
+  /** The BSON size that triggers a flush of a collection's buffer, 0 to disable. */
+  private final long batchBytes;
+
+  /** The pending documents per collection name. */
+  private final Map<String, Batch<T>> batches = new HashMap<String, Batch<T>>();
+
+  /** Reused to size documents. */
+  private final BasicOutputBuffer sizingBuffer = new BasicOutputBuffer();
+
+  /** The operation name the insertMany latencies are measured under, or null. */
+  private final String measurementName;
+
+  /**
+   * @param documentClass The class of the buffered documents.
+   * @param batchSize     The number of documents per insertMany.
+   * @param batchBytes    The maximum BSON bytes per insertMany, 0 for no limit.
+   */
+  BulkInsertBuffer(Class<T> documentClass, int batchSize, long batchBytes) {
+    this(documentClass, batchSize, batchBytes, null);
+  }
+
+  /**
+   * @param documentClass   The class of the buffered documents.
+   * @param batchSize       The number of documents per insertMany.
+   * @param batchBytes      The maximum BSON bytes per insertMany, 0 for no limit.
+   * @param measurementName The operation name to measure every insertMany under,
+   *                        null to not measure.
+   */
+  BulkInsertBuffer(Class<T> documentClass, int batchSize, long batchBytes, String measurementName) {
+    this.documentClass = documentClass;
+    this.codec = MongoClient.getDefaultCodecRegistry().get(documentClass);
+    this.batchSize = batchSize;
+    this.batchBytes = batchBytes;
+    this.measurementName = measurementName;
+  }
+
+  /**
+   * Adds a document to the buffer of its collection and flushes that buffer if
+   * it is full.
+   *
+   * @param database       The database to write to.
+   * @param collectionName The collection the document belongs to.
+   * @param document       The document to insert.
+   * @return The number of documents written to the database by this call.
+   */
+  int add(MongoDatabase database, String collectionName, T document) {
+    Batch<T> batch = batches.get(collectionName);
+    if (batch == null) {
+      batch = new Batch<T>();
+      batches.put(collectionName, batch);
+    }
+
+    batch.documents.add(document);
+    if (batchBytes > 0) {
+      batch.bytes += sizeOf(document);
+    }
+
+    if (batch.documents.size() >= batchSize || (batchBytes > 0 && batch.bytes >= batchBytes)) {
+      return flush(database, collectionName, batch);
+    }
+    return 0;
+  }
+
+  /**
+   * Writes all pending documents.
+   *
+   * @param database The database to write to.
+   * @return The number of documents written.
+   */
+  int flushAll(MongoDatabase database) {
+    int written = 0;
+    for (Map.Entry<String, Batch<T>> entry : batches.entrySet()) {
+      written += flush(database, entry.getKey(), entry.getValue());
+    }
+    return written;
+  }
+
+  /**
+   * @return The number of pending documents over all collections.
+   */
+  int size() {
+    int size = 0;
+    for (Batch<T> batch : batches.values()) {
+      size += batch.documents.size();
+    }
+    return size;
+  }
+
+  private int flush(MongoDatabase database, String collectionName, Batch<T> batch) {
+    int count = batch.documents.size();
+    if (count == 0) {
+      return 0;
+    }
+
+    long st = System.nanoTime();
+    try {
+      database.getCollection(collectionName, documentClass).insertMany(batch.documents, INSERT_UNORDERED);
+      if (measurementName != null) {
+        Measurements.getMeasurements().measure(measurementName, (int) ((System.nanoTime() - st) / 1000));
+      }
+    } finally {
+      batch.documents.clear();
+      batch.bytes = 0;
+    }
+    return count;
+  }
+
+  private long sizeOf(T document) {
+    if (document instanceof RawBsonDocument) {
+      return ((RawBsonDocument) document).getByteBuffer().remaining();
+    }
+
+    sizingBuffer.truncateToPosition(0);
+    codec.encode(new BsonBinaryWriter(sizingBuffer), document, EncoderContext.builder().build());
+    return sizingBuffer.getPosition();
+  }
+
+  /** The pending documents of one collection. */
+  private static final class Batch<T> {
+    private final List<T> documents = new ArrayList<T>();
+    private long bytes;
+  }
+}
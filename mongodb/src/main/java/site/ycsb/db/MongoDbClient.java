@@ -24,7 +24,11 @@
  */
 package site.ycsb.db;
 
+import com.mongodb.Block;
+import com.mongodb.ConnectionString;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoClientURI;
 import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
@@ -37,29 +41,61 @@ import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.ConnectionPoolListener;
+import com.mongodb.reactivestreams.client.MongoClients;
 import site.ycsb.ByteArrayByteIterator;
 import site.ycsb.ByteIterator;
 import site.ycsb.DB;
 import site.ycsb.DBException;
 import site.ycsb.Status;
+import site.ycsb.measurements.Measurements;
+import site.ycsb.db.RUBiS.AsyncPlans;
+import site.ycsb.db.RUBiS.AsyncQueryPlan;
+import site.ycsb.db.RUBiS.AsyncQueryPlan.Callback;
+import site.ycsb.db.RUBiS.DataModel;
 import site.ycsb.db.RUBiS.DataModel.DocumentGenerator;
+import site.ycsb.db.RUBiS.DataModel.RecordFactory;
+import site.ycsb.db.RUBiS.ExplainSampler;
+import site.ycsb.db.RUBiS.IdRange.EmptyRangeException;
+import site.ycsb.db.RUBiS.IndexProvisioner;
+import site.ycsb.db.RUBiS.JoinExecutor;
+import site.ycsb.db.RUBiS.OperationContext;
+import site.ycsb.db.RUBiS.PlanProjection;
+import site.ycsb.db.RUBiS.QueryPlan;
+import site.ycsb.db.RUBiS.QueryPlans;
+import site.ycsb.db.RUBiS.RawDocumentGenerator;
+import site.ycsb.db.RUBiS.ResultConsumer;
+import site.ycsb.db.RUBiS.ResultConsumer.Mode;
+import site.ycsb.db.RUBiS.ResultConsumer.VerificationException;
+import site.ycsb.db.RUBiS.RubisCache;
+import site.ycsb.db.RUBiS.UpdatePropagation;
+import site.ycsb.db.RUBiS.UserChooser;
+import site.ycsb.db.RUBiS.WireStats;
 import site.ycsb.db.RUBiS.WorkloadModel;
 import site.ycsb.db.RUBiS.WorkloadModel.WorkloadGenerator;
 import site.ycsb.db.*;
 
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.types.Binary;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -89,9 +125,15 @@ public class MongoDbClient extends DB {
    */
   private static String databaseName;
 
-  /** The database name to access. */
+  /** The database name to access, on the first client. */
   private static MongoDatabase database;
 
+  /** The database per client, the first one is {@link #database}. */
+  private static MongoDatabase[] databases;
+
+  /** The database of the client this thread is assigned to. */
+  private MongoDatabase clientDatabase;
+
   /**
    * Count the number of times initialized to teardown on the last
    * {@link #cleanup()}.
@@ -99,18 +141,33 @@ public class MongoDbClient extends DB {
   private static final AtomicInteger INIT_COUNT = new AtomicInteger(0);
 
   /**
-   * Singleton data generator instance
+   * Hands out a thread index to every instance, used to partition the users to
+   * generate when the keys do not carry a user id.
+   */
+  private static final AtomicInteger THREAD_INDEX = new AtomicInteger(0);
+
+  /** Assigns the client threads to the clients round-robin. */
+  private static final AtomicInteger CLIENT_INDEX = new AtomicInteger(0);
+
+  /**
+   * Data generator of this client thread.
    **/
-  private final DocumentGenerator dataGen = DocumentGenerator.getInstance();
+  private DocumentGenerator dataGen;
 
   /**
-   * Singleton workload generator instance
+   * Workload generator of this client thread.
    **/
-  private final WorkloadGenerator workloadGen = WorkloadGenerator.getInstance();
+  private WorkloadGenerator workloadGen;
 
-  /** A singleton Mongo instance. */
+  /** The RUBiS query plans per operation name, of the model given by rubis.model. */
+  private static Map<String, QueryPlan> queryPlans;
+
+  /** The first of {@link #mongoClients}, used by the explain sampler. */
   private static MongoClient mongoClient;
 
+  /** The independent clients given by mongodb.clients, each with its own pool. */
+  private static MongoClient[] mongoClients;
+
   /** The default read preference for the test. */
   private static ReadPreference readPreference;
 
@@ -126,22 +183,140 @@ public class MongoDbClient extends DB {
   /** The bulk inserts pending for the thread. */
   private final List<Document> bulkInserts = new ArrayList<Document>();
 
+  /** If true then RUBiS records are encoded directly as RawBsonDocument. */
+  private static boolean rawBson;
+
+  /** Generates the RUBiS records as RawBsonDocument. */
+  private static final RawDocumentGenerator RAW_DATA_GEN = new RawDocumentGenerator();
+
+  /** The RUBiS bulk inserts pending for the thread, per collection. */
+  private BulkInsertBuffer<Document> insertBuffer;
+
+  /** The raw RUBiS bulk inserts pending for the thread, per collection. */
+  private BulkInsertBuffer<RawBsonDocument> rawInsertBuffer;
+
+  /** Generates and writes RUBiS records in the background, null if inserts are synchronous. */
+  private static PipelinedLoader<?> pipeline;
+
+  /** Explains sampled plan queries, null unless rubis.explain.sample is set. */
+  private static ExplainSampler explainSampler;
+
+  /** Counts the wire traffic per operation, null unless rubis.wirestats is set. */
+  private static volatile WireStats wireStats;
+
+  /** Creates the indexes of the query plans after the load, or null. */
+  private static IndexProvisioner indexesAfterLoad;
+
+  /**
+   * The reactive clients of the asynchronous plans, one per client of
+   * {@link #mongoClients}, null unless rubis.async.window is set.
+   */
+  private static com.mongodb.reactivestreams.client.MongoClient[] asyncClients;
+
+  /** The database per reactive client. */
+  private static com.mongodb.reactivestreams.client.MongoDatabase[] asyncDatabases;
+
+  /** The database of the asynchronous plans of this thread, on the client of {@link #clientDatabase}. */
+  private com.mongodb.reactivestreams.client.MongoDatabase asyncDatabase;
+
+  /** The asynchronous RUBiS query plans per operation name, null if the plans block. */
+  private static Map<String, AsyncQueryPlan> asyncPlans;
+
+  /** The plans this thread keeps in flight at most. */
+  private int asyncWindow;
+
+  /** The free slots of the window of this thread. */
+  private Semaphore inFlight;
+
   /**
    * Cleanup any state for this DB. Called once per DB instance; there is one DB
    * instance per client thread.
    */
   @Override
   public void cleanup() throws DBException {
+    if (inFlight != null) {
+      inFlight.acquireUninterruptibly(asyncWindow);
+    }
+
+    try {
+      insertBuffer.flushAll(clientDatabase);
+      rawInsertBuffer.flushAll(clientDatabase);
+    } catch (Exception e) {
+      System.err.println("Could not flush pending bulk inserts: " + e.toString());
+      e.printStackTrace();
+    }
+
     if (INIT_COUNT.decrementAndGet() == 0) {
       try {
-        mongoClient.close();
+        if (pipeline != null) {
+          pipeline.close();
+        }
+      } catch (Exception e) {
+        System.err.println("Could not complete pipelined inserts: " + e.toString());
+        e.printStackTrace();
+      } finally {
+        if (pipeline != null && pipeline.report() != null) {
+          System.err.println(pipeline.report());
+        }
+        pipeline = null;
+      }
+
+      try {
+        if (indexesAfterLoad != null) {
+          indexesAfterLoad.provision();
+        }
+      } catch (Exception e) {
+        System.err.println("Could not create indexes: " + e.toString());
+        e.printStackTrace();
+      } finally {
+        indexesAfterLoad = null;
+      }
+
+      String cacheReport = RubisCache.report();
+      if (cacheReport != null) {
+        System.out.println(cacheReport);
+      }
+
+      String wireReport = wireStats != null ? wireStats.report() : null;
+      if (wireReport != null) {
+        System.out.println(wireReport);
+      }
+      wireStats = null;
+
+      try {
+        if (explainSampler != null) {
+          explainSampler.close();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        explainSampler = null;
+      }
+
+      if (asyncClients != null) {
+        for (com.mongodb.reactivestreams.client.MongoClient client : asyncClients) {
+          client.close();
+        }
+        asyncClients = null;
+        asyncDatabases = null;
+        asyncPlans = null;
+      }
+
+      try {
+        for (MongoClient client : mongoClients) {
+          client.close();
+        }
       } catch (Exception e1) {
         System.err.println("Could not close MongoDB connection pool: " + e1.toString());
         e1.printStackTrace();
         return;
       } finally {
         database = null;
+        databases = null;
         mongoClient = null;
+        mongoClients = null;
+        CLIENT_INDEX.set(0);
+        THREAD_INDEX.set(0);
       }
     }
   }
@@ -156,11 +331,12 @@ public class MongoDbClient extends DB {
    */
   @Override
   public Status delete(String table, String key) {
+    enterWire("DELETE");
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      OperationContext context = OperationContext.of(clientDatabase);
+      MongoCollection<Document> collection = context.collection(table);
 
-      Document query = new Document("_id", key);
-      DeleteResult result = collection.withWriteConcern(writeConcern).deleteOne(query);
+      DeleteResult result = collection.deleteOne(context.filter("_id", key));
       if (result.wasAcknowledged() && result.getDeletedCount() == 0) {
         System.err.println("Nothing deleted for key " + key);
         return Status.NOT_FOUND;
@@ -169,6 +345,8 @@ public class MongoDbClient extends DB {
     } catch (Exception e) {
       System.err.println(e.toString());
       return Status.ERROR;
+    } finally {
+      exitWire();
     }
   }
 
@@ -179,16 +357,70 @@ public class MongoDbClient extends DB {
   @Override
   public void init() throws DBException {
     INIT_COUNT.incrementAndGet();
+
+    Properties props = getProperties();
+    int threadCount = Integer.parseInt(props.getProperty(site.ycsb.Client.THREAD_COUNT_PROPERTY, "1"));
+    int threadIndex = THREAD_INDEX.getAndIncrement() % threadCount;
+    dataGen = DocumentGenerator.forThread(props, threadIndex, threadCount);
+    try {
+      workloadGen = new WorkloadGenerator(UserChooser.fromProperties(props, threadIndex, threadCount));
+    } catch (IllegalArgumentException e) {
+      throw new DBException(e.getMessage());
+    }
+    int threadBatchSize = Integer.parseInt(props.getProperty("batchsize", "1"));
+    long threadBatchBytes = Long.parseLong(props.getProperty("mongodb.batchbytes", "0"));
+    try {
+      asyncWindow = AsyncPlans.window(props);
+    } catch (IllegalArgumentException e) {
+      throw new DBException(e.getMessage());
+    }
+    inFlight = asyncWindow > 0 ? new Semaphore(asyncWindow) : null;
+    insertBuffer = new BulkInsertBuffer<Document>(Document.class, threadBatchSize, threadBatchBytes);
+    rawInsertBuffer = new BulkInsertBuffer<RawBsonDocument>(RawBsonDocument.class, threadBatchSize, threadBatchBytes);
+
     synchronized (INCLUDE) {
       if (mongoClient != null) {
+        assignClient();
         return;
       }
 
-      Properties props = getProperties();
+      DataModel.setProperties(props);
 
       // Set insert batchsize, default 1 - to be YCSB-original equivalent
       batchSize = Integer.parseInt(props.getProperty("batchsize", "1"));
 
+      String indexMode = props.getProperty(IndexProvisioner.MODE_PROPERTY, "none");
+      if (!"none".equals(indexMode) && !"before".equals(indexMode) && !"after".equals(indexMode)) {
+        throw new DBException("Unknown " + IndexProvisioner.MODE_PROPERTY + ": " + indexMode);
+      }
+
+      // Set the number of independent clients, each with its own connection pool. Defaults to 1.
+      int clients = Integer.parseInt(props.getProperty("mongodb.clients", "1"));
+      if (clients < 1) {
+        throw new DBException("mongodb.clients must be at least 1: " + clients);
+      }
+
+      try {
+        JoinExecutor.setProperties(props);
+        ResultConsumer.setProperties(props);
+        RubisCache.setProperties(props);
+        PlanProjection.setProperties(props);
+        if (asyncWindow > 0) {
+          asyncPlans = AsyncPlans.forModel(props.getProperty(QueryPlans.MODEL_PROPERTY,
+              QueryPlans.MODEL_PROPERTY_DEFAULT));
+        }
+        queryPlans = new LinkedHashMap<String, QueryPlan>();
+        for (Map.Entry<String, QueryPlan> plan : QueryPlans.forModel(props.getProperty(QueryPlans.MODEL_PROPERTY,
+            QueryPlans.MODEL_PROPERTY_DEFAULT)).entrySet()) {
+          queryPlans.put(plan.getKey(), RubisCache.cached(plan.getKey(), plan.getValue()));
+        }
+      } catch (IllegalArgumentException e) {
+        throw new DBException(e.getMessage());
+      }
+
+      // Set if RUBiS records are encoded directly as raw BSON. Defaults to false.
+      rawBson = Boolean.parseBoolean(props.getProperty("rubis.rawbson", "false"));
+
       // Set is inserts are done as upserts. Defaults to false.
       useUpsert = Boolean.parseBoolean(props.getProperty("mongodb.upsert", "false"));
 
@@ -213,7 +445,23 @@ public class MongoDbClient extends DB {
       }
 
       try {
-        MongoClientURI uri = new MongoClientURI(url);
+        MongoClientOptions.Builder options = MongoClientOptions.builder();
+        int explainSample = Integer.parseInt(props.getProperty(ExplainSampler.SAMPLE_PROPERTY, "0"));
+        if (explainSample > 0) {
+          explainSampler = new ExplainSampler(explainSample,
+              Integer.parseInt(props.getProperty("rubis.explain.queue", "1000")));
+          options.addCommandListener(explainSampler);
+        }
+        if (Boolean.parseBoolean(props.getProperty(WireStats.PROPERTY, "false"))) {
+          wireStats = new WireStats(Boolean.parseBoolean(props.getProperty(WireStats.REQUEST_BYTES_PROPERTY, "false")));
+          options.addCommandListener(wireStats);
+          options.addConnectionPoolListener(wireStats.poolListener());
+        }
+        if (PoolWaitListener.isTuned(props)) {
+          options.addConnectionPoolListener(new PoolWaitListener());
+        }
+        setPoolOptions(options, props);
+        MongoClientURI uri = new MongoClientURI(url, options);
 
         String uriDb = uri.getDatabase();
         if (!defaultedUrl && (uriDb != null) && !uriDb.isEmpty() && !"admin".equals(uriDb)) {
@@ -227,11 +475,56 @@ public class MongoDbClient extends DB {
         readPreference = uri.getOptions().getReadPreference();
         writeConcern = uri.getOptions().getWriteConcern();
 
-        mongoClient = new MongoClient(uri);
-        database = mongoClient.getDatabase(databaseName).withReadPreference(readPreference)
-            .withWriteConcern(writeConcern);
+        mongoClients = new MongoClient[clients];
+        databases = new MongoDatabase[clients];
+        for (int i = 0; i < clients; i++) {
+          mongoClients[i] = new MongoClient(uri);
+          databases[i] = mongoClients[i].getDatabase(databaseName).withReadPreference(readPreference)
+              .withWriteConcern(writeConcern);
+        }
+        mongoClient = mongoClients[0];
+        database = databases[0];
+        if (explainSampler != null) {
+          explainSampler.setClient(mongoClient);
+        }
+        if (asyncPlans != null) {
+          MongoClientSettings settings = reactiveSettings(url, uri.getOptions());
+          asyncClients = new com.mongodb.reactivestreams.client.MongoClient[clients];
+          asyncDatabases = new com.mongodb.reactivestreams.client.MongoDatabase[clients];
+          for (int i = 0; i < clients; i++) {
+            asyncClients[i] = MongoClients.create(settings);
+            asyncDatabases[i] = asyncClients[i].getDatabase(databaseName);
+          }
+        }
 
-        System.out.println("mongo client connection created with " + url);
+        if (!"none".equals(indexMode)) {
+          Map<String, List<String>> indexFields = QueryPlans.indexesForModel(
+              props.getProperty(QueryPlans.MODEL_PROPERTY, QueryPlans.MODEL_PROPERTY_DEFAULT));
+          if (UpdatePropagation.inMix(props)) {
+            indexFields = IndexProvisioner.union(indexFields, UpdatePropagation.indexes());
+          }
+          IndexProvisioner indexes = new IndexProvisioner(database, indexFields,
+              Integer.parseInt(props.getProperty(IndexProvisioner.THREADS_PROPERTY, "1")));
+          boolean transactions = Boolean.parseBoolean(
+              props.getProperty(site.ycsb.Client.DO_TRANSACTIONS_PROPERTY, "true"));
+          if ("after".equals(indexMode) && !transactions) {
+            indexesAfterLoad = indexes;
+          } else {
+            indexes.provision();
+          }
+        }
+
+        if (Boolean.parseBoolean(props.getProperty("mongodb.pipeline", "false"))) {
+          if (rawBson) {
+            pipeline = newPipeline(props, RAW_DATA_GEN, RawBsonDocument.class);
+          } else {
+            pipeline = newPipeline(props, new DocumentGenerator(0, 0), Document.class);
+          }
+        }
+
+        assignClient();
+        System.out.println("mongo client connection created with " + url
+            + (clients > 1 ? " (" + clients + " clients)" : ""));
       } catch (Exception e1) {
         System.err.println("Could not initialize MongoDB connection pool for Loader: " + e1.toString());
         e1.printStackTrace();
@@ -241,8 +534,90 @@ public class MongoDbClient extends DB {
   }
 
   /**
-   * Insert a record in the database. Any field/value pairs in the specified
-   * values HashMap will be written into the record with the specified record key.
+   * Assigns this thread to the next client, round-robin, and to the reactive
+   * client of the same index.
+   */
+  private void assignClient() {
+    int client = CLIENT_INDEX.getAndIncrement() % databases.length;
+    clientDatabase = databases[client];
+    asyncDatabase = asyncDatabases != null ? asyncDatabases[client] : null;
+  }
+
+  /**
+   * Returns the settings of a reactive client equivalent to the resolved options
+   * of the synchronous clients: the same connection string, read preference,
+   * write concern, pool and listeners.
+   */
+  private static MongoClientSettings reactiveSettings(String url, final MongoClientOptions options) {
+    MongoClientSettings.Builder settings = MongoClientSettings.builder()
+        .applyConnectionString(new ConnectionString(url))
+        .readPreference(options.getReadPreference())
+        .writeConcern(options.getWriteConcern())
+        .applyToConnectionPoolSettings(new Block<ConnectionPoolSettings.Builder>() {
+          @Override
+          public void apply(ConnectionPoolSettings.Builder pool) {
+            pool.maxSize(options.getConnectionsPerHost())
+                .minSize(options.getMinConnectionsPerHost())
+                .maxWaitQueueSize(options.getConnectionsPerHost()
+                    * options.getThreadsAllowedToBlockForConnectionMultiplier())
+                .maxWaitTime(options.getMaxWaitTime(), TimeUnit.MILLISECONDS)
+                .maxConnectionIdleTime(options.getMaxConnectionIdleTime(), TimeUnit.MILLISECONDS)
+                .maxConnectionLifeTime(options.getMaxConnectionLifeTime(), TimeUnit.MILLISECONDS);
+            for (ConnectionPoolListener listener : options.getConnectionPoolListeners()) {
+              pool.addConnectionPoolListener(listener);
+            }
+          }
+        });
+    for (CommandListener listener : options.getCommandListeners()) {
+      settings.addCommandListener(listener);
+    }
+    return settings.build();
+  }
+
+  /**
+   * Sets the connection pool options given by the mongodb.pool properties. The
+   * options of the URL take precedence.
+   */
+  private static void setPoolOptions(MongoClientOptions.Builder options, Properties props) {
+    String maxSize = props.getProperty("mongodb.pool.maxsize");
+    if (maxSize != null) {
+      options.connectionsPerHost(Integer.parseInt(maxSize));
+    }
+    String minSize = props.getProperty("mongodb.pool.minsize");
+    if (minSize != null) {
+      options.minConnectionsPerHost(Integer.parseInt(minSize));
+    }
+    String maxWaitMs = props.getProperty("mongodb.pool.maxwaitms");
+    if (maxWaitMs != null) {
+      options.maxWaitTime(Integer.parseInt(maxWaitMs));
+    }
+    String maxIdleMs = props.getProperty("mongodb.pool.maxidlems");
+    if (maxIdleMs != null) {
+      options.maxConnectionIdleTime(Integer.parseInt(maxIdleMs));
+    }
+    String waitQueueMultiple = props.getProperty("mongodb.pool.waitqueuemultiple");
+    if (waitQueueMultiple != null) {
+      options.threadsAllowedToBlockForConnectionMultiplier(Integer.parseInt(waitQueueMultiple));
+    }
+  }
+
+  /**
+   * Creates the background loader for the RUBiS records.
+   */
+  private static <T> PipelinedLoader<T> newPipeline(Properties props, RecordFactory<T> recordFactory,
+      Class<T> documentClass) {
+    return new PipelinedLoader<T>(database, recordFactory, documentClass,
+        Integer.parseInt(props.getProperty("mongodb.pipeline.producers",
+            String.valueOf(Runtime.getRuntime().availableProcessors()))),
+        Integer.parseInt(props.getProperty("mongodb.pipeline.writers", "4")),
+        Integer.parseInt(props.getProperty("mongodb.pipeline.queuesize", "1000")),
+        batchSize, Long.parseLong(props.getProperty("mongodb.batchbytes", "0")));
+  }
+
+  /**
+   * Insert all RUBiS records of one user in the database. A numeric key, as
+   * produced by the {@link site.ycsb.db.RUBiS.RubisWorkload}, is used as the user
+   * id. Any other key takes the next user of this thread's range.
    * 
    * @param table  The name of the table
    * @param key    The record key of the record to insert.
@@ -253,41 +628,78 @@ public class MongoDbClient extends DB {
   @Override
   public Status insert(String table, String key, Map<String, ByteIterator> values) {
     try {
-      Map<String, Set<Document>> recordsPerCollection = dataGen.createRecords();
-
-      for (String collectionName : recordsPerCollection.keySet()) {
-        MongoCollection<Document> collection = database.getCollection(collectionName);
-
-        for (Document recordDocument : recordsPerCollection.get(collectionName)) {
-          // System.out.println(collectionName);
-          // System.out.println(recordDocument);
-          if (batchSize == 1) {
-            collection.insertOne(recordDocument);
-          } else {
-            bulkInserts.add(recordDocument);
-            if (bulkInserts.size() == batchSize) {
-              collection.insertMany(bulkInserts, INSERT_UNORDERED);
-              bulkInserts.clear();
-            } else {
-              return Status.BATCHED_OK;
-            }
-          }
+      int userId = getUserId(key);
+      if (pipeline != null) {
+        // Only the hand-off is timed here, the pipeline measures its throughput when it is drained.
+        pipeline.submit(userId);
+        return Status.BATCHED_OK;
+      }
 
-          // collection.replaceOne(new Document("_id", recordDocument.get("_id")),
-          // recordDocument, UPDATE_WITH_UPSERT);
+      int written;
+      enterWire("INSERT");
+      try {
+        if (rawBson) {
+          written = insertRecords(RAW_DATA_GEN.createRecords(userId), rawInsertBuffer, RawBsonDocument.class);
+        } else {
+          written = insertRecords(dataGen.createRecords(userId), insertBuffer, Document.class);
         }
+      } finally {
+        exitWire();
       }
 
-      return Status.OK;
+      return written > 0 ? Status.OK : Status.BATCHED_OK;
 
     } catch (Exception e) {
-      System.err.println("Exception while trying bulk insert with " + bulkInserts.size());
+      System.err.println("Exception while trying bulk insert with "
+          + (insertBuffer.size() + rawInsertBuffer.size()));
       e.printStackTrace();
       return Status.ERROR;
     }
 
   }
 
+  /**
+   * Inserts the generated records into their collections, directly or through
+   * the thread's bulk insert buffer.
+   *
+   * @param records       The documents to insert per collection name.
+   * @param buffer        The bulk insert buffer for the document type.
+   * @param documentClass The class of the documents.
+   * @return The number of documents written to the database.
+   */
+  private <T> int insertRecords(Map<String, ? extends Collection<T>> records, BulkInsertBuffer<T> buffer,
+      Class<T> documentClass) {
+    int written = 0;
+    for (Map.Entry<String, ? extends Collection<T>> entry : records.entrySet()) {
+      String collectionName = entry.getKey();
+
+      for (T recordDocument : entry.getValue()) {
+        if (batchSize == 1) {
+          OperationContext.of(clientDatabase).collection(collectionName, documentClass).insertOne(recordDocument);
+          written++;
+        } else {
+          written += buffer.add(clientDatabase, collectionName, recordDocument);
+        }
+      }
+    }
+    return written;
+  }
+
+  /**
+   * Resolves the RUBiS user id to generate for a record key.
+   * 
+   * @param key The record key of the record to insert.
+   * @return The key itself if it is numeric, otherwise the next user id of this
+   *         thread's range.
+   */
+  private int getUserId(String key) {
+    try {
+      return Integer.parseInt(key);
+    } catch (NumberFormatException e) {
+      return dataGen.nextUserId();
+    }
+  }
+
   /**
    * Insert a record in the database. Any field/value pairs in the specified
    * values HashMap will be written into the record with the specified record key.
@@ -300,7 +712,8 @@ public class MongoDbClient extends DB {
    */
   public Status insertOld(String table, String key, Map<String, ByteIterator> values) {
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      OperationContext context = OperationContext.of(clientDatabase);
+      MongoCollection<Document> collection = context.collection(table);
       Document toInsert = new Document("_id", key);
       for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
         toInsert.put(entry.getKey(), entry.getValue().toArray());
@@ -311,7 +724,7 @@ public class MongoDbClient extends DB {
           // this is effectively an insert, but using an upsert instead due
           // to current inability of the framework to clean up after itself
           // between test runs.
-          collection.replaceOne(new Document("_id", toInsert.get("_id")), toInsert, UPDATE_WITH_UPSERT);
+          collection.replaceOne(context.filter("_id", toInsert.get("_id")), toInsert, UPDATE_WITH_UPSERT);
         } else {
           collection.insertOne(toInsert);
         }
@@ -541,30 +954,144 @@ public class MongoDbClient extends DB {
   /**
    * Read a record from the database. Each field/value pair from the result will
    * be stored in a HashMap.
+   * <p>
+   * If the table names a RUBiS operation, as passed by the
+   * {@link site.ycsb.db.RUBiS.RubisWorkload}, its query plan runs with the key as
+   * user id. The result is copied into the result map only in the decode and
+   * verify modes of the {@link ResultConsumer}.
+   * </p>
    * 
-   * @param table  The name of the table
-   * @param key    The record key of the record to read.
+   * @param table  The name of the table, or of a RUBiS operation
+   * @param key    The record key of the record to read, the user id for RUBiS operations.
    * @param fields The list of fields to read, or null for all of them
    * @param result A HashMap of field/value pairs for the result
    * @return Zero on success, a non-zero error code on error or "not found".
    */
   @Override
   public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
-    try {
-      Document queryResult = workloadGen.executeQuery(database);
+    if (asyncPlans != null && asyncPlans.containsKey(table)) {
+      return submit(table, asyncPlans.get(table), Integer.parseInt(key));
+    }
 
-      // System.out.println(queryResult);
+    try {
+      QueryPlan plan = queryPlans.get(table);
+      Document queryResult;
+      if (explainSampler != null) {
+        explainSampler.enter(table);
+      }
+      enterWire(table);
+      try {
+        if (plan != null) {
+          queryResult = plan.execute(clientDatabase, Integer.parseInt(key));
+        } else {
+          queryResult = workloadGen.executeQuery(clientDatabase);
+        }
+      } finally {
+        if (explainSampler != null) {
+          explainSampler.exit();
+        }
+        exitWire();
+      }
 
-      if (queryResult != null) {
+      if (queryResult == null) {
+        return ResultConsumer.getMode() == Mode.VERIFY ? Status.UNEXPECTED_STATE : Status.NOT_FOUND;
+      }
+      ResultConsumer.verify(queryResult, table);
+      if (ResultConsumer.getMode().fillsResult()) {
         fillMap(result, queryResult);
       }
-      return queryResult != null ? Status.OK : Status.NOT_FOUND;
+      return Status.OK;
+    } catch (EmptyRangeException e) {
+      // The user has no record the plan starts from, e.g. no bids.
+      return Status.NOT_FOUND;
+    } catch (VerificationException e) {
+      System.err.println(e.getMessage());
+      return Status.UNEXPECTED_STATE;
     } catch (Exception e) {
       System.err.println(e.toString());
       return Status.ERROR;
     }
   }
 
+  /**
+   * Counts the wire traffic of the calling thread for the operation, if
+   * rubis.wirestats is set.
+   */
+  private static void enterWire(String operation) {
+    WireStats stats = wireStats;
+    if (stats != null) {
+      stats.enter(operation);
+    }
+  }
+
+  private static void exitWire() {
+    WireStats stats = wireStats;
+    if (stats != null) {
+      stats.exit();
+    }
+  }
+
+  /**
+   * Starts an asynchronous plan once the window of this thread has a free slot.
+   * The latency and status of the operation are measured when the plan
+   * completes.
+   */
+  private Status submit(final String operation, AsyncQueryPlan plan, int userId) {
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Status.ERROR;
+    }
+
+    final long st = System.nanoTime();
+    final AtomicBoolean completed = new AtomicBoolean();
+    Callback<Document> callback = new Callback<Document>() {
+      @Override
+      public void onResult(Document queryResult, Throwable t) {
+        if (!completed.compareAndSet(false, true)) {
+          return;
+        }
+        try {
+          Status status;
+          if (t instanceof VerificationException) {
+            System.err.println(t.getMessage());
+            status = Status.UNEXPECTED_STATE;
+          } else if (t instanceof EmptyRangeException) {
+            status = Status.NOT_FOUND;
+          } else if (t != null) {
+            System.err.println(t.toString());
+            status = Status.ERROR;
+          } else if (queryResult == null) {
+            status = ResultConsumer.getMode() == Mode.VERIFY ? Status.UNEXPECTED_STATE : Status.NOT_FOUND;
+          } else {
+            try {
+              ResultConsumer.verify(queryResult, operation);
+              status = Status.OK;
+            } catch (VerificationException e) {
+              System.err.println(e.getMessage());
+              status = Status.UNEXPECTED_STATE;
+            }
+          }
+
+          Measurements measurements = Measurements.getMeasurements();
+          measurements.measure(operation, (int) ((System.nanoTime() - st) / 1000));
+          measurements.reportStatus(operation, status);
+        } finally {
+          inFlight.release();
+        }
+      }
+    };
+
+    try {
+      plan.execute(asyncDatabase, userId, callback);
+      return Status.OK;
+    } catch (Exception e) {
+      callback.onResult(null, e);
+      return e instanceof EmptyRangeException ? Status.NOT_FOUND : Status.ERROR;
+    }
+  }
+
   /**
    * Perform a range scan for a set of records in the database. Each field/value
    * pair from the result will be stored in a HashMap.
@@ -582,14 +1109,15 @@ public class MongoDbClient extends DB {
   public Status scan(String table, String startkey, int recordcount, Set<String> fields,
       Vector<HashMap<String, ByteIterator>> result) {
     MongoCursor<Document> cursor = null;
+    enterWire("SCAN");
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      OperationContext context = OperationContext.of(clientDatabase);
+      MongoCollection<Document> collection = context.collection(table);
 
-      Document scanRange = new Document("$gte", startkey);
-      Document query = new Document("_id", scanRange);
       Document sort = new Document("_id", INCLUDE);
 
-      FindIterable<Document> findIterable = collection.find(query).sort(sort).limit(recordcount);
+      FindIterable<Document> findIterable = collection.find(context.from("_id", startkey)).sort(sort)
+          .limit(recordcount);
 
       if (fields != null) {
         Document projection = new Document();
@@ -625,6 +1153,7 @@ public class MongoDbClient extends DB {
       if (cursor != null) {
         cursor.close();
       }
+      exitWire();
     }
   }
 
@@ -641,17 +1170,23 @@ public class MongoDbClient extends DB {
    */
   @Override
   public Status update(String table, String key, Map<String, ByteIterator> values) {
+    boolean propagated = UpdatePropagation.OPERATIONS.contains(table);
+    enterWire(propagated ? table : "UPDATE");
     try {
-      MongoCollection<Document> collection = database.getCollection(table);
+      if (propagated) {
+        return UpdatePropagation.execute(clientDatabase, table, Integer.parseInt(key));
+      }
+
+      OperationContext context = OperationContext.of(clientDatabase);
+      MongoCollection<Document> collection = context.collection(table);
 
-      Document query = new Document("_id", key);
       Document fieldsToSet = new Document();
       for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
         fieldsToSet.put(entry.getKey(), entry.getValue().toArray());
       }
       Document update = new Document("$set", fieldsToSet);
 
-      UpdateResult result = collection.updateOne(query, update);
+      UpdateResult result = collection.updateOne(context.filter("_id", key), update);
       if (result.wasAcknowledged() && result.getMatchedCount() == 0) {
         System.err.println("Nothing updated for key " + key);
         return Status.NOT_FOUND;
@@ -660,6 +1195,8 @@ public class MongoDbClient extends DB {
     } catch (Exception e) {
       System.err.println(e.toString());
       return Status.ERROR;
+    } finally {
+      exitWire();
     }
   }
 
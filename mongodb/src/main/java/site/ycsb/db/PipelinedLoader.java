@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db;
+
+import com.mongodb.client.MongoDatabase;
+import site.ycsb.db.RUBiS.DataModel.RecordFactory;
+import site.ycsb.measurements.Measurements;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads RUBiS users in two stages running on their own thread pools. Producer
+ * threads generate the records of the submitted users into a bounded queue,
+ * writer threads drain that queue into per-collection bulk inserts. Generation
+ * and network waits overlap instead of adding up on the client thread.
+ * <p>
+ * The stages report to {@link Measurements}:
+ * <ul>
+ * <li><code>PIPELINE-SUBMIT-WAIT</code>: client thread blocked on a full user queue</li>
+ * <li><code>PIPELINE-GENERATE</code>: generating the records of one user</li>
+ * <li><code>PIPELINE-HANDOFF-WAIT</code>: producer blocked on a full record queue</li>
+ * <li><code>PIPELINE-WRITE</code>: one insertMany of a writer</li>
+ * <li><code>PIPELINE-DOCUMENTS</code>: the documents written by one insertMany</li>
+ * <li><code>PIPELINE-USERS-PER-SEC</code>, <code>PIPELINE-DOCUMENTS-PER-SEC</code>:
+ * the end-to-end throughput, from the first submitted user until all records
+ * are written, measured once by {@link #close()}</li>
+ * </ul>
+ * The client threads only wait for the hand-off, so their INSERT operations do
+ * not tell the load rate. The throughput is also summarized by {@link #report()}
+ * once the loader is closed.
+ * </p>
+ *
+ * @param <T> The document type generated and written.
+ */
+final class PipelinedLoader<T> {
+
+  /** Marks the end of the input of a stage. */
+  private static final Integer END_OF_USERS = Integer.valueOf(-1);
+
+  /** Marks the end of the input of a stage. */
+  private final Map<String, List<T>> endOfRecords = new HashMap<String, List<T>>();
+
+  private final MongoDatabase database;
+
+  private final RecordFactory<T> recordFactory;
+
+  private final Class<T> documentClass;
+
+  private final int batchSize;
+
+  private final long batchBytes;
+
+  /** The users to generate. */
+  private final BlockingQueue<Integer> users;
+
+  /** The generated records to write. */
+  private final BlockingQueue<Map<String, ? extends Collection<T>>> records;
+
+  private final List<Thread> producers = new ArrayList<Thread>();
+
+  private final List<Thread> writers = new ArrayList<Thread>();
+
+  private final Measurements measurements = Measurements.getMeasurements();
+
+  /** The users whose records were all handed to a bulk insert buffer. */
+  private final LongAdder completedUsers = new LongAdder();
+
+  /** The documents written by insertMany. */
+  private final LongAdder writtenDocuments = new LongAdder();
+
+  /** When the first user was submitted, 0 before. */
+  private final AtomicLong firstSubmitNanos = new AtomicLong();
+
+  /** The time from the first submitted user until close completed, -1 before. */
+  private volatile long elapsedNanos = -1;
+
+  /** The first failure of a producer or writer, reported to the client threads. */
+  private volatile Exception failure;
+
+  /**
+   * @param database      The database to write to.
+   * @param recordFactory Generates the records, shared by all producers.
+   * @param documentClass The class of the generated documents.
+   * @param producerCount The number of generating threads.
+   * @param writerCount   The number of writing threads.
+   * @param queueSize     The capacity of the user and of the record queue.
+   * @param batchSize     The number of documents per insertMany.
+   * @param batchBytes    The maximum BSON bytes per insertMany, 0 for no limit.
+   */
+  PipelinedLoader(MongoDatabase database, RecordFactory<T> recordFactory, Class<T> documentClass,
+      int producerCount, int writerCount, int queueSize, int batchSize, long batchBytes) {
+    this.database = database;
+    this.recordFactory = recordFactory;
+    this.documentClass = documentClass;
+    this.batchSize = batchSize;
+    this.batchBytes = batchBytes;
+    this.users = new ArrayBlockingQueue<Integer>(queueSize);
+    this.records = new ArrayBlockingQueue<Map<String, ? extends Collection<T>>>(queueSize);
+
+    for (int i = 0; i < producerCount; i++) {
+      producers.add(start(new Runnable() {
+          @Override
+          public void run() {
+            produce();
+          }
+        }, "rubis-producer-" + i));
+    }
+    for (int i = 0; i < writerCount; i++) {
+      writers.add(start(new Runnable() {
+          @Override
+          public void run() {
+            write();
+          }
+        }, "rubis-writer-" + i));
+    }
+  }
+
+  /**
+   * Queues a user for generation, blocking while the user queue is full.
+   *
+   * @param userId The user to load.
+   * @throws Exception If a stage failed or the client thread was interrupted.
+   */
+  void submit(int userId) throws Exception {
+    if (failure != null) {
+      throw failure;
+    }
+
+    long st = System.nanoTime();
+    firstSubmitNanos.compareAndSet(0, st);
+    users.put(userId);
+    measurements.measure("PIPELINE-SUBMIT-WAIT", (int) ((System.nanoTime() - st) / 1000));
+  }
+
+  /**
+   * Waits until all submitted users are written and stops all threads.
+   *
+   * @throws Exception If a stage failed.
+   */
+  void close() throws Exception {
+    for (int i = 0; i < producers.size(); i++) {
+      users.put(END_OF_USERS);
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    for (int i = 0; i < writers.size(); i++) {
+      records.put(endOfRecords);
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    long first = firstSubmitNanos.get();
+    elapsedNanos = first == 0 ? 0 : System.nanoTime() - first;
+    measurements.measure("PIPELINE-USERS-PER-SEC",
+        (int) Math.min(perSecond(completedUsers.sum()), Integer.MAX_VALUE));
+    measurements.measure("PIPELINE-DOCUMENTS-PER-SEC",
+        (int) Math.min(perSecond(writtenDocuments.sum()), Integer.MAX_VALUE));
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Returns the users and documents written and their rate over the time from
+   * the first submitted user until close, null before close.
+   */
+  String report() {
+    long elapsed = elapsedNanos;
+    if (elapsed < 0) {
+      return null;
+    }
+
+    long userCount = completedUsers.sum();
+    long documentCount = writtenDocuments.sum();
+    return String.format("RUBiS pipeline: %d users, %d documents in %.3f s (%.1f users/s, %.1f documents/s)",
+        userCount, documentCount, elapsed / (double) TimeUnit.SECONDS.toNanos(1),
+        perSecond(userCount), perSecond(documentCount));
+  }
+
+  /**
+   * Returns the rate of the count over the time from the first submitted user
+   * until close.
+   */
+  private double perSecond(long count) {
+    return count / (Math.max(elapsedNanos, 1) / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  private void produce() {
+    try {
+      while (true) {
+        Integer userId = users.take();
+        if (userId == END_OF_USERS) {
+          return;
+        }
+
+        long st = System.nanoTime();
+        Map<String, ? extends Collection<T>> generated = recordFactory.createRecords(userId);
+        long en = System.nanoTime();
+        records.put(generated);
+        measurements.measure("PIPELINE-GENERATE", (int) ((en - st) / 1000));
+        measurements.measure("PIPELINE-HANDOFF-WAIT", (int) ((System.nanoTime() - en) / 1000));
+      }
+    } catch (Exception e) {
+      fail(e, users);
+    }
+  }
+
+  private void write() {
+    BulkInsertBuffer<T> buffer = new BulkInsertBuffer<T>(documentClass, batchSize, batchBytes, "PIPELINE-WRITE");
+    try {
+      while (true) {
+        Map<String, ? extends Collection<T>> generated = records.take();
+        if (generated == endOfRecords) {
+          written(buffer.flushAll(database));
+          return;
+        }
+
+        for (Map.Entry<String, ? extends Collection<T>> entry : generated.entrySet()) {
+          for (T document : entry.getValue()) {
+            written(buffer.add(database, entry.getKey(), document));
+          }
+        }
+        completedUsers.increment();
+      }
+    } catch (Exception e) {
+      fail(e, records);
+    }
+  }
+
+  private void written(int documentCount) {
+    if (documentCount > 0) {
+      writtenDocuments.add(documentCount);
+      measurements.measure("PIPELINE-DOCUMENTS", documentCount);
+    }
+  }
+
+  /**
+   * Records the failure and keeps draining the input of the failed stage so the
+   * other stages do not block forever.
+   */
+  private void fail(Exception e, BlockingQueue<?> input) {
+    if (failure == null) {
+      failure = e;
+    }
+    System.err.println("RUBiS pipeline " + Thread.currentThread().getName() + " failed: " + e.toString());
+    e.printStackTrace();
+
+    try {
+      while (true) {
+        Object next = input.take();
+        if (next == END_OF_USERS || next == endOfRecords) {
+          return;
+        }
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Thread start(Runnable runnable, String name) {
+    Thread thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+}
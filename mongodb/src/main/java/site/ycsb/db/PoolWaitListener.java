@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db;
+
+import com.mongodb.event.ConnectionPoolListenerAdapter;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import site.ycsb.measurements.Measurements;
+
+import java.util.Properties;
+
+/**
+ * Measures every wait for a pooled connection as <code>POOL-WAIT-US</code>,
+ * the microseconds between entering and leaving the wait queue of the pool.
+ * The pool calls the listener on the waiting thread.
+ * <p>
+ * Registered whenever the pool is tuned, so the effect of the
+ * <code>mongodb.pool</code> properties and of <code>mongodb.clients</code> can
+ * be read from the run without the per-operation counting of the wire
+ * statistics.
+ * </p>
+ */
+final class PoolWaitListener extends ConnectionPoolListenerAdapter {
+
+  private final ThreadLocal<Long> waitStart = new ThreadLocal<Long>();
+
+  private final Measurements measurements = Measurements.getMeasurements();
+
+  /**
+   * Returns true if the properties set the connection pool or the number of
+   * clients.
+   */
+  static boolean isTuned(Properties props) {
+    if (props.getProperty("mongodb.clients") != null) {
+      return true;
+    }
+    for (String name : props.stringPropertyNames()) {
+      if (name.startsWith("mongodb.pool.")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+    waitStart.set(System.nanoTime());
+  }
+
+  @Override
+  public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+    Long start = waitStart.get();
+    if (start != null) {
+      waitStart.remove();
+      measurements.measure("POOL-WAIT-US", (int) ((System.nanoTime() - start) / 1000));
+    }
+  }
+}
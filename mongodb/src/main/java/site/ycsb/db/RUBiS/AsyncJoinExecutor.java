@@ -0,0 +1,104 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+
+import site.ycsb.db.RUBiS.AsyncQueryPlan.Callback;
+import site.ycsb.db.RUBiS.JoinExecutor.Hop;
+
+/**
+ * The non-blocking variant of the {@link JoinExecutor}: every hop is a stage
+ * that starts when the previous level has arrived, the $in batches of a hop are
+ * all in flight at once. No thread waits between the hops.
+ *
+ * Uses rubis.join.batchsize of the JoinExecutor. The application cache is not
+ * consulted.
+ *
+ * @author vincent
+ *
+ */
+public class AsyncJoinExecutor {
+
+	/**
+	 * Joins the document with the given _id along the hops and passes the root
+	 * document with the joined levels stitched in, or null if there is no such
+	 * document, to the callback.
+	 */
+	public static void join(final MongoDatabase db, String collection, Object id,
+			final Callback<Document> callback, final Hop... hops) {
+		Subscribers.into(db.getCollection(collection).find(new Document("_id", id)), new ArrayList<Document>(),
+				new Callback<List<Document>>() {
+					@Override
+					public void onResult(List<Document> level, Throwable t) {
+						if (t != null)
+							callback.onResult(null, t);
+						else if (level.isEmpty())
+							callback.onResult(null, null);
+						else
+							hop(db, level.get(0), level, hops, 0, callback);
+					}
+				});
+	}
+
+	private static void hop(final MongoDatabase db, final Document root, final List<Document> level,
+			final Hop[] hops, final int index, final Callback<Document> callback) {
+		if (index == hops.length) {
+			callback.onResult(root, null);
+			return;
+		}
+
+		final Hop hop = hops[index];
+		List<Object> keys = JoinExecutor.keys(level, hop);
+		if (keys.isEmpty()) {
+			hop(db, root, JoinExecutor.stitch(level, hop, new HashMap<Object, List<Document>>()), hops, index + 1,
+					callback);
+			return;
+		}
+
+		MongoCollection<Document> collection = db.getCollection(hop.collection);
+		int batchSize = JoinExecutor.getBatchSize();
+		int batches = (keys.size() + batchSize - 1) / batchSize;
+
+		final List<List<Document>> results = new ArrayList<List<Document>>();
+		for (int i = 0; i < batches; i++)
+			results.add(new ArrayList<Document>());
+		final AtomicInteger pending = new AtomicInteger(batches);
+		final AtomicBoolean failed = new AtomicBoolean();
+
+		for (int i = 0; i < batches; i++) {
+			List<Object> batch = keys.subList(i * batchSize, Math.min((i + 1) * batchSize, keys.size()));
+			Subscribers.into(collection.find(JoinExecutor.filter(hop.foreignKey, batch)), results.get(i),
+					new Callback<List<Document>>() {
+						@Override
+						public void onResult(List<Document> documents, Throwable t) {
+							if (t != null) {
+								if (failed.compareAndSet(false, true))
+									callback.onResult(null, t);
+								return;
+							}
+							if (pending.decrementAndGet() > 0 || failed.get())
+								return;
+
+							// The last batch completes the hop, after all others wrote their result.
+							Map<Object, List<Document>> children = new HashMap<Object, List<Document>>();
+							for (List<Document> result : results)
+								JoinExecutor.group(children, result, hop.foreignKey);
+							try {
+								hop(db, root, JoinExecutor.stitch(level, hop, children), hops, index + 1, callback);
+							} catch (RuntimeException e) {
+								callback.onResult(null, e);
+							}
+						}
+					});
+		}
+	}
+}
@@ -0,0 +1,405 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+
+import com.mongodb.Block;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+
+import site.ycsb.db.RUBiS.AsyncQueryPlan.Callback;
+import site.ycsb.db.RUBiS.DataModel.User;
+import site.ycsb.db.RUBiS.JoinExecutor.Hop;
+import site.ycsb.db.RUBiS.ResultConsumer.Mode;
+
+/**
+ * The RUBiS query plans on the reactive streams driver, see {@link AsyncQueryPlan}.
+ *
+ * The plans run the same queries as their blocking variants of
+ * {@link WorkloadModel}. A plan with several queries is a chain of callbacks, a
+ * query starts from the callback of the one it depends on. Results are consumed
+ * as configured with rubis.consume, see {@link ResultConsumer}.
+ *
+ * With rubis.async.window set to N, every client thread keeps up to N plans in
+ * flight: a read returns once its plan is started, and only waits for a free
+ * slot of the window. The latency of the operation is measured from the start
+ * to the callback.
+ *
+ * Models: denormalized and normalized.
+ *
+ * @author vincent
+ *
+ */
+public class AsyncPlans {
+
+	public static final String WINDOW_PROPERTY = "rubis.async.window";
+
+	/**
+	 * Returns the plans in flight per client thread, 0 if the plans block.
+	 */
+	public static int window(Properties props) {
+		int window = Integer.parseInt(props.getProperty(WINDOW_PROPERTY, "0"));
+		if (window < 0)
+			throw new IllegalArgumentException(WINDOW_PROPERTY + " must not be negative: " + window);
+		return window;
+	}
+
+	/**
+	 * Returns the asynchronous plans of a model per operation name.
+	 */
+	public static Map<String, AsyncQueryPlan> forModel(String model) {
+		if ("denormalized".equals(model))
+			return plans();
+		if ("normalized".equals(model))
+			return normalizedPlans();
+
+		throw new IllegalArgumentException("No asynchronous plans for " + QueryPlans.MODEL_PROPERTY + ": " + model);
+	}
+
+	/**
+	 * The callback of a query that continues the plan with its result. A failure,
+	 * of the query or of the continuation, completes the plan.
+	 */
+	private abstract static class Then<T> implements Callback<T> {
+
+		private final Callback<Document> plan;
+
+		Then(Callback<Document> plan) {
+			this.plan = plan;
+		}
+
+		@Override
+		public void onResult(T result, Throwable t) {
+			if (t != null) {
+				plan.onResult(null, t);
+				return;
+			}
+
+			try {
+				next(result);
+			} catch (RuntimeException e) {
+				plan.onResult(null, e);
+			}
+		}
+
+		abstract void next(T result);
+	}
+
+	/**
+	 * Reads the first document matching the filter, in count and raw mode without
+	 * decoding it, like {@link ResultConsumer#first(com.mongodb.client.MongoCollection, Bson, Bson)}.
+	 */
+	private static void first(MongoDatabase database, String collection, Bson filter,
+			final Callback<Document> callback) {
+		Mode mode = ResultConsumer.getMode();
+		if (mode == Mode.COUNT || mode == Mode.RAW) {
+			Subscribers.first(database.getCollection(collection, RawBsonDocument.class).find(filter).first(),
+					new Callback<RawBsonDocument>() {
+						@Override
+						public void onResult(RawBsonDocument result, Throwable t) {
+							callback.onResult(ResultConsumer.wrap(result), t);
+						}
+					});
+			return;
+		}
+
+		Subscribers.first(database.getCollection(collection).find(filter).first(), callback);
+	}
+
+	/**
+	 * Reads all documents matching the filter and passes their number on, like
+	 * {@link ResultConsumer#drain(com.mongodb.client.MongoCollection, Bson)}.
+	 */
+	private static void drain(MongoDatabase database, String collection, Bson filter,
+			final Callback<Integer> callback) {
+		drain(database, collection, filter, false, new Callback<Document>() {
+			@Override
+			public void onResult(Document result, Throwable t) {
+				callback.onResult(result != null ? result.getInteger(ResultConsumer.COUNT_FIELD) : 0, t);
+			}
+		});
+	}
+
+	/**
+	 * Reads all documents matching the filter and passes them on as the result of
+	 * a plan, like
+	 * {@link ResultConsumer#result(com.mongodb.client.MongoCollection, Bson, Bson)}.
+	 */
+	private static void result(MongoDatabase database, String collection, Bson filter,
+			Callback<Document> callback) {
+		drain(database, collection, filter, true, callback);
+	}
+
+	/**
+	 * Drains the cursor and passes the {@link ResultConsumer#counted(int, List)}
+	 * result on, with the raw documents in raw mode if they are returned.
+	 */
+	private static void drain(MongoDatabase database, final String collection, Bson filter, boolean returned,
+			final Callback<Document> callback) {
+		final Mode mode = ResultConsumer.getMode();
+		final AtomicInteger count = new AtomicInteger();
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		final List<RawBsonDocument> kept = returned && mode == Mode.RAW ? new ArrayList<RawBsonDocument>() : null;
+
+		Callback<Void> done = new Callback<Void>() {
+			@Override
+			public void onResult(Void result, Throwable t) {
+				callback.onResult(ResultConsumer.counted(count.get(), kept), t != null ? t : failure.get());
+			}
+		};
+
+		MongoCollection<Document> documents = database.getCollection(collection);
+		if (mode == Mode.COUNT || mode == Mode.RAW) {
+			Subscribers.forEach(documents.withDocumentClass(RawBsonDocument.class).find(filter), new Block<RawBsonDocument>() {
+				@Override
+				public void apply(RawBsonDocument document) {
+					if (kept != null)
+						kept.add(document);
+					count.incrementAndGet();
+				}
+			}, done);
+			return;
+		}
+
+		Subscribers.forEach(documents.find(filter), new Block<Document>() {
+			@Override
+			public void apply(Document document) {
+				try {
+					if (mode == Mode.VERIFY)
+						ResultConsumer.verify(document, collection);
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+				}
+				count.incrementAndGet();
+			}
+		}, done);
+	}
+
+	/**
+	 * The plans of {@link WorkloadModel#plans()}.
+	 */
+	static Map<String, AsyncQueryPlan> plans() {
+		Map<String, AsyncQueryPlan> plans = new LinkedHashMap<String, AsyncQueryPlan>();
+
+		plans.put("BidsUsers", new AsyncQueryPlan() {
+			@Override
+			public void execute(final MongoDatabase database, int userId, final Callback<Document> callback) {
+				first(database, "BidsItems", new Document("_id", User.getFirstBidId(userId)), new Then<Document>(callback) {
+					@Override
+					void next(final Document bid) {
+						if (bid == null) {
+							callback.onResult(null, null);
+							return;
+						}
+						drain(database, "ItemsUsersRegions", new Document("users._id", ResultConsumer.value(bid, "id_user")),
+								new Then<Integer>(callback) {
+									@Override
+									void next(Integer count) {
+										callback.onResult(bid, null);
+									}
+								});
+					}
+				});
+			}
+		});
+		plans.put("BidsItems", new AsyncQueryPlan() {
+			@Override
+			public void execute(MongoDatabase database, int userId, Callback<Document> callback) {
+				first(database, "BidsItems", new Document("_id", User.getFirstBidId(userId)), callback);
+			}
+		});
+		plans.put("UsersRegions", new AsyncQueryPlan() {
+			@Override
+			public void execute(MongoDatabase database, int userId, Callback<Document> callback) {
+				first(database, "ItemsUsersRegions", new Document("users._id", userId), callback);
+			}
+		});
+		plans.put("UsersItems", new AsyncQueryPlan() {
+			@Override
+			public void execute(MongoDatabase database, int userId, Callback<Document> callback) {
+				result(database, "ItemsUsersRegions", new Document("users._id", userId), callback);
+			}
+		});
+		plans.put("UsersBidsItems", new AsyncQueryPlan() {
+			@Override
+			public void execute(final MongoDatabase database, int userId, final Callback<Document> callback) {
+				first(database, "ItemsUsersRegions", new Document("users._id", userId), new Then<Document>(callback) {
+					@Override
+					void next(final Document item) {
+						if (item == null) {
+							callback.onResult(null, null);
+							return;
+						}
+						drain(database, "BidsItems", new Document("id_user", ResultConsumer.value(item, "users", "_id")),
+								new Then<Integer>(callback) {
+									@Override
+									void next(Integer count) {
+										callback.onResult(item, null);
+									}
+								});
+					}
+				});
+			}
+		});
+		plans.put("UsersBidsItemsUsers", new AsyncQueryPlan() {
+			@Override
+			public void execute(final MongoDatabase database, int userId, final Callback<Document> callback) {
+				first(database, "ItemsUsersRegions", new Document("users._id", userId), new Then<Document>(callback) {
+					@Override
+					void next(Document item) {
+						if (item == null) {
+							callback.onResult(null, null);
+							return;
+						}
+						first(database, "BidsItems", new Document("id_user", ResultConsumer.value(item, "users", "_id")),
+								new Then<Document>(callback) {
+									@Override
+									void next(Document bid) {
+										if (bid == null) {
+											callback.onResult(null, null);
+											return;
+										}
+										first(database, "ItemsUsersRegions",
+												new Document("users._id", ResultConsumer.value(bid, "items", "id_seller")), callback);
+									}
+								});
+					}
+				});
+			}
+		});
+		plans.put("UsersComments", new AsyncQueryPlan() {
+			@Override
+			public void execute(final MongoDatabase database, int userId, final Callback<Document> callback) {
+				first(database, "ItemsUsersRegions", new Document("users._id", userId), new Then<Document>(callback) {
+					@Override
+					void next(final Document item) {
+						if (item == null) {
+							callback.onResult(null, null);
+							return;
+						}
+						drain(database, "ItemsComments",
+								new Document("comments.id_user", ResultConsumer.value(item, "users", "_id")),
+								new Then<Integer>(callback) {
+									@Override
+									void next(Integer count) {
+										callback.onResult(item, null);
+									}
+								});
+					}
+				});
+			}
+		});
+		plans.put("ItemsComments", new AsyncQueryPlan() {
+			@Override
+			public void execute(MongoDatabase database, int userId, Callback<Document> callback) {
+				first(database, "ItemsComments", new Document("_id", User.getItemIds(userId).first()), callback);
+			}
+		});
+		plans.put("ItemsCommentsUsers", new AsyncQueryPlan() {
+			@Override
+			public void execute(final MongoDatabase database, int userId, final Callback<Document> callback) {
+				first(database, "ItemsComments", new Document("_id", User.getFirstCommentId(userId)),
+						new Then<Document>(callback) {
+							@Override
+							void next(Document item) {
+								if (item == null) {
+									callback.onResult(null, null);
+									return;
+								}
+								Object id = ResultConsumer.value(item, "comments", "id_user");
+								first(database, "ItemsUsersRegions", new Document("users._id", id), callback);
+							}
+						});
+			}
+		});
+		plans.put("ItemsUsers", new AsyncQueryPlan() {
+			@Override
+			public void execute(MongoDatabase database, int userId, Callback<Document> callback) {
+				first(database, "ItemsUsersRegions", new Document("_id", User.getItemIds(userId).first()), callback);
+			}
+		});
+		plans.put("ItemsBids", new AsyncQueryPlan() {
+			@Override
+			public void execute(MongoDatabase database, int userId, Callback<Document> callback) {
+				result(database, "BidsItems", new Document("items._id", User.getItemIds(userId).first()), callback);
+			}
+		});
+
+		return plans;
+	}
+
+	/**
+	 * The plans of {@link WorkloadModel#normalizedPlans()}.
+	 */
+	static Map<String, AsyncQueryPlan> normalizedPlans() {
+		Map<String, AsyncQueryPlan> plans = new LinkedHashMap<String, AsyncQueryPlan>();
+
+		plans.put("BidsUsers", join("Bids", Start.FIRST_BID, new Hop("Users", "id_user", "_id")));
+		plans.put("BidsItems", join("Bids", Start.FIRST_BID, new Hop("Items", "id_item", "_id")));
+		plans.put("UsersRegions", join("Users", Start.USER, new Hop("Regions", "id_region", "_id")));
+		plans.put("UsersItems", join("Users", Start.USER, new Hop("Items", "_id", "id_seller")));
+		plans.put("UsersBidsItems", join("Users", Start.USER, new Hop("Bids", "_id", "id_user"),
+				new Hop("Items", "id_item", "_id")));
+		plans.put("UsersBidsItemsUsers", join("Users", Start.USER, new Hop("Bids", "_id", "id_user"),
+				new Hop("Items", "id_item", "_id"), new Hop("Users", "id_seller", "_id")));
+		plans.put("UsersComments", join("Users", Start.USER, new Hop("Comments", "_id", "id_user")));
+		plans.put("ItemsComments", join("Items", Start.FIRST_ITEM, new Hop("Comments", "_id", "id_item")));
+		plans.put("ItemsCommentsUsers", join("Items", Start.FIRST_ITEM, new Hop("Comments", "_id", "id_item"),
+				new Hop("Users", "id_user", "_id")));
+		plans.put("ItemsUsers", join("Items", Start.FIRST_ITEM, new Hop("Users", "id_seller", "_id")));
+		plans.put("ItemsBids", join("Items", Start.FIRST_ITEM, new Hop("Bids", "_id", "id_item")));
+		plans.put("RegionsUsers", join("Regions", Start.REGION, new Hop("Users", "_id", "id_region")));
+
+		return plans;
+	}
+
+	/**
+	 * The document of a user a normalized join starts from.
+	 */
+	private enum Start {
+		USER {
+			@Override
+			int id(int userId) {
+				return userId;
+			}
+		},
+		FIRST_BID {
+			@Override
+			int id(int userId) {
+				return User.getFirstBidId(userId);
+			}
+		},
+		FIRST_ITEM {
+			@Override
+			int id(int userId) {
+				return User.getItemIds(userId).first();
+			}
+		},
+		REGION {
+			@Override
+			int id(int userId) {
+				return User.getRegionId(userId);
+			}
+		};
+
+		abstract int id(int userId);
+	}
+
+	private static AsyncQueryPlan join(final String collection, final Start start, final Hop... hops) {
+		return new AsyncQueryPlan() {
+			@Override
+			public void execute(MongoDatabase database, int userId, Callback<Document> callback) {
+				AsyncJoinExecutor.join(database, collection, start.id(userId), callback, hops);
+			}
+		};
+	}
+}
@@ -0,0 +1,33 @@
+package site.ycsb.db.RUBiS;
+
+import org.bson.Document;
+
+import com.mongodb.reactivestreams.client.MongoDatabase;
+
+/**
+ * The non-blocking variant of a {@link QueryPlan}, on the reactive streams
+ * driver.
+ *
+ * @author vincent
+ *
+ */
+public interface AsyncQueryPlan {
+
+	/**
+	 * Completes a non-blocking query or plan, once.
+	 */
+	public interface Callback<T> {
+
+		/**
+		 * Called with the result, or with the failure and a null result.
+		 */
+		public void onResult(T result, Throwable t);
+	}
+
+	/**
+	 * Starts the plan for the given user and returns without waiting for it. The
+	 * callback gets its (first) result, null if nothing was found, or its failure.
+	 */
+	public void execute(MongoDatabase database, int userId, Callback<Document> callback);
+
+}
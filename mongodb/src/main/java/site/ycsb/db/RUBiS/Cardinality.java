@@ -0,0 +1,306 @@
+package site.ycsb.db.RUBiS;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import site.ycsb.generator.ZipfianGenerator;
+
+/**
+ * The number of children of every parent in a one-to-many relation of the data
+ * model, e.g. the number of bids of an item.
+ *
+ * Children are numbered in fixed slots, the children of parent p are the ids
+ * [p * slots(), p * slots() + count(p)). The parent of a child is therefore
+ * child / slots(), and the children of a parent are found without any lookup.
+ *
+ * The count of a parent is a pure function of the parent id: a hash of the id is
+ * mapped onto the distribution through an alias table. Load and run phases, and
+ * all threads, see the same counts, and every count is computed in O(1).
+ *
+ * Configured per relation with:
+ * <ul>
+ * <li>&lt;name&gt;: the count, or the mean count of the uniform, zipfian and
+ * exponential distributions.</li>
+ * <li>&lt;name&gt;.distribution: constant (default), uniform, zipfian,
+ * exponential or histogram.</li>
+ * <li>&lt;name&gt;.min, &lt;name&gt;.max: the bounds of the count. The default
+ * min is 0. The default max is 2 * count - min for uniform, the smallest max
+ * whose mean reaches count for zipfian, and 10 * count for exponential. An
+ * explicit max bounds zipfian, its mean then follows from the bounds.</li>
+ * <li>&lt;name&gt;.zipfian.constant: the skew of zipfian.</li>
+ * <li>&lt;name&gt;.histogram: a file in the format of the HistogramGenerator,
+ * bucket i weighs count i * BlockSize.</li>
+ * </ul>
+ *
+ * @author vincent
+ *
+ */
+public abstract class Cardinality {
+
+	/**
+	 * The largest count, the number of id slots of every parent.
+	 */
+	public abstract int max();
+
+	/**
+	 * The number of children of the given parent, in [0, max()].
+	 */
+	public abstract int count(int parentId);
+
+	/**
+	 * The number of ids reserved for the children of every parent.
+	 */
+	public int slots() {
+		return Math.max(max(), 1);
+	}
+
+	/**
+	 * The first child id of the given parent.
+	 */
+	public int firstChild(int parentId) {
+		return parentId * slots();
+	}
+
+	/**
+	 * The parent of the given child id.
+	 */
+	public int parent(int childId) {
+		return childId / slots();
+	}
+
+	public static Cardinality constant(int count) {
+		return new ConstantCardinality(count);
+	}
+
+	/**
+	 * Creates the cardinality of a relation from its properties, see the class
+	 * documentation.
+	 */
+	public static Cardinality fromProperties(Properties props, String name, int defaultCount) {
+		int count = Integer.parseInt(props.getProperty(name, String.valueOf(defaultCount)));
+		String distribution = props.getProperty(name + ".distribution", "constant");
+
+		if ("constant".equals(distribution))
+			return constant(count);
+
+		if ("histogram".equals(distribution))
+			return new AliasCardinality(name, readHistogram(props.getProperty(name + ".histogram"), name));
+
+		int min = Integer.parseInt(props.getProperty(name + ".min", "0"));
+		if (min < 0)
+			throw new IllegalArgumentException("Negative " + name + ".min: " + min);
+		double theta = Double.parseDouble(
+				props.getProperty(name + ".zipfian.constant", String.valueOf(ZipfianGenerator.ZIPFIAN_CONSTANT)));
+
+		String maxValue = props.getProperty(name + ".max");
+		int max;
+		if (maxValue != null)
+			max = Integer.parseInt(maxValue);
+		else if ("uniform".equals(distribution))
+			max = Math.max(2 * count - min, min);
+		else if ("zipfian".equals(distribution))
+			max = zipfianMax(name, min, count, theta);
+		else
+			max = Math.max(10 * count, min);
+		if (max < min)
+			throw new IllegalArgumentException("Invalid bounds of " + name + ": [" + min + ", " + max + "]");
+
+		double[] weights = new double[max + 1];
+		if ("uniform".equals(distribution)) {
+			for (int k = min; k <= max; k++)
+				weights[k] = 1;
+		} else if ("zipfian".equals(distribution)) {
+			for (int k = min; k <= max; k++)
+				weights[k] = zipfianWeight(k - min, theta);
+		} else if ("exponential".equals(distribution)) {
+			// Geometric, the discrete exponential distribution with the given mean.
+			double mean = Math.max(count - min, 1);
+			for (int k = min; k <= max; k++)
+				weights[k] = Math.pow(mean / (mean + 1), k - min);
+		} else {
+			throw new IllegalArgumentException("Unknown " + name + ".distribution: " + distribution);
+		}
+
+		return new AliasCardinality(name, weights);
+	}
+
+	/**
+	 * The weight of the count min + rank, zipfian gives the heaviest weight to
+	 * min.
+	 */
+	private static double zipfianWeight(int rank, double theta) {
+		return 1 / Math.pow(rank + 1, theta);
+	}
+
+	/**
+	 * Returns the smallest max for which the zipfian distribution over [min, max]
+	 * has a mean of at least count. The mean grows with max, slower the larger
+	 * theta.
+	 */
+	static int zipfianMax(String name, int min, int count, double theta) {
+		if (count <= min)
+			return min;
+
+		// Beyond this max the mean of a steep distribution may never reach count.
+		long limit = 1000L * count;
+		double total = 0;
+		double weighted = 0;
+		for (int max = min; max <= limit; max++) {
+			double weight = zipfianWeight(max - min, theta);
+			total += weight;
+			weighted += weight * max;
+			if (weighted / total >= count)
+				return max;
+		}
+		throw new IllegalArgumentException("The mean of " + name + " does not reach " + count + " with "
+				+ name + ".zipfian.constant " + theta + ", lower it or set " + name + ".max");
+	}
+
+	private static double[] readHistogram(String file, String name) {
+		if (file == null)
+			throw new IllegalArgumentException(name + ".histogram must name a histogram file");
+
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				String line = in.readLine();
+				if (line == null || !line.startsWith("BlockSize\t"))
+					throw new IOException("First line of histogram is not the BlockSize");
+				int blockSize = Integer.parseInt(line.split("\t")[1]);
+
+				List<Long> buckets = new ArrayList<Long>();
+				while ((line = in.readLine()) != null) {
+					String[] bucket = line.split("\t");
+					int i = Integer.parseInt(bucket[0]);
+					while (buckets.size() <= i)
+						buckets.add(0L);
+					buckets.set(i, Long.parseLong(bucket[1]));
+				}
+
+				if (buckets.isEmpty())
+					throw new IllegalArgumentException(name + ".histogram has no buckets: " + file);
+				if (blockSize < 1)
+					throw new IllegalArgumentException(name + ".histogram has an invalid BlockSize: " + blockSize);
+
+				double[] weights = new double[(buckets.size() - 1) * blockSize + 1];
+				for (int i = 0; i < buckets.size(); i++)
+					weights[i * blockSize] = buckets.get(i);
+				return weights;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid " + name + ".histogram: " + file, e);
+		}
+	}
+
+	private static class ConstantCardinality extends Cardinality {
+
+		private final int count;
+
+		ConstantCardinality(int count) {
+			if (count < 0)
+				throw new IllegalArgumentException("Negative count: " + count);
+			this.count = count;
+		}
+
+		@Override
+		public int max() {
+			return count;
+		}
+
+		@Override
+		public int count(int parentId) {
+			return count;
+		}
+	}
+
+	/**
+	 * Samples counts with Walker's alias method, the parent id hash picks a column
+	 * and decides between the column and its alias.
+	 */
+	private static class AliasCardinality extends Cardinality {
+
+		private final long salt;
+
+		private final int max;
+
+		private final double[] probability;
+
+		private final int[] alias;
+
+		AliasCardinality(String name, double[] weights) {
+			this.salt = PayloadSource.mix(name.hashCode());
+
+			double total = 0;
+			int max = 0;
+			for (int k = 0; k < weights.length; k++) {
+				if (weights[k] < 0)
+					throw new IllegalArgumentException("Negative weight in " + name);
+				total += weights[k];
+				if (weights[k] > 0)
+					max = k;
+			}
+			if (total <= 0)
+				throw new IllegalArgumentException("No counts with a positive weight in " + name);
+			this.max = max;
+
+			// Counts above the largest one with a weight are never drawn.
+			int n = max + 1;
+
+			probability = new double[n];
+			alias = new int[n];
+
+			int[] small = new int[n];
+			int[] large = new int[n];
+			int smallSize = 0;
+			int largeSize = 0;
+
+			double[] scaled = new double[n];
+			for (int k = 0; k < n; k++) {
+				scaled[k] = weights[k] * n / total;
+				if (scaled[k] < 1)
+					small[smallSize++] = k;
+				else
+					large[largeSize++] = k;
+			}
+
+			while (smallSize > 0 && largeSize > 0) {
+				int s = small[--smallSize];
+				int l = large[--largeSize];
+
+				probability[s] = scaled[s];
+				alias[s] = l;
+
+				scaled[l] = scaled[l] + scaled[s] - 1;
+				if (scaled[l] < 1)
+					small[smallSize++] = l;
+				else
+					large[largeSize++] = l;
+			}
+			while (largeSize > 0)
+				probability[large[--largeSize]] = 1;
+			while (smallSize > 0)
+				probability[small[--smallSize]] = 1;
+		}
+
+		@Override
+		public int max() {
+			return max;
+		}
+
+		@Override
+		public int count(int parentId) {
+			long hash = PayloadSource.mix(salt + parentId);
+
+			int column = (int) (((hash >>> 32) * probability.length) >>> 32);
+			double coin = (hash & 0xffffffffL) / (double) (1L << 32);
+
+			return coin < probability[column] ? column : alias[column];
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded cache with CLOCK eviction, split into shards that are locked
+ * independently, so client threads looking up different keys rarely contend.
+ *
+ * Every shard keeps its entries in a fixed ring of slots with a referenced bit.
+ * A hit sets the bit, an insert into a full shard advances the hand over the
+ * ring, clearing set bits, and replaces the first entry without one.
+ *
+ * A value read from the source may be stale by the time it is put when a
+ * concurrent writer invalidated it in between. Callers therefore take a
+ * {@link #stamp(Object)} before reading the source and pass it to
+ * {@link #put(Object, Object, long)}, which drops the value if its shard was
+ * invalidated since.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ *
+ * @author vincent
+ *
+ */
+public class ClockCache<K, V> {
+
+	private final Shard<K, V>[] shards;
+
+	/**
+	 * @param capacity the most entries, spread evenly over the shards.
+	 * @param shardCount the number of independently locked shards.
+	 */
+	public ClockCache(int capacity, int shardCount) {
+		if (capacity < 1 || shardCount < 1)
+			throw new IllegalArgumentException("Capacity and shards must be positive: " + capacity + ", " + shardCount);
+
+		shardCount = Math.min(shardCount, capacity);
+		@SuppressWarnings("unchecked")
+		Shard<K, V>[] created = (Shard<K, V>[]) new Shard<?, ?>[shardCount];
+		shards = created;
+		for (int i = 0; i < shardCount; i++)
+			shards[i] = new Shard<K, V>(capacity / shardCount + (i < capacity % shardCount ? 1 : 0));
+	}
+
+	/**
+	 * Returns the cached value of the key, null if it is not cached.
+	 */
+	public V get(K key) {
+		return shard(key).get(key);
+	}
+
+	/**
+	 * Returns the stamp to put a value of the key with that is read from the source
+	 * after this call.
+	 */
+	public long stamp(K key) {
+		return shard(key).invalidations;
+	}
+
+	/**
+	 * Caches the value of the key, unless the key's shard was invalidated after
+	 * the stamp was taken.
+	 */
+	public void put(K key, V value, long stamp) {
+		shard(key).put(key, value, stamp);
+	}
+
+	/**
+	 * Removes the key, and keeps values read before from being put.
+	 */
+	public void invalidate(K key) {
+		shard(key).invalidate(key);
+	}
+
+	/**
+	 * Returns the number of cached entries.
+	 */
+	public int size() {
+		int size = 0;
+		for (Shard<K, V> shard : shards)
+			size += shard.size();
+		return size;
+	}
+
+	private Shard<K, V> shard(K key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return shards[(hash & Integer.MAX_VALUE) % shards.length];
+	}
+
+	/**
+	 * One independently locked part of the cache.
+	 */
+	private static class Shard<K, V> {
+
+		private final Object[] keys;
+
+		private final Object[] values;
+
+		private final boolean[] referenced;
+
+		private final Map<K, Integer> slots;
+
+		/** The slots never used or freed by an invalidation, the first free ones. */
+		private final int[] free;
+
+		private int freeCount;
+
+		private int hand;
+
+		private volatile long invalidations;
+
+		Shard(int capacity) {
+			keys = new Object[capacity];
+			values = new Object[capacity];
+			referenced = new boolean[capacity];
+			slots = new HashMap<K, Integer>(capacity * 4 / 3 + 1);
+			free = new int[capacity];
+			for (int i = 0; i < capacity; i++)
+				free[i] = capacity - 1 - i;
+			freeCount = capacity;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized V get(K key) {
+			Integer slot = slots.get(key);
+			if (slot == null)
+				return null;
+
+			referenced[slot] = true;
+			return (V) values[slot];
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized void put(K key, V value, long stamp) {
+			if (stamp != invalidations)
+				return;
+
+			Integer existing = slots.get(key);
+			if (existing != null) {
+				values[existing] = value;
+				referenced[existing] = true;
+				return;
+			}
+
+			int slot;
+			if (freeCount > 0) {
+				slot = free[--freeCount];
+			} else {
+				while (referenced[hand]) {
+					referenced[hand] = false;
+					hand = (hand + 1) % keys.length;
+				}
+				slot = hand;
+				hand = (hand + 1) % keys.length;
+				slots.remove((K) keys[slot]);
+			}
+
+			keys[slot] = key;
+			values[slot] = value;
+			referenced[slot] = false;
+			slots.put(key, slot);
+		}
+
+		synchronized void invalidate(K key) {
+			invalidations++;
+
+			Integer slot = slots.remove(key);
+			if (slot == null)
+				return;
+
+			keys[slot] = null;
+			values[slot] = null;
+			referenced[slot] = false;
+			free[freeCount++] = slot;
+		}
+
+		synchronized int size() {
+			return slots.size();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package site.ycsb.db.RUBiS;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Parses the arguments of the RUBiS command line tools, the -P and -p options of
+ * the YCSB client.
+ *
+ * @author vincent
+ *
+ */
+class CommandLine {
+
+	/**
+	 * Returns the properties of all -P property files and -p name=value pairs, in
+	 * order. Prints the usage and exits on invalid arguments.
+	 */
+	static Properties parse(String[] args, String tool) throws IOException {
+		Properties props = new Properties();
+
+		for (int i = 0; i < args.length; i++) {
+			if ("-P".equals(args[i]) && i + 1 < args.length) {
+				InputStream in = new FileInputStream(args[++i]);
+				try {
+					props.load(in);
+				} finally {
+					in.close();
+				}
+			} else if ("-p".equals(args[i]) && i + 1 < args.length) {
+				String property = args[++i];
+				int eq = property.indexOf('=');
+				if (eq < 0) {
+					System.err.println("Argument '-p' expects name=value, got: " + property);
+					System.exit(1);
+				}
+				props.setProperty(property.substring(0, eq), property.substring(eq + 1));
+			} else {
+				System.err.println("Usage: " + tool + " [-P propertyfile] [-p name=value]...");
+				System.exit(1);
+			}
+		}
+
+		return props;
+	}
+}
@@ -0,0 +1,200 @@
+package site.ycsb.db.RUBiS;
+
+/**
+ * A linear cost model of a query plan: the latency of a plan is a fixed cost plus
+ * a cost per document the server examines, per round trip and per byte
+ * transferred.
+ *
+ * {@link #fit} finds the coefficients that best explain measured latencies,
+ * {@link #kendallTau} tells how well two cost estimates agree on the order of
+ * the plans.
+ *
+ * @author vincent
+ *
+ */
+public class CostModel {
+
+	private final double fixed;
+
+	private final double perDocument;
+
+	private final double perRoundTrip;
+
+	private final double perByte;
+
+	public CostModel(double fixed, double perDocument, double perRoundTrip, double perByte) {
+		this.fixed = fixed;
+		this.perDocument = perDocument;
+		this.perRoundTrip = perRoundTrip;
+		this.perByte = perByte;
+	}
+
+	public double getFixed() {
+		return fixed;
+	}
+
+	public double getPerDocument() {
+		return perDocument;
+	}
+
+	public double getPerRoundTrip() {
+		return perRoundTrip;
+	}
+
+	public double getPerByte() {
+		return perByte;
+	}
+
+	public double cost(double documents, double roundTrips, double bytes) {
+		return fixed + perDocument * documents + perRoundTrip * roundTrips + perByte * bytes;
+	}
+
+	/**
+	 * The coefficient of determination of the model on the given measurements.
+	 */
+	public double rSquared(double[] documents, double[] roundTrips, double[] bytes, double[] latencies) {
+		double mean = 0;
+		for (double latency : latencies)
+			mean += latency / latencies.length;
+
+		double residual = 0;
+		double total = 0;
+		for (int i = 0; i < latencies.length; i++) {
+			double error = latencies[i] - cost(documents[i], roundTrips[i], bytes[i]);
+			residual += error * error;
+			total += (latencies[i] - mean) * (latencies[i] - mean);
+		}
+
+		return total > 0 ? 1 - residual / total : 1;
+	}
+
+	/**
+	 * Fits the coefficients to the measured latencies of a set of plans by least
+	 * squares. A feature that is the same for all plans gets no cost of its own, it
+	 * adds to the fixed cost.
+	 */
+	public static CostModel fit(double[] documents, double[] roundTrips, double[] bytes, double[] latencies) {
+		int n = latencies.length;
+		double[][] features = { documents, roundTrips, bytes };
+
+		// Centered and scaled features keep the normal equations well conditioned,
+		// bytes are orders of magnitude larger than round trips.
+		double[] mean = new double[3];
+		double[] scale = new double[3];
+		double latencyMean = 0;
+		for (int i = 0; i < n; i++)
+			latencyMean += latencies[i];
+		latencyMean /= n;
+		for (int f = 0; f < 3; f++) {
+			for (int i = 0; i < n; i++)
+				mean[f] += features[f][i];
+			mean[f] /= n;
+			for (int i = 0; i < n; i++)
+				scale[f] = Math.max(scale[f], Math.abs(features[f][i] - mean[f]));
+			// Rounding leaves a spread on constant features.
+			if (scale[f] <= 1e-9 * Math.max(Math.abs(mean[f]), 1))
+				scale[f] = 0;
+		}
+
+		double[][] a = new double[3][4];
+		for (int i = 0; i < n; i++) {
+			double[] x = new double[3];
+			for (int f = 0; f < 3; f++)
+				x[f] = scale[f] > 0 ? (features[f][i] - mean[f]) / scale[f] : 0;
+
+			for (int r = 0; r < 3; r++) {
+				for (int c = 0; c < 3; c++)
+					a[r][c] += x[r] * x[c];
+				a[r][3] += x[r] * (latencies[i] - latencyMean);
+			}
+		}
+
+		double[] scaled = solve(a);
+		double[] coefficients = new double[3];
+		double fixed = latencyMean;
+		for (int f = 0; f < 3; f++) {
+			coefficients[f] = scale[f] > 0 ? scaled[f] / scale[f] : 0;
+			fixed -= coefficients[f] * mean[f];
+		}
+
+		return new CostModel(fixed, coefficients[0], coefficients[1], coefficients[2]);
+	}
+
+	/**
+	 * Solves the augmented system by Gaussian elimination with partial pivoting.
+	 * Unknowns without a usable pivot, features that are constant or a linear
+	 * combination of others, are set to 0.
+	 */
+	private static double[] solve(double[][] a) {
+		int n = a.length;
+		boolean[] free = new boolean[n];
+
+		for (int p = 0; p < n; p++) {
+			int max = p;
+			for (int r = p + 1; r < n; r++)
+				if (Math.abs(a[r][p]) > Math.abs(a[max][p]))
+					max = r;
+			double[] row = a[p];
+			a[p] = a[max];
+			a[max] = row;
+
+			if (Math.abs(a[p][p]) < 1e-12) {
+				free[p] = true;
+				continue;
+			}
+			for (int r = p + 1; r < n; r++) {
+				double factor = a[r][p] / a[p][p];
+				for (int c = p; c <= n; c++)
+					a[r][c] -= factor * a[p][c];
+			}
+		}
+
+		double[] x = new double[n];
+		for (int r = n - 1; r >= 0; r--) {
+			if (free[r])
+				continue;
+			double sum = a[r][n];
+			for (int c = r + 1; c < n; c++)
+				sum -= a[r][c] * x[c];
+			x[r] = sum / a[r][r];
+		}
+		return x;
+	}
+
+	/**
+	 * Kendall's tau-b rank correlation: 1 if both estimates order all plans the
+	 * same, -1 if in reverse, 0 without agreement.
+	 */
+	public static double kendallTau(double[] a, double[] b) {
+		long concordant = 0;
+		long discordant = 0;
+		long tiesA = 0;
+		long tiesB = 0;
+
+		for (int i = 0; i < a.length; i++) {
+			for (int j = i + 1; j < a.length; j++) {
+				double da = Math.signum(a[i] - a[j]);
+				double db = Math.signum(b[i] - b[j]);
+				if (da == 0 && db == 0)
+					continue;
+				if (da == 0)
+					tiesA++;
+				else if (db == 0)
+					tiesB++;
+				else if (da == db)
+					concordant++;
+				else
+					discordant++;
+			}
+		}
+
+		double denominator = Math.sqrt((double) (concordant + discordant + tiesA) * (concordant + discordant + tiesB));
+		return denominator > 0 ? (concordant - discordant) / denominator : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("fixed %.1f us, %.3f us/document, %.1f us/round trip, %.5f us/byte", fixed, perDocument,
+				perRoundTrip, perByte);
+	}
+}
@@ -1,42 +1,175 @@
 package site.ycsb.db.RUBiS;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
 import java.util.Set;
 
-import org.apache.commons.lang3.RandomStringUtils;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
 
 import site.ycsb.ByteIterator;
+import site.ycsb.Client;
+import site.ycsb.Workload;
 
 public class DataModel {
 
-	private static int userItems = 5;
-
-	private static int userBids = 15;
+	/*
+	 * A user sells items, every item has bids and comments. The bids and comments
+	 * of a user are those on the items of the user.
+	 */
 
-	private static int userComments = 10;
+	private static Cardinality userItems = Cardinality.constant(5);
 
-	private static int itemComments = 2;
+	private static Cardinality itemBids = Cardinality.constant(3);
 
-	private static int itemBids = 3;
+	private static Cardinality itemComments = Cardinality.constant(2);
 
 	private static int nrOfRegions = 4;
 
+	/**
+	 * All collections of the data model.
+	 */
+	public static final List<String> COLLECTIONS = Collections.unmodifiableList(Arrays.asList("Users",
+			"UsersComments", "Items", "ItemsBids", "ItemsBidsUsers", "ItemsUsersRegions", "ItemsComments", "ItemsUsers",
+			"Comments", "Bids", "BidsUsers", "BidsUsersItems", "BidsItems", "Regions"));
+
+	/**
+	 * The collections that are generated, variants of other collections are not
+	 * built at all.
+	 */
+	private static Set<String> collections = new HashSet<String>(COLLECTIONS);
+
+	/**
+	 * The maximum number of base documents each thread keeps, 0 disables the cache.
+	 */
+	private static int baseCacheSize = 10000;
+
+	/**
+	 * Base documents generated by this thread, reused by all variants that embed
+	 * them.
+	 */
+	private static final ThreadLocal<BaseDocumentCache<Document>> BASE_DOCUMENTS = new ThreadLocal<BaseDocumentCache<Document>>() {
+		@Override
+		protected BaseDocumentCache<Document> initialValue() {
+			return new BaseDocumentCache<Document>(baseCacheSize);
+		}
+	};
+
+	/**
+	 * Encoded base documents of this thread, embedded as byte copies by the
+	 * {@link RawDocumentGenerator}.
+	 */
+	private static final ThreadLocal<BaseDocumentCache<RawBsonDocument>> RAW_BASE_DOCUMENTS = new ThreadLocal<BaseDocumentCache<RawBsonDocument>>() {
+		@Override
+		protected BaseDocumentCache<RawBsonDocument> initialValue() {
+			return new BaseDocumentCache<RawBsonDocument>(baseCacheSize);
+		}
+	};
+
+	private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+	/**
+	 * The source of all generated field values.
+	 */
+	private static PayloadSource payloadSource = PayloadSource.fromProperties(new Properties());
+
+	public static int getNrOfRegions() {
+		return nrOfRegions;
+	}
+
+	/**
+	 * Configures the data model. Must be called before any document is generated.
+	 */
+	public static void setProperties(Properties props) {
+		baseCacheSize = Integer.parseInt(props.getProperty("rubis.cache.size", String.valueOf(baseCacheSize)));
+		payloadSource = PayloadSource.fromProperties(props);
+		collections = parseCollections(props.getProperty("rubis.collections"));
+
+		userItems = Cardinality.fromProperties(props, "rubis.user.items", 5);
+		itemBids = Cardinality.fromProperties(props, "rubis.item.bids", 3);
+		itemComments = Cardinality.fromProperties(props, "rubis.item.comments", 2);
+		nrOfRegions = Integer.parseInt(props.getProperty("rubis.regions", "4"));
+		if (nrOfRegions < 1)
+			throw new IllegalArgumentException("rubis.regions must be at least 1: " + nrOfRegions);
+
+		// Ids are computed from the absolute user id, the largest one is that of the
+		// last loaded user or of the last user a run picks from.
+		long recordCount = Long.parseLong(props.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT));
+		long insertStart = Long.parseLong(
+				props.getProperty(Workload.INSERT_START_PROPERTY, Workload.INSERT_START_PROPERTY_DEFAULT));
+		long insertCount = Long.parseLong(
+				props.getProperty(Workload.INSERT_COUNT_PROPERTY, String.valueOf(recordCount - insertStart)));
+		long users = Math.max(insertStart + insertCount, recordCount);
+		if (users * userItems.slots() * Math.max(itemBids.slots(), itemComments.slots()) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("RUBiS ids of " + users + " users exceed the int range, lower "
+					+ "recordcount, insertstart + insertcount or the maximum cardinalities");
+	}
+
+	/**
+	 * Returns whether the given collection is generated.
+	 */
+	public static boolean generates(String collection) {
+		return collections.contains(collection);
+	}
+
+	/**
+	 * Parses a comma separated list of collections, null or empty for all
+	 * collections.
+	 */
+	static Set<String> parseCollections(String names) {
+		Set<String> parsed = new HashSet<String>();
+		if (names == null || names.trim().isEmpty()) {
+			parsed.addAll(COLLECTIONS);
+			return parsed;
+		}
+
+		for (String name : names.split(",")) {
+			name = name.trim();
+			if (name.isEmpty())
+				continue;
+			if (!COLLECTIONS.contains(name))
+				throw new IllegalArgumentException("Unknown rubis.collections entry: " + name + ", expected one of " + COLLECTIONS);
+			parsed.add(name);
+		}
+
+		return parsed;
+	}
+
+	/**
+	 * Returns the child ids of a parent in a one-to-many relation.
+	 */
+	private static IdRange children(Cardinality cardinality, int parentId) {
+		return new IdRange(cardinality.firstChild(parentId), cardinality.count(parentId));
+	}
+
+	/**
+	 * Generates the alphanumeric value of a field.
+	 */
+	private static String payload(Entity entity, int id, String field, int length) {
+		return payloadSource.alphanumeric(entity, id, field, length);
+	}
+
 	public static void main(String[] args) {
 //		System.out.println(User.getItemIds(0));
 //		System.out.println(User.getItemIds(1));
 //
-//		System.out.println(User.getBidIds(1));
+//		System.out.println(User.getFirstBidId(1));
 //
 //		System.out.println(Item.getUserId(0));
 //		System.out.println(Item.getUserId(4));
 //		System.out.println(Item.getUserId(10));
 
-		DocumentGenerator gen = DocumentGenerator.getInstance();
+		DocumentGenerator gen = new DocumentGenerator(0, 1);
 
 //		System.out.println(User.generateDocument(1));
 //		System.out.println(new User(1).generateDocuments());
@@ -47,23 +180,73 @@ public class DataModel {
 	/**
 	 * Document generator factory.
 	 * 
-	 * Starts at creating a user with record ID = 1. => Triggers creation of Item,
-	 * Comment, Bid record creation.
+	 * Each generator owns a disjoint, contiguous range of user ids. Creating a user
+	 * record triggers creation of Item, Comment, Bid record creation.
+	 * 
+	 * A generator is not thread-safe, create one per client thread with
+	 * {@link #forThread(Properties, int, int)}.
 	 * 
 	 * @author vincent
 	 *
 	 */
-	public static class DocumentGenerator {
+	public static class DocumentGenerator implements RecordFactory<Document> {
+
+		/** First user id of this generator (inclusive). */
+		private final int startUserId;
+
+		/** Last user id of this generator (exclusive). */
+		private final int endUserId;
+
+		private int recordId;
+
+		public DocumentGenerator(int startUserId, int userCount) {
+			this.startUserId = startUserId;
+			this.endUserId = startUserId + userCount;
+			this.recordId = startUserId;
+		}
+
+		/**
+		 * Creates the generator for one client thread. The users
+		 * [insertstart, insertstart + insertcount) are split over all threads the same
+		 * way the Client splits the operation count, so thread i generates exactly the
+		 * users it is asked to insert.
+		 */
+		public static DocumentGenerator forThread(Properties props, int threadId, int threadCount) {
+			int recordCount = Integer.parseInt(props.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT));
+			int insertStart = Integer.parseInt(
+					props.getProperty(Workload.INSERT_START_PROPERTY, Workload.INSERT_START_PROPERTY_DEFAULT));
+			int insertCount = Integer.parseInt(
+					props.getProperty(Workload.INSERT_COUNT_PROPERTY, String.valueOf(recordCount - insertStart)));
 
-		private static DocumentGenerator instance = null;
+			int usersPerThread = insertCount / threadCount;
+			int remainder = insertCount % threadCount;
 
-		private int recordId = 0;
+			int start = insertStart + threadId * usersPerThread + Math.min(threadId, remainder);
+			int count = usersPerThread + (threadId < remainder ? 1 : 0);
 
-		public static DocumentGenerator getInstance() {
-			if (instance == null)
-				instance = new DocumentGenerator();
+			return new DocumentGenerator(start, count);
+		}
+
+		public int getStartUserId() {
+			return startUserId;
+		}
+
+		public int getEndUserId() {
+			return endUserId;
+		}
+
+		public boolean hasNext() {
+			return recordId < endUserId;
+		}
+
+		/**
+		 * Returns the next user id of this generator's range.
+		 */
+		public int nextUserId() {
+			if (!hasNext())
+				throw new NoSuchElementException("User range [" + startUserId + ", " + endUserId + ") exhausted");
 
-			return instance;
+			return recordId++;
 		}
 
 		/**
@@ -72,6 +255,9 @@ public class DataModel {
 		 * @return
 		 */
 		public void createRegions(Map<String, Set<Document>> generatedDoc) {
+			if (!generates("Regions"))
+				return;
+
 			generatedDoc.put("Regions", new HashSet<Document>());
 
 			// create Regions.
@@ -90,21 +276,27 @@ public class DataModel {
 		 * comments486 ] ]
 		 */
 		public Map<String, Set<Document>> createRecords() {
-			Map<String, Set<Document>> generatedDocuments = new HashMap<String, Set<Document>>();
+			return createRecords(nextUserId());
+		}
 
-			int userId = recordId;
-			recordId++;
+		/**
+		 * Creates all records of the given user. Does not touch the generator's range,
+		 * so the same user always results in records with the same ids.
+		 */
+		@Override
+		public Map<String, Set<Document>> createRecords(int userId) {
+			Map<String, Set<Document>> generatedDocuments = new HashMap<String, Set<Document>>();
 
 			createUser(userId, generatedDocuments);
 
-			List<Integer> itemIds = User.getItemIds(userId);
+			IdRange itemIds = User.getItemIds(userId);
 			createItems(itemIds, generatedDocuments);
 
-			List<Integer> commentIds = User.getCommentIds(userId);
-			createComments(commentIds, generatedDocuments);
+			for (int i = 0; i < itemIds.size(); i++)
+				createComments(Item.getCommentIds(itemIds.get(i)), generatedDocuments);
 
-			List<Integer> bidIds = User.getBidIds(userId);
-			createBids(bidIds, generatedDocuments);
+			for (int i = 0; i < itemIds.size(); i++)
+				createBids(Item.getBidIds(itemIds.get(i)), generatedDocuments);
 			
 			if(userId == 0) 
 				createRegions(generatedDocuments);
@@ -130,23 +322,37 @@ public class DataModel {
 			merge(generatedDocuments, new User(userId).generateDocuments());
 		}
 
-		private void createBids(List<Integer> bidIds, Map<String, Set<Document>> generatedDocuments) {
-			for (int bidId : bidIds)
-				merge(generatedDocuments, new Bid(bidId).generateDocuments());
+		private void createBids(IdRange bidIds, Map<String, Set<Document>> generatedDocuments) {
+			for (int i = 0; i < bidIds.size(); i++)
+				merge(generatedDocuments, new Bid(bidIds.get(i)).generateDocuments());
 		}
 
-		private void createComments(List<Integer> commentIds, Map<String, Set<Document>> generatedDocuments) {
-			for (int commentId : commentIds)
-				merge(generatedDocuments, new Comment(commentId).generateDocuments());
+		private void createComments(IdRange commentIds, Map<String, Set<Document>> generatedDocuments) {
+			for (int i = 0; i < commentIds.size(); i++)
+				merge(generatedDocuments, new Comment(commentIds.get(i)).generateDocuments());
 		}
 
-		private void createItems(List<Integer> itemIds, Map<String, Set<Document>> generatedDocuments) {
-			for (int itemId : itemIds)
-				merge(generatedDocuments, new Item(itemId).generateDocuments());
+		private void createItems(IdRange itemIds, Map<String, Set<Document>> generatedDocuments) {
+			for (int i = 0; i < itemIds.size(); i++)
+				merge(generatedDocuments, new Item(itemIds.get(i)).generateDocuments());
 		}
 
 	}
 
+	/**
+	 * Creates the records of one user, grouped per collection.
+	 *
+	 * @param <T> The type of the generated documents.
+	 */
+	public interface RecordFactory<T> {
+
+		/**
+		 * Creates all records of the given user. Must be thread-safe.
+		 */
+		public Map<String, ? extends Collection<T>> createRecords(int userId);
+
+	}
+
 	/**
 	 * TODO: naming convention of generate: always generateItemsRegions (meervoud)
 	 * of ook generateItemRegion
@@ -157,8 +363,8 @@ public class DataModel {
 	public interface DocumentModel {
 
 		/**
-		 * Creates all possible variants of the document in various collections, where
-		 * it is the TOP-level document.
+		 * Creates all variants of the document in the generated collections, where it
+		 * is the TOP-level document. See {@link DataModel#generates(String)}.
 		 * 
 		 * Each variant may embed additional documents.
 		 */
@@ -166,6 +372,107 @@ public class DataModel {
 
 	}
 
+	/**
+	 * The entities of the data model that have a 1-level base document.
+	 */
+	public enum Entity {
+		USER {
+			@Override
+			Document create(int id) {
+				return User.createDocument(id);
+			}
+		},
+		ITEM {
+			@Override
+			Document create(int id) {
+				return Item.createDocument(id);
+			}
+		},
+		BID {
+			@Override
+			Document create(int id) {
+				return Bid.createDocument(id);
+			}
+		},
+		COMMENT {
+			@Override
+			Document create(int id) {
+				return Comment.createDocument(id);
+			}
+		},
+		REGION {
+			@Override
+			Document create(int id) {
+				return Region.createDocument(id);
+			}
+		};
+
+		abstract Document create(int id);
+	}
+
+	/**
+	 * Returns the base document of an entity. The document is generated once per
+	 * thread and cached, every call returns a copy that can be extended with
+	 * embedded documents. All variants of an entity therefore hold the same values.
+	 */
+	static Document baseDocument(Entity entity, int id) {
+		return new Document(cachedBaseDocument(entity, id));
+	}
+
+	/**
+	 * Returns the encoded base document of an entity, holding the same values as
+	 * {@link #baseDocument(Entity, int)}.
+	 */
+	static RawBsonDocument rawBaseDocument(Entity entity, int id) {
+		BaseDocumentCache<RawBsonDocument> cache = RAW_BASE_DOCUMENTS.get();
+		Long key = BaseDocumentCache.key(entity, id);
+
+		RawBsonDocument base = cache.get(key);
+		if (base == null) {
+			base = new RawBsonDocument(cachedBaseDocument(entity, id), DOCUMENT_CODEC);
+			cache.put(key, base);
+		}
+
+		return base;
+	}
+
+	private static Document cachedBaseDocument(Entity entity, int id) {
+		BaseDocumentCache<Document> cache = BASE_DOCUMENTS.get();
+		Long key = BaseDocumentCache.key(entity, id);
+
+		Document base = cache.get(key);
+		if (base == null) {
+			base = entity.create(id);
+			cache.put(key, base);
+		}
+
+		return base;
+	}
+
+	/**
+	 * Size-bounded LRU cache of base documents keyed by (entity, id).
+	 */
+	private static class BaseDocumentCache<V> extends LinkedHashMap<Long, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		BaseDocumentCache(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		static Long key(Entity entity, int id) {
+			return Long.valueOf(((long) entity.ordinal() << 32) | (id & 0xffffffffL));
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+
 	/**
 	 * Create all user records with User as top-level node. Persist into MongoDB.
 	 * 
@@ -184,10 +491,12 @@ public class DataModel {
 			Map<String, Document> documentPerCollection = new HashMap<String, Document>();
 
 			// create Users
-			documentPerCollection.put("Users", generateDocument(this.userId));
+			if (generates("Users"))
+				documentPerCollection.put("Users", generateDocument(this.userId));
 
 			// create UsersComments
-			documentPerCollection.put("UsersComments", generateDocumentUserComments(this.userId));
+			if (generates("UsersComments"))
+				documentPerCollection.put("UsersComments", generateDocumentUserComments(this.userId));
 
 			return documentPerCollection;
 		}
@@ -196,12 +505,16 @@ public class DataModel {
 		 * Create 1-level User document
 		 */
 		public static Document generateDocument(int id) {
+			return baseDocument(Entity.USER, id);
+		}
+
+		private static Document createDocument(int id) {
 			Document doc = new Document("_id", id);
 
-			doc.put("firstName", RandomStringUtils.randomAlphanumeric(20)); // 20
-			doc.put("lastName", RandomStringUtils.randomAlphanumeric(25)); // 25
+			doc.put("firstName", payload(Entity.USER, id, "firstName", 20)); // 20
+			doc.put("lastName", payload(Entity.USER, id, "lastName", 25)); // 25
 
-			doc.put("about", RandomStringUtils.randomAlphanumeric(70));
+			doc.put("about", payload(Entity.USER, id, "about", 70));
 
 			doc.put("id_region", getRegionId(id));
 
@@ -217,8 +530,12 @@ public class DataModel {
 			// Add comments
 			ArrayList<Document> comments = new ArrayList<Document>();
 
-			for (int commentId : getCommentIds(userId))
-				comments.add(Comment.generateDocument(commentId));
+			IdRange itemIds = getItemIds(userId);
+			for (int i = 0; i < itemIds.size(); i++) {
+				IdRange commentIds = Item.getCommentIds(itemIds.get(i));
+				for (int j = 0; j < commentIds.size(); j++)
+					comments.add(Comment.generateDocument(commentIds.get(j)));
+			}
 
 			userComments.put("comments", comments);
 
@@ -241,8 +558,9 @@ public class DataModel {
 			// Add items
 			ArrayList<Document> items = new ArrayList<Document>();
 
-			for (int itemId : getItemIds(userId)) {
-				items.add(Item.generateDocument(itemId));
+			IdRange itemIds = getItemIds(userId);
+			for (int i = 0; i < itemIds.size(); i++) {
+				items.add(Item.generateDocument(itemIds.get(i)));
 			}
 
 			userDoc.append("items", items);
@@ -254,43 +572,34 @@ public class DataModel {
 			return userId % nrOfRegions;
 		}
 
-		public static List<Integer> getItemIds(int userId) {
-			ArrayList<Integer> itemIds = new ArrayList<Integer>();
-
-			int startId = userId * userItems;
-			int endId = (userId + 1) * (userItems);
-
-			for (int i = startId; i < endId; i++) {
-				itemIds.add(i);
-			}
-
-			return itemIds;
+		public static IdRange getItemIds(int userId) {
+			return children(userItems, userId);
 		}
 
-		public static List<Integer> getBidIds(int userId) {
-			ArrayList<Integer> bidIds = new ArrayList<Integer>();
-
-			int startId = userId * userBids;
-			int endId = (userId + 1) * (userBids);
-
-			for (int i = startId; i < endId; i++) {
-				bidIds.add(i);
-			}
-
-			return bidIds;
+		/**
+		 * Returns the first bid on the items of the user. The bids of a user are
+		 * those of {@link Item#getBidIds(int)} of every item of the user.
+		 */
+		public static int getFirstBidId(int userId) {
+			return first(itemBids, userId, "bids");
 		}
 
-		public static List<Integer> getCommentIds(int userId) {
-			ArrayList<Integer> commentIds = new ArrayList<Integer>();
-
-			int startId = (userId) * userComments;
-			int endId = (userId + 1) * (userComments);
+		/**
+		 * Returns the first comment on the items of the user.
+		 */
+		public static int getFirstCommentId(int userId) {
+			return first(itemComments, userId, "comments");
+		}
 
-			for (int i = startId; i < endId; i++) {
-				commentIds.add(i);
+		private static int first(Cardinality relation, int userId, String name) {
+			IdRange itemIds = getItemIds(userId);
+			for (int i = 0; i < itemIds.size(); i++) {
+				int itemId = itemIds.get(i);
+				if (relation.count(itemId) > 0)
+					return relation.firstChild(itemId);
 			}
 
-			return commentIds;
+			throw new IdRange.EmptyRangeException("User " + userId + " has no " + name);
 		}
 	}
 
@@ -307,35 +616,45 @@ public class DataModel {
 			Map<String, Document> documentPerCollection = new HashMap<String, Document>();
 
 			// create Items
-			documentPerCollection.put("Items", generateDocument(this.itemId));
+			if (generates("Items"))
+				documentPerCollection.put("Items", generateDocument(this.itemId));
 
 			// create Items | Bids
-			documentPerCollection.put("ItemsBids", generateDocumentItemsBids(this.itemId));
+			if (generates("ItemsBids"))
+				documentPerCollection.put("ItemsBids", generateDocumentItemsBids(this.itemId));
 
 			// create Items | Bids | Users
-			documentPerCollection.put("ItemsBidsUsers", generateDocumentItemsBidsUsers(this.itemId));
+			if (generates("ItemsBidsUsers"))
+				documentPerCollection.put("ItemsBidsUsers", generateDocumentItemsBidsUsers(this.itemId));
 
 			// create Items | Users | Regions
-			documentPerCollection.put("ItemsUsersRegions", generateDocumentItemsUsersRegions(this.itemId));
+			if (generates("ItemsUsersRegions"))
+				documentPerCollection.put("ItemsUsersRegions", generateDocumentItemsUsersRegions(this.itemId));
 
 			// create Items | Comments
-			documentPerCollection.put("ItemsComments", generateDocumentItemsComments(this.itemId));
+			if (generates("ItemsComments"))
+				documentPerCollection.put("ItemsComments", generateDocumentItemsComments(this.itemId));
 
 			// create Items | Users
-			documentPerCollection.put("ItemsUsers", generateDocumentItemsUsers(this.itemId));
+			if (generates("ItemsUsers"))
+				documentPerCollection.put("ItemsUsers", generateDocumentItemsUsers(this.itemId));
 
 			return documentPerCollection;
 		}
 
 		public static Document generateDocument(int itemId) {
+			return baseDocument(Entity.ITEM, itemId);
+		}
+
+		private static Document createDocument(int itemId) {
 			Document doc = new Document("_id", itemId);
 
-			doc.put("productTitle", RandomStringUtils.randomAlphanumeric(20)); // 20
-			doc.put("price", RandomStringUtils.randomAlphanumeric(5)); // 5
-			doc.put("type", RandomStringUtils.randomAlphanumeric(5)); // 5
-			doc.put("date", RandomStringUtils.randomAlphanumeric(20)); // 20
+			doc.put("productTitle", payload(Entity.ITEM, itemId, "productTitle", 20)); // 20
+			doc.put("price", payload(Entity.ITEM, itemId, "price", 5)); // 5
+			doc.put("type", payload(Entity.ITEM, itemId, "type", 5)); // 5
+			doc.put("date", payload(Entity.ITEM, itemId, "date", 20)); // 20
 
-			doc.put("description", RandomStringUtils.randomAlphanumeric(80));
+			doc.put("description", payload(Entity.ITEM, itemId, "description", 80));
 
 			doc.put("id_seller", getUserId(itemId));
 
@@ -355,8 +674,9 @@ public class DataModel {
 			ArrayList<Document> comments = new ArrayList<Document>();
 
 			// Add each bid
-			for (int commentId : getCommentIds(itemId)) {
-				comments.add(Comment.generateDocument(commentId));
+			IdRange commentIds = getCommentIds(itemId);
+			for (int i = 0; i < commentIds.size(); i++) {
+				comments.add(Comment.generateDocument(commentIds.get(i)));
 			}
 
 			itemDoc.append("comments", comments);
@@ -369,8 +689,9 @@ public class DataModel {
 			ArrayList<Document> bids = new ArrayList<Document>();
 
 			// Add each bid
-			for (int bidId : getBidIds(itemId)) {
-				bids.add(Bid.generateDocument(bidId));
+			IdRange bidIds = getBidIds(itemId);
+			for (int i = 0; i < bidIds.size(); i++) {
+				bids.add(Bid.generateDocument(bidIds.get(i)));
 			}
 
 			itemDoc.append("bids", bids);
@@ -383,8 +704,9 @@ public class DataModel {
 			ArrayList<Document> bidUsers = new ArrayList<Document>();
 
 			// for each Bid get BidUser
-			for (int bidId : getBidIds(itemId)) {
-				bidUsers.add(Bid.generateDocumentBidsUsers(bidId));
+			IdRange bidIds = getBidIds(itemId);
+			for (int i = 0; i < bidIds.size(); i++) {
+				bidUsers.add(Bid.generateDocumentBidsUsers(bidIds.get(i)));
 			}
 
 			doc.append("bids", bidUsers);
@@ -402,35 +724,15 @@ public class DataModel {
 		}
 
 		public static int getUserId(int itemId) {
-
-			int userId = itemId / userItems;
-			return userId;
+			return userItems.parent(itemId);
 		}
 
-		public static List<Integer> getBidIds(int itemId) {
-			ArrayList<Integer> bidIds = new ArrayList<Integer>();
-
-			int startId = (itemId) * itemBids;
-			int endId = (itemId + 1) * (itemBids);
-
-			for (int i = startId; i < endId; i++) {
-				bidIds.add(i);
-			}
-
-			return bidIds;
+		public static IdRange getBidIds(int itemId) {
+			return children(itemBids, itemId);
 		}
 
-		public static List<Integer> getCommentIds(int itemId) {
-			ArrayList<Integer> commentIds = new ArrayList<Integer>();
-
-			int startId = itemId * itemComments;
-			int endId = (itemId + 1) * (itemComments);
-
-			for (int i = startId; i < endId; i++) {
-				commentIds.add(i);
-			}
-
-			return commentIds;
+		public static IdRange getCommentIds(int itemId) {
+			return children(itemComments, itemId);
 		}
 
 	}
@@ -448,28 +750,36 @@ public class DataModel {
 			Map<String, Document> documentPerCollection = new HashMap<String, Document>();
 
 			// create Bids
-			documentPerCollection.put("Bids", generateDocument(this.bidId));
+			if (generates("Bids"))
+				documentPerCollection.put("Bids", generateDocument(this.bidId));
 
 			// create Bids|Users
-			documentPerCollection.put("BidsUsers", generateDocumentBidsUsers(this.bidId));
+			if (generates("BidsUsers"))
+				documentPerCollection.put("BidsUsers", generateDocumentBidsUsers(this.bidId));
 
 			// Create Bids|Users|Items
-			documentPerCollection.put("BidsUsersItems", generateDocumentBidsUsersItems(bidId));
+			if (generates("BidsUsersItems"))
+				documentPerCollection.put("BidsUsersItems", generateDocumentBidsUsersItems(bidId));
 			
 			// Create Bids|Items
-			documentPerCollection.put("BidsItems", generateDocumentBidsItems(bidId));
+			if (generates("BidsItems"))
+				documentPerCollection.put("BidsItems", generateDocumentBidsItems(bidId));
 
 			return documentPerCollection;
 		}
 
 		private static Document generateDocument(int bidId) {
+			return baseDocument(Entity.BID, bidId);
+		}
+
+		private static Document createDocument(int bidId) {
 			Document doc = new Document("_id", bidId);
 
 			// amount - 5
 			// date - 30
 
-			doc.put("price", RandomStringUtils.randomAlphanumeric(5));
-			doc.put("date", RandomStringUtils.randomAlphanumeric(30));
+			doc.put("price", payload(Entity.BID, bidId, "price", 5));
+			doc.put("date", payload(Entity.BID, bidId, "date", 30));
 
 			doc.put("id_user", getUserId(bidId));
 			doc.put("id_item", getItemId(bidId));
@@ -505,13 +815,11 @@ public class DataModel {
 		}
 
 		public static int getUserId(int bidId) {
-			int userId = bidId / userBids;
-			return userId;
+			return Item.getUserId(getItemId(bidId));
 		}
 
 		public static int getItemId(int bidId) {
-			int itemId = bidId / itemBids;
-			return itemId;
+			return itemBids.parent(bidId);
 		}
 	}
 
@@ -528,7 +836,8 @@ public class DataModel {
 			Map<String, Document> documentPerCollection = new HashMap<String, Document>();
 
 			// create Comments
-			documentPerCollection.put("Comments", generateDocument(this.commentId));
+			if (generates("Comments"))
+				documentPerCollection.put("Comments", generateDocument(this.commentId));
 
 			return documentPerCollection;
 		}
@@ -537,11 +846,15 @@ public class DataModel {
 		 * Create 1-level comment document
 		 */
 		public static Document generateDocument(int commentId) {
+			return baseDocument(Entity.COMMENT, commentId);
+		}
+
+		private static Document createDocument(int commentId) {
 			Document doc = new Document("_id", commentId);
 
-			doc.put("commentTitle", RandomStringUtils.randomAlphanumeric(20)); // 20
-			doc.put("commentText", RandomStringUtils.randomAlphanumeric(70)); // 70
-			doc.put("date", RandomStringUtils.randomAlphanumeric(20)); // 20
+			doc.put("commentTitle", payload(Entity.COMMENT, commentId, "commentTitle", 20)); // 20
+			doc.put("commentText", payload(Entity.COMMENT, commentId, "commentText", 70)); // 70
+			doc.put("date", payload(Entity.COMMENT, commentId, "date", 20)); // 20
 			doc.put("id_user", getUserId(commentId));
 			doc.put("id_item", getItemId(commentId));
 
@@ -549,13 +862,11 @@ public class DataModel {
 		}
 
 		public static int getUserId(int commentId) {
-			int userId = commentId / userComments;
-			return userId;
+			return Item.getUserId(getItemId(commentId));
 		}
 
 		public static int getItemId(int commentId) {
-			int itemId = commentId / itemComments;
-			return itemId;
+			return itemComments.parent(commentId);
 		}
 	}
 
@@ -572,18 +883,23 @@ public class DataModel {
 			Map<String, Document> documentPerCollection = new HashMap<String, Document>();
 
 			// create Regions
-			documentPerCollection.put("Regions", generateDocument(this.regionId));
+			if (generates("Regions"))
+				documentPerCollection.put("Regions", generateDocument(this.regionId));
 
 			return documentPerCollection;
 		}
 
 		/**
-		 * Create 1-level comment document
+		 * Create 1-level region document
 		 */
 		public static Document generateDocument(int id) {
+			return baseDocument(Entity.REGION, id);
+		}
+
+		private static Document createDocument(int id) {
 			Document doc = new Document("_id", id);
 
-			doc.put("regionName", RandomStringUtils.randomAlphanumeric(10)); // 10
+			doc.put("regionName", payload(Entity.REGION, id, "regionName", 10)); // 10
 
 			return doc;
 		}
@@ -0,0 +1,273 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import site.ycsb.measurements.Measurements;
+
+/**
+ * Samples the server-side execution statistics of the RUBiS query plans.
+ *
+ * Registered as command listener of the MongoClient, it sees every find and
+ * aggregate a plan sends, including the $in queries of the normalized joins and
+ * the $lookup pipelines. Every N-th of these commands of an operation is
+ * explained with verbosity executionStats on a background thread, after the
+ * operation, so the sampled operations are not slowed down. Explains that do not
+ * fit in the queue are dropped.
+ *
+ * Per operation the samples are measured next to its latencies:
+ * <ul>
+ * <li>&lt;operation&gt;-DOCS-EXAMINED: totalDocsExamined.</li>
+ * <li>&lt;operation&gt;-KEYS-EXAMINED: totalKeysExamined.</li>
+ * <li>&lt;operation&gt;-RETURNED: nReturned.</li>
+ * <li>&lt;operation&gt;-PLAN-&lt;plan&gt;: totalDocsExamined of the samples
+ * whose winning plan is &lt;plan&gt;, the index names or COLLSCAN. Its count is
+ * how often that plan won.</li>
+ * </ul>
+ * The values are counts, not microseconds.
+ *
+ * @author vincent
+ *
+ */
+public class ExplainSampler implements CommandListener {
+
+	public static final String SAMPLE_PROPERTY = "rubis.explain.sample";
+
+	/** Fields of a sent command that explain does not accept. */
+	private static final Set<String> SESSION_FIELDS = new LinkedHashSet<String>(
+			Arrays.asList("lsid", "txnNumber", "autocommit", "startTransaction", "readConcern", "writeConcern"));
+
+	private final int sampleRate;
+
+	private final ThreadLocal<String> operation = new ThreadLocal<String>();
+
+	private final Map<String, AtomicLong> commandCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+	private final ThreadPoolExecutor explainer;
+
+	private final Measurements measurements = Measurements.getMeasurements();
+
+	private volatile MongoClient client;
+
+	/**
+	 * @param sampleRate explains 1 in sampleRate commands per operation.
+	 * @param queueSize the most explains waiting to run.
+	 */
+	public ExplainSampler(int sampleRate, int queueSize) {
+		if (sampleRate < 1)
+			throw new IllegalArgumentException(SAMPLE_PROPERTY + " must be positive: " + sampleRate);
+		this.sampleRate = sampleRate;
+
+		this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "rubis-explain");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	/**
+	 * Sets the client the explains run on, the one this sampler listens to.
+	 */
+	public void setClient(MongoClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Attributes the commands of the calling thread to an operation until
+	 * {@link #exit()}.
+	 */
+	public void enter(String operationName) {
+		operation.set(operationName);
+	}
+
+	public void exit() {
+		operation.remove();
+	}
+
+	/**
+	 * Waits for the queued explains, so their measurements are exported.
+	 */
+	public void close() throws InterruptedException {
+		explainer.shutdown();
+		explainer.awaitTermination(30, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+		final String operationName = operation.get();
+		if (operationName == null || client == null)
+			return;
+		if (!"find".equals(event.getCommandName()) && !"aggregate".equals(event.getCommandName()))
+			return;
+
+		AtomicLong count = commandCounts.get(operationName);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = commandCounts.putIfAbsent(operationName, created);
+			if (count == null)
+				count = created;
+		}
+		if (count.getAndIncrement() % sampleRate != 0)
+			return;
+
+		// The command is only valid during the callback.
+		BsonDocument command = new BsonDocument();
+		for (Map.Entry<String, BsonValue> field : event.getCommand().clone().entrySet())
+			if (!field.getKey().startsWith("$") && !SESSION_FIELDS.contains(field.getKey()))
+				command.put(field.getKey(), field.getValue());
+		final BsonDocument explain = new BsonDocument("explain", command).append("verbosity",
+				new BsonString("executionStats"));
+		final String databaseName = event.getDatabaseName();
+
+		explainer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					record(operationName, parse(client.getDatabase(databaseName).runCommand(explain)));
+				} catch (Exception e) {
+					System.err.println("Could not explain " + operationName + ": " + e.toString());
+				}
+			}
+		});
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+	}
+
+	void record(String operationName, Stats stats) {
+		measurements.measure(operationName + "-DOCS-EXAMINED", (int) Math.min(stats.docsExamined, Integer.MAX_VALUE));
+		measurements.measure(operationName + "-PLAN-" + stats.plan, (int) Math.min(stats.docsExamined, Integer.MAX_VALUE));
+		measurements.measure(operationName + "-KEYS-EXAMINED", (int) Math.min(stats.keysExamined, Integer.MAX_VALUE));
+		measurements.measure(operationName + "-RETURNED", (int) Math.min(stats.returned, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * The execution statistics of one explained command.
+	 */
+	static class Stats {
+
+		long docsExamined;
+
+		long keysExamined;
+
+		long returned = -1;
+
+		String plan;
+	}
+
+	/**
+	 * Extracts the statistics of an explain result. Finds and aggregations report
+	 * them in different places, depending on the server version: the
+	 * executionStats of the query and of every $cursor stage are summed, as are the
+	 * totals of $lookup stages. nReturned is taken from the first executionStats.
+	 */
+	static Stats parse(Document explain) {
+		Stats stats = new Stats();
+		Set<String> plan = new LinkedHashSet<String>();
+		collect(explain, stats, plan);
+
+		if (stats.returned < 0)
+			stats.returned = 0;
+		stats.plan = plan.isEmpty() ? "UNKNOWN" : String.join("+", plan);
+		return stats;
+	}
+
+	private static void collect(Object value, Stats stats, Set<String> plan) {
+		if (value instanceof List) {
+			for (Object element : (List<?>) value)
+				collect(element, stats, plan);
+			return;
+		}
+		if (!(value instanceof Document))
+			return;
+
+		Document document = (Document) value;
+		for (Map.Entry<String, Object> field : document.entrySet()) {
+			if ("executionStats".equals(field.getKey()) && field.getValue() instanceof Document) {
+				Document executionStats = (Document) field.getValue();
+				stats.docsExamined += number(executionStats.get("totalDocsExamined"));
+				stats.keysExamined += number(executionStats.get("totalKeysExamined"));
+				if (stats.returned < 0)
+					stats.returned = number(executionStats.get("nReturned"));
+			} else if ("winningPlan".equals(field.getKey())) {
+				collectPlan(field.getValue(), plan);
+			} else {
+				collect(field.getValue(), stats, plan);
+			}
+		}
+
+		if (document.containsKey("$lookup")) {
+			stats.docsExamined += number(document.get("totalDocsExamined"));
+			stats.keysExamined += number(document.get("totalKeysExamined"));
+			if (document.get("indexesUsed") instanceof List)
+				for (Object index : (List<?>) document.get("indexesUsed"))
+					plan.add(String.valueOf(index));
+			if (number(document.get("collectionScans")) > 0)
+				plan.add("COLLSCAN");
+		}
+	}
+
+	/**
+	 * Collects the indexes of a winning plan, or the stage of leaves without one,
+	 * e.g. COLLSCAN.
+	 */
+	private static void collectPlan(Object value, Set<String> plan) {
+		if (value instanceof List) {
+			for (Object element : (List<?>) value)
+				collectPlan(element, plan);
+			return;
+		}
+		if (!(value instanceof Document))
+			return;
+
+		Document stage = (Document) value;
+		boolean leaf = true;
+		for (Map.Entry<String, Object> field : stage.entrySet()) {
+			if (field.getValue() instanceof Document || field.getValue() instanceof List) {
+				if (!"keyPattern".equals(field.getKey()) && !"indexBounds".equals(field.getKey())
+						&& !"multiKeyPaths".equals(field.getKey()) && !"filter".equals(field.getKey())) {
+					leaf = false;
+					collectPlan(field.getValue(), plan);
+				}
+			}
+		}
+
+		if (stage.get("indexName") != null)
+			plan.add(String.valueOf(stage.get("indexName")));
+		else if (leaf && stage.get("stage") != null)
+			plan.add(String.valueOf(stage.get("stage")));
+	}
+
+	private static long number(Object value) {
+		return value instanceof Number ? ((Number) value).longValue() : 0;
+	}
+}
@@ -0,0 +1,95 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A contiguous range of ids [start, start + size). Replaces lists of boxed ids in
+ * the id mapping of the {@link DataModel}: a range holds two ints, and once the
+ * mapping is inlined the JIT keeps it in registers instead of allocating it.
+ *
+ * Iterate with an index:
+ *
+ * <pre>
+ * for (int i = 0; i &lt; range.size(); i++)
+ * 	use(range.get(i));
+ * </pre>
+ *
+ * @author vincent
+ *
+ */
+public final class IdRange {
+
+	/**
+	 * Thrown if an id is taken from an empty range, e.g. the first item of a user
+	 * without items. A plan that starts from such an id finds nothing.
+	 */
+	public static class EmptyRangeException extends NoSuchElementException {
+
+		private static final long serialVersionUID = 1L;
+
+		public EmptyRangeException(String message) {
+			super(message);
+		}
+	}
+
+	private final int start;
+
+	private final int size;
+
+	public IdRange(int start, int size) {
+		this.start = start;
+		this.size = size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the i-th id of the range, without bounds check.
+	 */
+	public int get(int i) {
+		return start + i;
+	}
+
+	public int first() {
+		if (size == 0)
+			throw new EmptyRangeException("Empty id range at " + start);
+
+		return start;
+	}
+
+	/**
+	 * Returns the first id after the range.
+	 */
+	public int end() {
+		return start + size;
+	}
+
+	public boolean contains(int id) {
+		return id >= start && id < start + size;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof IdRange))
+			return false;
+
+		IdRange other = (IdRange) obj;
+		return start == other.start && size == other.size;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * start + size;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + start + ", " + end() + ")";
+	}
+}
@@ -0,0 +1,133 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.Indexes;
+
+import site.ycsb.measurements.Measurements;
+
+/**
+ * Creates the indexes the query plans of a model need, see
+ * {@link QueryPlans#indexesForModel(String)}: an ascending index per filtered
+ * field, multikey where the field lies in an array.
+ *
+ * The indexes of a collection are built together with one createIndexes
+ * command, collections are built in parallel on the given number of threads.
+ * Collections the data model does not generate are skipped. Per collection the
+ * build time is measured as INDEX-BUILD-&lt;collection&gt; and the size of the
+ * created indexes in KiB as INDEX-SIZE-&lt;collection&gt;.
+ *
+ * When the indexes are created is configured with rubis.indexes:
+ * <ul>
+ * <li>none (default): no indexes are created.</li>
+ * <li>before: before the load, and before the transactions if missing. The load
+ * pays for the index maintenance of every insert.</li>
+ * <li>after: after the load, built from the loaded data, and before the
+ * transactions if missing.</li>
+ * </ul>
+ *
+ * @author vincent
+ *
+ */
+public class IndexProvisioner {
+
+	public static final String MODE_PROPERTY = "rubis.indexes";
+
+	public static final String THREADS_PROPERTY = "rubis.indexes.threads";
+
+	private final MongoDatabase database;
+
+	private final Map<String, List<String>> indexes;
+
+	private final int threads;
+
+	private final Measurements measurements = Measurements.getMeasurements();
+
+	public IndexProvisioner(MongoDatabase database, Map<String, List<String>> indexes, int threads) {
+		this.database = database;
+		this.indexes = indexes;
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Returns the fields of both maps per collection, without duplicates.
+	 */
+	public static Map<String, List<String>> union(Map<String, List<String>> first,
+			Map<String, List<String>> second) {
+		Map<String, List<String>> union = new LinkedHashMap<String, List<String>>();
+		for (Map<String, List<String>> indexes : Arrays.asList(first, second))
+			for (Map.Entry<String, List<String>> collection : indexes.entrySet()) {
+				List<String> fields = union.get(collection.getKey());
+				if (fields == null) {
+					fields = new ArrayList<String>();
+					union.put(collection.getKey(), fields);
+				}
+				for (String field : collection.getValue())
+					if (!fields.contains(field))
+						fields.add(field);
+			}
+		return union;
+	}
+
+	/**
+	 * Creates all indexes, indexes that exist already are left as they are.
+	 */
+	public void provision() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (final Map.Entry<String, List<String>> collection : indexes.entrySet()) {
+				if (!DataModel.generates(collection.getKey()))
+					continue;
+
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						build(collection.getKey(), collection.getValue());
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> result : results)
+				result.get();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void build(String collection, List<String> fields) {
+		List<IndexModel> models = new ArrayList<IndexModel>();
+		for (String field : fields)
+			models.add(new IndexModel(Indexes.ascending(field)));
+
+		long st = System.nanoTime();
+		List<String> names = database.getCollection(collection).createIndexes(models);
+		long micros = (System.nanoTime() - st) / 1000;
+
+		Document stats = database.runCommand(new Document("collStats", collection));
+		Document indexSizes = (Document) stats.get("indexSizes");
+		long bytes = 0;
+		for (String name : names)
+			if (indexSizes != null && indexSizes.get(name) instanceof Number)
+				bytes += ((Number) indexSizes.get(name)).longValue();
+
+		measurements.measure("INDEX-BUILD-" + collection, (int) Math.min(micros, Integer.MAX_VALUE));
+		measurements.measure("INDEX-SIZE-" + collection, (int) Math.min(bytes / 1024, Integer.MAX_VALUE));
+
+		System.out.println("Indexed " + collection + " on " + fields + " in " + (micros / 1000) + " ms, " + bytes
+				+ " bytes of index, " + stats.get("totalIndexSize") + " bytes of all indexes");
+	}
+}
@@ -0,0 +1,305 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Client-side join over the normalized collections that follows all children of
+ * every hop.
+ *
+ * Every hop collects the join keys of all documents of the previous level and
+ * fetches the next level with one $in query, so a join costs one round trip per
+ * hop instead of one per document. The children are stitched into their parents
+ * through a hash map on the join field, as an array named after the child
+ * collection, like the as field of a $lookup. Users, Items and Regions looked
+ * up by _id are served from the entity tier of the {@link RubisCache} when
+ * enabled.
+ *
+ * Configured with:
+ * <ul>
+ * <li>rubis.join.batchsize: the most keys per $in query, default 1000.</li>
+ * <li>rubis.join.parallelism: the number of cursors the batches of one hop are
+ * spread over, default 1. With more than one cursor a hop is split into at least
+ * that many batches, which run in parallel.</li>
+ * </ul>
+ *
+ * @author vincent
+ *
+ */
+public class JoinExecutor {
+
+	public static final String BATCH_SIZE_PROPERTY = "rubis.join.batchsize";
+
+	public static final String PARALLELISM_PROPERTY = "rubis.join.parallelism";
+
+	private static int batchSize = 1000;
+
+	private static int parallelism = 1;
+
+	/** Runs the batches of a hop but the first, null without parallel cursors. */
+	private static ExecutorService cursors;
+
+	/**
+	 * One hop of a join: the documents of collection whose foreignKey equals the
+	 * localKey of a document of the previous level.
+	 */
+	public static class Hop {
+
+		final String collection;
+
+		final String localKey;
+
+		final String foreignKey;
+
+		public Hop(String collection, String localKey, String foreignKey) {
+			this.collection = collection;
+			this.localKey = localKey;
+			this.foreignKey = foreignKey;
+		}
+	}
+
+	public static synchronized void setProperties(Properties props) {
+		batchSize = Integer.parseInt(props.getProperty(BATCH_SIZE_PROPERTY, "1000"));
+		parallelism = Integer.parseInt(props.getProperty(PARALLELISM_PROPERTY, "1"));
+		if (batchSize < 1 || parallelism < 1)
+			throw new IllegalArgumentException(BATCH_SIZE_PROPERTY + " and " + PARALLELISM_PROPERTY + " must be positive");
+
+		if (cursors != null)
+			cursors.shutdown();
+		cursors = parallelism > 1 ? Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "rubis-join-cursor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+	}
+
+	/**
+	 * Joins the document with the given _id along the hops.
+	 *
+	 * @return the root document with the joined levels stitched in, or null if there
+	 *         is no such document.
+	 */
+	public static Document join(MongoDatabase db, String collection, Object id, Hop... hops) {
+		OperationContext context = OperationContext.of(db);
+		List<Document> level = new ArrayList<Document>();
+		Document root = RubisCache.cachesEntities(collection) ? RubisCache.getEntity(collection, id) : null;
+		if (root != null) {
+			level.add(root);
+		} else {
+			long stamp = RubisCache.entityStamp(collection, id);
+			context.collection(collection).find(context.filter("_id", id)).into(level);
+			if (level.isEmpty())
+				return null;
+			root = level.get(0);
+			if (RubisCache.cachesEntities(collection))
+				RubisCache.putEntity(collection, root, stamp);
+		}
+
+		for (Hop hop : hops) {
+			Map<Object, List<Document>> children = fetch(context.collection(hop.collection), hop.foreignKey,
+					keys(level, hop));
+
+			level = stitch(level, hop, children);
+		}
+
+		return root;
+	}
+
+	/**
+	 * Returns the keys of the next hop, of all documents of a level.
+	 */
+	static List<Object> keys(List<Document> level, Hop hop) {
+		Set<Object> keys = new LinkedHashSet<Object>();
+		for (Document parent : level)
+			addKeys(keys, parent.get(hop.localKey));
+		return new ArrayList<Object>(keys);
+	}
+
+	/**
+	 * Stitches the children of a hop, grouped by their foreignKey, into their
+	 * parents and returns them as the next level.
+	 */
+	static List<Document> stitch(List<Document> level, Hop hop, Map<Object, List<Document>> children) {
+		List<Document> next = new ArrayList<Document>();
+		for (List<Document> group : children.values())
+			next.addAll(group);
+
+		for (Document parent : level) {
+			Set<Object> parentKeys = new LinkedHashSet<Object>();
+			addKeys(parentKeys, parent.get(hop.localKey));
+
+			List<Document> joined = new ArrayList<Document>();
+			for (Object key : parentKeys) {
+				List<Document> group = children.get(key);
+				if (group != null)
+					joined.addAll(group);
+			}
+			parent.put(hop.collection, joined);
+		}
+
+		return next;
+	}
+
+	static int getBatchSize() {
+		return batchSize;
+	}
+
+	private static void addKeys(Set<Object> keys, Object value) {
+		if (value instanceof Collection)
+			keys.addAll((Collection<?>) value);
+		else if (value != null)
+			keys.add(value);
+	}
+
+	/**
+	 * Fetches the documents whose foreignKey is one of the keys, grouped by the
+	 * foreignKey. Entities looked up by _id are taken from the {@link RubisCache}
+	 * if cached, only the missing ones are queried and then cached.
+	 */
+	private static Map<Object, List<Document>> fetch(MongoCollection<Document> collection, String foreignKey,
+			List<Object> keys) {
+		String name = collection.getNamespace().getCollectionName();
+		Map<Object, List<Document>> children = new HashMap<Object, List<Document>>();
+		if (!"_id".equals(foreignKey) || !RubisCache.cachesEntities(name)) {
+			queryBatches(collection, foreignKey, keys, children);
+			return children;
+		}
+
+		List<Object> missing = new ArrayList<Object>();
+		List<Long> stamps = new ArrayList<Long>();
+		for (Object key : keys) {
+			Document entity = RubisCache.getEntity(name, key);
+			if (entity != null) {
+				group(children, Collections.singletonList(entity), foreignKey);
+			} else {
+				missing.add(key);
+				stamps.add(RubisCache.entityStamp(name, key));
+			}
+		}
+
+		queryBatches(collection, foreignKey, missing, children);
+		for (int i = 0; i < missing.size(); i++) {
+			List<Document> fetched = children.get(missing.get(i));
+			if (fetched != null)
+				RubisCache.putEntity(name, fetched.get(0), stamps.get(i));
+		}
+
+		return children;
+	}
+
+	/**
+	 * Queries the documents whose foreignKey is one of the keys, in batches, and
+	 * adds them to the children grouped by the foreignKey.
+	 */
+	private static void queryBatches(final MongoCollection<Document> collection, final String foreignKey,
+			List<Object> keys, Map<Object, List<Document>> children) {
+		if (keys.isEmpty())
+			return;
+
+		ExecutorService executor = cursors;
+		List<List<Object>> batches = batches(keys, executor != null);
+		if (batches.size() == 1) {
+			group(children, query(collection, foreignKey, keys), foreignKey);
+			return;
+		}
+
+		List<Future<List<Document>>> results = new ArrayList<Future<List<Document>>>();
+		List<WireStats.Tally> tallies = new ArrayList<WireStats.Tally>();
+		for (int i = 1; i < batches.size(); i++) {
+			final List<Object> batch = batches.get(i);
+			if (executor == null) {
+				group(children, query(collection, foreignKey, batch), foreignKey);
+				continue;
+			}
+			final WireStats.Tally tally = WireStats.fork();
+			tallies.add(tally);
+			results.add(executor.submit(new Callable<List<Document>>() {
+				@Override
+				public List<Document> call() {
+					WireStats.attach(tally);
+					try {
+						return query(collection, foreignKey, batch);
+					} finally {
+						WireStats.attach(null);
+					}
+				}
+			}));
+		}
+		group(children, query(collection, foreignKey, batches.get(0)), foreignKey);
+
+		try {
+			for (Future<List<Document>> result : results)
+				group(children, result.get(), foreignKey);
+			for (WireStats.Tally tally : tallies)
+				WireStats.join(tally);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while joining " + collection.getNamespace(), e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Failed to join " + collection.getNamespace(), e.getCause());
+		}
+	}
+
+	/**
+	 * Splits the keys of a hop into batches of at most rubis.join.batchsize keys,
+	 * and with parallel cursors into at least rubis.join.parallelism batches. The
+	 * batches are of equal size but the last.
+	 */
+	static List<List<Object>> batches(List<Object> keys, boolean parallel) {
+		int count = (keys.size() + batchSize - 1) / batchSize;
+		if (parallel)
+			count = Math.max(count, Math.min(parallelism, keys.size()));
+
+		List<List<Object>> batches = new ArrayList<List<Object>>();
+		int perBatch = (keys.size() + count - 1) / count;
+		for (int start = 0; start < keys.size(); start += perBatch)
+			batches.add(keys.subList(start, Math.min(start + perBatch, keys.size())));
+		return batches;
+	}
+
+	private static List<Document> query(MongoCollection<Document> collection, String foreignKey, List<Object> keys) {
+		return collection.find(filter(foreignKey, keys)).into(new ArrayList<Document>());
+	}
+
+	/**
+	 * Returns the filter on the documents whose foreignKey is one of the keys.
+	 */
+	static Document filter(String foreignKey, List<Object> keys) {
+		return new Document(foreignKey, keys.size() == 1 ? keys.get(0) : new Document("$in", keys));
+	}
+
+	static void group(Map<Object, List<Document>> children, List<Document> documents, String foreignKey) {
+		for (Document document : documents) {
+			Object key = document.get(foreignKey);
+			List<Document> group = children.get(key);
+			if (group == null) {
+				group = new ArrayList<Document>();
+				children.put(key, group);
+			}
+			group.add(document);
+		}
+	}
+}
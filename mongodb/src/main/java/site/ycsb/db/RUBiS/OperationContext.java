@@ -0,0 +1,142 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * The state a client thread reuses across its operations on one database.
+ *
+ * Holds the collection handles, resolved once per name and document class with
+ * the read preference and write concern of the database, and mutable filter
+ * templates. {@link MongoDatabase#getCollection(String)} and
+ * {@link MongoCollection#withDocumentClass(Class)} build a new handle with a new
+ * codec registry lookup on every call; the handles of a context are built once.
+ *
+ * A filter template is the same document on every call with the same field,
+ * only its value is replaced. It may only be passed to a blocking call that
+ * encodes it before returning, e.g. find(...).first() or iterator(), and must
+ * not be kept, returned or passed to an asynchronous or batched write.
+ *
+ * A context belongs to its thread, get it with {@link #of(MongoDatabase)}.
+ *
+ * @author vincent
+ *
+ */
+public class OperationContext {
+
+	private static final ThreadLocal<OperationContext> CONTEXT = new ThreadLocal<OperationContext>();
+
+	private final MongoDatabase database;
+
+	private final Map<String, MongoCollection<Document>> collections = new HashMap<String, MongoCollection<Document>>();
+
+	private final Map<Class<?>, Map<String, MongoCollection<?>>> typedCollections = new HashMap<Class<?>, Map<String, MongoCollection<?>>>();
+
+	private final Map<String, MongoCollection<RawBsonDocument>> rawCollections = new HashMap<String, MongoCollection<RawBsonDocument>>();
+
+	private final Map<String, Document> filters = new HashMap<String, Document>();
+
+	private final Map<String, Document> ranges = new HashMap<String, Document>();
+
+	private OperationContext(MongoDatabase database) {
+		this.database = database;
+	}
+
+	/**
+	 * Returns the context of the calling thread on the database, a new one if the
+	 * thread last used another database.
+	 */
+	public static OperationContext of(MongoDatabase database) {
+		OperationContext context = CONTEXT.get();
+		if (context == null || context.database != database) {
+			context = new OperationContext(database);
+			CONTEXT.set(context);
+		}
+		return context;
+	}
+
+	/**
+	 * Returns the handle of a collection of {@link Document}s.
+	 */
+	public MongoCollection<Document> collection(String name) {
+		MongoCollection<Document> collection = collections.get(name);
+		if (collection == null) {
+			collection = database.getCollection(name);
+			collections.put(name, collection);
+		}
+		return collection;
+	}
+
+	/**
+	 * Returns the handle of a collection of the given document class.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> MongoCollection<T> collection(String name, Class<T> documentClass) {
+		if (documentClass == Document.class)
+			return (MongoCollection<T>) collection(name);
+
+		Map<String, MongoCollection<?>> byName = typedCollections.get(documentClass);
+		if (byName == null) {
+			byName = new HashMap<String, MongoCollection<?>>();
+			typedCollections.put(documentClass, byName);
+		}
+
+		MongoCollection<T> collection = (MongoCollection<T>) byName.get(name);
+		if (collection == null) {
+			collection = database.getCollection(name, documentClass);
+			byName.put(name, collection);
+		}
+		return collection;
+	}
+
+	/**
+	 * Returns the handle that reads the documents of a collection as
+	 * {@link RawBsonDocument}. It is cached if the collection is a handle of the
+	 * context of the calling thread, and built on every call otherwise.
+	 */
+	public static MongoCollection<RawBsonDocument> raw(MongoCollection<Document> collection) {
+		OperationContext context = CONTEXT.get();
+		String name = collection.getNamespace().getCollectionName();
+		if (context == null || context.collections.get(name) != collection)
+			return collection.withDocumentClass(RawBsonDocument.class);
+
+		MongoCollection<RawBsonDocument> raw = context.rawCollections.get(name);
+		if (raw == null) {
+			raw = collection.withDocumentClass(RawBsonDocument.class);
+			context.rawCollections.put(name, raw);
+		}
+		return raw;
+	}
+
+	/**
+	 * Returns the filter template {field: value}.
+	 */
+	public Document filter(String field, Object value) {
+		Document filter = filters.get(field);
+		if (filter == null) {
+			filter = new Document();
+			filters.put(field, filter);
+		}
+		filter.put(field, value);
+		return filter;
+	}
+
+	/**
+	 * Returns the filter template {field: {$gte: start}}.
+	 */
+	public Document from(String field, Object start) {
+		Document filter = ranges.get(field);
+		if (filter == null) {
+			filter = new Document(field, new Document());
+			ranges.put(field, filter);
+		}
+		((Document) filter.get(field)).put("$gte", start);
+		return filter;
+	}
+}
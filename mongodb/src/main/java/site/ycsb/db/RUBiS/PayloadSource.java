@@ -0,0 +1,147 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import site.ycsb.db.RUBiS.DataModel.Entity;
+
+/**
+ * Source of the random field values of the RUBiS data model.
+ *
+ * Configured with rubis.payload:
+ * <ul>
+ * <li>random (default): every thread draws from its own SplittableRandom, split
+ * from a root seeded with rubis.seed.</li>
+ * <li>deterministic: a value is derived from (rubis.seed, entity, id, field), the
+ * same record is generated identically on every run and machine.</li>
+ * <li>the class name of a PayloadSource with a no-argument constructor.</li>
+ * </ul>
+ *
+ * Values are written into a reused per-thread buffer, the only allocation per
+ * field is the resulting String.
+ *
+ * @author vincent
+ *
+ */
+public abstract class PayloadSource {
+
+	/** The characters of alphanumeric values. */
+	private static final char[] ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"
+			.toCharArray();
+
+	/** Reused buffer to build values in. */
+	private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[128];
+		}
+	};
+
+	protected long seed;
+
+	/**
+	 * Initializes the source, called once before any value is drawn.
+	 */
+	public void init(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns an alphanumeric value of the given length for a field of an entity.
+	 */
+	public abstract String alphanumeric(Entity entity, int id, String field, int length);
+
+	public static PayloadSource fromProperties(Properties props) {
+		String type = props.getProperty("rubis.payload", "random");
+		String seedProperty = props.getProperty("rubis.seed");
+
+		PayloadSource source;
+		if ("random".equals(type)) {
+			source = new RandomPayloadSource();
+		} else if ("deterministic".equals(type)) {
+			source = new DeterministicPayloadSource();
+		} else {
+			try {
+				source = (PayloadSource) Class.forName(type).newInstance();
+			} catch (Exception e) {
+				throw new IllegalArgumentException("Invalid rubis.payload: " + type, e);
+			}
+		}
+
+		source.init(seedProperty != null ? Long.parseLong(seedProperty) : "random".equals(type) ? System.nanoTime() : 0L);
+		return source;
+	}
+
+	/**
+	 * Fills a value from a SplitMix64 sequence starting at the given state.
+	 */
+	protected static String alphanumeric(long state, int length) {
+		char[] buffer = BUFFER.get();
+		if (buffer.length < length) {
+			buffer = new char[length];
+			BUFFER.set(buffer);
+		}
+
+		for (int i = 0; i < length; i++) {
+			state += 0x9E3779B97F4A7C15L;
+			buffer[i] = ALPHANUMERIC[(int) (((mix(state) >>> 32) * ALPHANUMERIC.length) >>> 32)];
+		}
+
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * The SplitMix64 finalizer.
+	 */
+	protected static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Draws every value from a thread-local generator, values differ between runs
+	 * unless rubis.seed is set and the threads generate the same users in the same
+	 * order.
+	 */
+	public static class RandomPayloadSource extends PayloadSource {
+
+		private SplittableRandom root;
+
+		private final ThreadLocal<SplittableRandom> random = new ThreadLocal<SplittableRandom>() {
+			@Override
+			protected SplittableRandom initialValue() {
+				synchronized (RandomPayloadSource.this) {
+					return root.split();
+				}
+			}
+		};
+
+		@Override
+		public void init(long seed) {
+			super.init(seed);
+			this.root = new SplittableRandom(seed);
+		}
+
+		@Override
+		public String alphanumeric(Entity entity, int id, String field, int length) {
+			return alphanumeric(random.get().nextLong(), length);
+		}
+	}
+
+	/**
+	 * Derives every value from (seed, entity, id, field), so any record can be
+	 * regenerated on demand.
+	 */
+	public static class DeterministicPayloadSource extends PayloadSource {
+
+		@Override
+		public String alphanumeric(Entity entity, int id, String field, int length) {
+			long state = mix(seed ^ ((long) entity.ordinal() << 56));
+			state = mix(state + id);
+			state = mix(state + field.hashCode());
+
+			return alphanumeric(state, length);
+		}
+	}
+}
@@ -0,0 +1,412 @@
+package site.ycsb.db.RUBiS;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.HdrHistogram.Histogram;
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientURI;
+import com.mongodb.client.MongoDatabase;
+
+import site.ycsb.db.RUBiS.IdRange.EmptyRangeException;
+import site.ycsb.measurements.Measurements;
+
+/**
+ * Runs every strategy of each RUBiS join sequence side by side: the
+ * denormalized plans, the client-side joins over the normalized collections and
+ * the server-side $lookup plans (see {@link QueryPlans}).
+ *
+ * All strategies of an operation run for the same users, interleaved: every
+ * iteration picks one user and runs each strategy for it, the first strategy
+ * rotating between iterations. A timed pass measures throughput and latency, a
+ * separate profiling pass counts the bytes and round trips of the replies and the
+ * documents the server examined (serverStatus scannedObjects), so the counting
+ * does not add to the latencies.
+ *
+ * Properties, next to mongodb.url, recordcount, requestdistribution, the
+ * rubis.* data model properties and those of the {@link JoinExecutor} and the
+ * {@link ResultConsumer}:
+ * <ul>
+ * <li>rubis.compare.models: the strategies, default
+ * denormalized,normalized,lookup.</li>
+ * <li>rubis.compare.operations: the operations, default all.</li>
+ * <li>rubis.compare.warmup: untimed iterations, default 100.</li>
+ * <li>rubis.compare.iterations: timed iterations, default 1000.</li>
+ * <li>rubis.compare.profileiterations: profiling iterations, default 100.</li>
+ * <li>rubis.compare.calibrate: fit a {@link CostModel} to the measurements and
+ * report the rank agreement of the predicted and observed plan costs, default
+ * false.</li>
+ * <li>rubis.calibration.document, rubis.calibration.roundtrip,
+ * rubis.calibration.byte: the coefficients of the cost model to check, default 1,
+ * 1 and 0.</li>
+ * <li>rubis.calibration.score.&lt;model&gt;.&lt;operation&gt;: the cost a schema
+ * design tool predicted for a plan, used instead of the coefficients.</li>
+ * </ul>
+ *
+ * Usage: PlanComparison [-P propertyfile] [-p name=value]...
+ *
+ * @author vincent
+ *
+ */
+public class PlanComparison {
+
+	private final MongoDatabase database;
+
+	private final MongoDatabase admin;
+
+	/** Counts the replies of the profiled plans. */
+	private final WireStats replies;
+
+	private final UserChooser userChooser;
+
+	/** The plans per model, in the order of rubis.compare.models. */
+	private final Map<String, Map<String, QueryPlan>> plans = new LinkedHashMap<String, Map<String, QueryPlan>>();
+
+	private final List<String> operations;
+
+	private final int warmup;
+
+	private final int iterations;
+
+	private final int profileIterations;
+
+	private final boolean calibrate;
+
+	/** The cost model the measured plans are checked against. */
+	private final CostModel configured;
+
+	private final Properties props;
+
+	PlanComparison(MongoClient client, String databaseName, WireStats replies, Properties props) {
+		this.database = client.getDatabase(databaseName);
+		this.admin = client.getDatabase("admin");
+		this.replies = replies;
+		this.userChooser = UserChooser.fromProperties(props, 0, 1);
+
+		for (String model : props.getProperty("rubis.compare.models", "denormalized,normalized,lookup").split(","))
+			plans.put(model.trim(), QueryPlans.forModel(model.trim()));
+
+		String operationList = props.getProperty("rubis.compare.operations");
+		this.operations = new ArrayList<String>();
+		if (operationList == null) {
+			operations.addAll(QueryPlans.OPERATIONS);
+		} else {
+			for (String operation : operationList.split(","))
+				operations.add(operation.trim());
+		}
+
+		this.warmup = Integer.parseInt(props.getProperty("rubis.compare.warmup", "100"));
+		this.iterations = Integer.parseInt(props.getProperty("rubis.compare.iterations", "1000"));
+		this.profileIterations = Integer.parseInt(props.getProperty("rubis.compare.profileiterations", "100"));
+
+		this.calibrate = Boolean.parseBoolean(props.getProperty("rubis.compare.calibrate", "false"));
+		this.configured = new CostModel(0, Double.parseDouble(props.getProperty("rubis.calibration.document", "1")),
+				Double.parseDouble(props.getProperty("rubis.calibration.roundtrip", "1")),
+				Double.parseDouble(props.getProperty("rubis.calibration.byte", "0")));
+		this.props = props;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Properties props = CommandLine.parse(args, "PlanComparison");
+		DataModel.setProperties(props);
+		JoinExecutor.setProperties(props);
+		ResultConsumer.setProperties(props);
+		PlanProjection.setProperties(props);
+		Measurements.setProperties(props);
+
+		String url = props.getProperty("mongodb.url", "mongodb://localhost:27017/ycsb?w=1");
+		WireStats replies = new WireStats(false);
+		MongoClientURI uri = new MongoClientURI(url, MongoClientOptions.builder().addCommandListener(replies));
+		String databaseName = uri.getDatabase() != null && !uri.getDatabase().isEmpty() ? uri.getDatabase() : "ycsb";
+
+		MongoClient client = new MongoClient(uri);
+		try {
+			new PlanComparison(client, databaseName, replies, props).run(System.out);
+		} finally {
+			client.close();
+		}
+	}
+
+	/**
+	 * Compares all strategies of every operation and prints one table, followed by
+	 * the cost model calibration if enabled.
+	 */
+	public void run(PrintStream out) {
+		Map<String, Map<String, Result>> results = measure();
+
+		out.printf("%-20s %-13s %10s %10s %10s %10s %10s %12s %10s %10s %7s%n", "operation", "strategy", "ops/sec",
+				"avg(us)", "p50(us)", "p95(us)", "p99(us)", "bytes/op", "trips/op", "docs/op", "errors");
+		for (Map.Entry<String, Map<String, Result>> operation : results.entrySet())
+			for (Map.Entry<String, Result> strategy : operation.getValue().entrySet())
+				strategy.getValue().print(out, operation.getKey(), strategy.getKey());
+
+		if (calibrate)
+			calibrate(results, out);
+	}
+
+	/**
+	 * Measures all strategies of every operation, by operation and model.
+	 */
+	public Map<String, Map<String, Result>> measure() {
+		Map<String, Map<String, Result>> results = new LinkedHashMap<String, Map<String, Result>>();
+
+		for (String operation : operations) {
+			List<String> strategies = new ArrayList<String>();
+			List<QueryPlan> candidates = new ArrayList<QueryPlan>();
+			for (Map.Entry<String, Map<String, QueryPlan>> model : plans.entrySet()) {
+				QueryPlan plan = model.getValue().get(operation);
+				if (plan != null) {
+					strategies.add(model.getKey());
+					candidates.add(plan);
+				}
+			}
+			if (candidates.isEmpty())
+				continue;
+
+			Result[] measured = compare(candidates);
+			Map<String, Result> byModel = new LinkedHashMap<String, Result>();
+			for (int k = 0; k < measured.length; k++)
+				byModel.put(strategies.get(k), measured[k]);
+			results.put(operation, byModel);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Fits a {@link CostModel} to the measured plans and reports how well the
+	 * configured cost model and the fitted one predict the observed order of the
+	 * plans, per operation and over all plans.
+	 */
+	private void calibrate(Map<String, Map<String, Result>> results, PrintStream out) {
+		List<String> labels = new ArrayList<String>();
+		List<Result> measured = new ArrayList<Result>();
+		List<Double> scores = new ArrayList<Double>();
+		for (Map.Entry<String, Map<String, Result>> operation : results.entrySet()) {
+			for (Map.Entry<String, Result> strategy : operation.getValue().entrySet()) {
+				Result result = strategy.getValue();
+				if (!result.isMeasured())
+					continue;
+
+				String score = props.getProperty(
+						"rubis.calibration.score." + strategy.getKey() + "." + operation.getKey());
+				labels.add(operation.getKey() + "\t" + strategy.getKey());
+				measured.add(result);
+				scores.add(score != null ? Double.parseDouble(score)
+						: configured.cost(result.getDocuments(), result.getRoundTrips(), result.getBytes()));
+			}
+		}
+		if (measured.size() < 2) {
+			out.println("Too few measured plans to calibrate the cost model");
+			return;
+		}
+
+		int n = measured.size();
+		double[] documents = new double[n];
+		double[] roundTrips = new double[n];
+		double[] bytes = new double[n];
+		double[] observed = new double[n];
+		double[] predicted = new double[n];
+		for (int i = 0; i < n; i++) {
+			documents[i] = measured.get(i).getDocuments();
+			roundTrips[i] = measured.get(i).getRoundTrips();
+			bytes[i] = measured.get(i).getBytes();
+			observed[i] = measured.get(i).getLatency();
+			predicted[i] = scores.get(i);
+		}
+		CostModel fitted = CostModel.fit(documents, roundTrips, bytes, observed);
+		double[] fittedCosts = new double[n];
+		for (int i = 0; i < n; i++)
+			fittedCosts[i] = fitted.cost(documents[i], roundTrips[i], bytes[i]);
+
+		out.println();
+		out.println("Configured cost model: " + configured);
+		out.println("Fitted cost model:     " + fitted);
+		out.printf("Fitted R^2: %.3f%n", fitted.rSquared(documents, roundTrips, bytes, observed));
+		out.println();
+		out.printf("%-20s %-13s %12s %12s %12s%n", "operation", "strategy", "observed(us)", "predicted", "fitted(us)");
+		for (int i = 0; i < n; i++) {
+			String[] label = labels.get(i).split("\t");
+			out.printf("%-20s %-13s %12.1f %12.1f %12.1f%n", label[0], label[1], observed[i], predicted[i],
+					fittedCosts[i]);
+		}
+
+		out.println();
+		out.printf("%-20s %10s %10s%n", "rank agreement", "predicted", "fitted");
+		int start = 0;
+		while (start < n) {
+			String operation = labels.get(start).split("\t")[0];
+			int end = start;
+			while (end < n && labels.get(end).startsWith(operation + "\t"))
+				end++;
+			if (end - start > 1)
+				out.printf("%-20s %10.2f %10.2f%n", operation,
+						CostModel.kendallTau(Arrays.copyOfRange(predicted, start, end), Arrays.copyOfRange(observed, start, end)),
+						CostModel.kendallTau(Arrays.copyOfRange(fittedCosts, start, end), Arrays.copyOfRange(observed, start, end)));
+			start = end;
+		}
+		out.printf("%-20s %10.2f %10.2f%n", "all plans", CostModel.kendallTau(predicted, observed),
+				CostModel.kendallTau(fittedCosts, observed));
+	}
+
+	private Result[] compare(List<QueryPlan> candidates) {
+		int n = candidates.size();
+		Result[] results = new Result[n];
+		for (int k = 0; k < n; k++)
+			results[k] = new Result();
+
+		for (int i = 0; i < warmup; i++) {
+			int userId = userChooser.nextUserId();
+			for (int k = 0; k < n; k++)
+				execute(candidates.get((i + k) % n), userId, null);
+		}
+
+		for (int i = 0; i < iterations; i++) {
+			int userId = userChooser.nextUserId();
+			for (int k = 0; k < n; k++) {
+				int c = (i + k) % n;
+				execute(candidates.get(c), userId, results[c]);
+			}
+		}
+
+		for (int i = 0; i < profileIterations; i++) {
+			int userId = userChooser.nextUserId();
+			for (int k = 0; k < n; k++) {
+				int c = (i + k) % n;
+				profile(candidates.get(c), userId, results[c]);
+			}
+		}
+
+		return results;
+	}
+
+	private void execute(QueryPlan plan, int userId, Result result) {
+		long st = System.nanoTime();
+		boolean ok;
+		try {
+			ok = run(plan, userId);
+		} catch (EmptyRangeException e) {
+			// The user has no record the plan starts from, nothing to compare.
+			return;
+		}
+		long en = System.nanoTime();
+
+		if (result == null)
+			return;
+
+		if (ok) {
+			result.latency.recordValue((en - st) / 1000);
+			result.nanos += en - st;
+		} else {
+			result.errors++;
+		}
+	}
+
+	private void profile(QueryPlan plan, int userId, Result result) {
+		long examined = scannedObjects();
+		replies.enter("PlanComparison");
+		boolean ok;
+		WireStats.Tally tally;
+		try {
+			ok = run(plan, userId);
+		} catch (EmptyRangeException e) {
+			return;
+		} finally {
+			tally = replies.exit();
+		}
+
+		if (!ok) {
+			result.errors++;
+			return;
+		}
+		result.profiled++;
+		result.examined += scannedObjects() - examined;
+		result.bytes += tally.getReplyBytes();
+		result.roundTrips += tally.getCommands();
+	}
+
+	private boolean run(QueryPlan plan, int userId) {
+		try {
+			ResultConsumer.verify(plan.execute(database, userId), "query plan");
+			return true;
+		} catch (EmptyRangeException e) {
+			throw e;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * The number of documents the server examined so far.
+	 */
+	private long scannedObjects() {
+		Document status = admin.runCommand(new Document("serverStatus", 1));
+		Document metrics = (Document) status.get("metrics");
+		Document queryExecutor = (Document) metrics.get("queryExecutor");
+
+		return ((Number) queryExecutor.get("scannedObjects")).longValue();
+	}
+
+	/**
+	 * The measurements of one strategy of an operation.
+	 */
+	static class Result {
+
+		private final Histogram latency = new Histogram(3);
+
+		private long nanos;
+
+		private long errors;
+
+		private long profiled;
+
+		private long bytes;
+
+		private long roundTrips;
+
+		private long examined;
+
+		/**
+		 * Whether both the timed and the profiling pass have successful executions.
+		 */
+		boolean isMeasured() {
+			return latency.getTotalCount() > 0 && profiled > 0;
+		}
+
+		/**
+		 * The mean latency in microseconds.
+		 */
+		double getLatency() {
+			return latency.getMean();
+		}
+
+		double getDocuments() {
+			return examined / (double) Math.max(profiled, 1);
+		}
+
+		double getRoundTrips() {
+			return roundTrips / (double) Math.max(profiled, 1);
+		}
+
+		double getBytes() {
+			return bytes / (double) Math.max(profiled, 1);
+		}
+
+		void print(PrintStream out, String operation, String strategy) {
+			long executions = latency.getTotalCount();
+			double throughput = nanos > 0 ? executions * 1e9 / nanos : 0;
+
+			out.printf("%-20s %-13s %10.1f %10.1f %10d %10d %10d %12.1f %10.2f %10.1f %7d%n", operation, strategy,
+					throughput, latency.getMean(), latency.getValueAtPercentile(50), latency.getValueAtPercentile(95),
+					latency.getValueAtPercentile(99), getBytes(), getRoundTrips(), getDocuments(), errors);
+		}
+	}
+}
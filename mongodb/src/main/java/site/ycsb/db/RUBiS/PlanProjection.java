@@ -0,0 +1,141 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
+
+/**
+ * Server-side projections of the RUBiS query plans.
+ *
+ * Every plan declares the fields of the page it models, next to the fields it
+ * navigates on, per query: find projections with $slice and $elemMatch on
+ * embedded arrays, and $project stages inside and after its $lookup stages.
+ * They are only applied with rubis.projection=true, otherwise the plans read
+ * whole documents as before. The reply bytes per operation of both are compared
+ * by {@link PlanComparison}.
+ *
+ * A $lookup with a pipeline next to localField and foreignField needs MongoDB
+ * 5.0.
+ *
+ * @author vincent
+ *
+ */
+public class PlanProjection {
+
+	public static final String PROPERTY = "rubis.projection";
+
+	/** The most elements of an embedded array a page shows. */
+	public static final int PAGE_SIZE = 20;
+
+	/** A user as embedded in the users field, with the key plans navigate on. */
+	public static final Bson EMBEDDED_USER = Projections.include("users._id", "users.firstName", "users.lastName",
+			"users.regions.regionName");
+
+	/** An item without its description, and its seller. */
+	public static final Bson ITEM_SELLER = Projections.include("productTitle", "price", "date", "users.firstName",
+			"users.lastName", "users.regions.regionName");
+
+	/** An item without its description. */
+	public static final Bson ITEM = Projections.include("productTitle", "price", "date");
+
+	/** A bid with its bidder but without its embedded item. */
+	public static final Bson BID = Projections.include("price", "date", "id_user");
+
+	/** A bid and the title of its item, with the seller plans navigate on. */
+	public static final Bson BID_ITEM = Projections.include("price", "date", "id_user", "items.productTitle",
+			"items.price", "items.id_seller");
+
+	/** An item and the first page of its comments. */
+	public static final Bson ITEM_COMMENTS = Projections.fields(ITEM, Projections.slice("comments", PAGE_SIZE));
+
+	/** An item and the last page of its bids. */
+	public static final Bson ITEM_BIDS = Projections.fields(ITEM, Projections.slice("bids", -PAGE_SIZE));
+
+	/** {@link #ITEM_COMMENTS} in a $project stage, where $slice is an expression. */
+	public static final Bson ITEM_COMMENTS_STAGE = Projections.fields(ITEM, Projections.computed("comments",
+			new BsonDocument("$slice", new BsonArray(Arrays.asList(new BsonString("$comments"), new BsonInt32(PAGE_SIZE))))));
+
+	/** An item title and its first comment, whose author plans navigate to. */
+	public static final Bson ITEM_FIRST_COMMENT = Projections.fields(Projections.include("productTitle"),
+			Projections.slice("comments", 1));
+
+	/** An item title and the comment that matched the filter on comments. */
+	public static final Bson ITEM_MATCHED_COMMENT = Projections.fields(Projections.include("productTitle"),
+			Projections.elemMatch("comments"));
+
+	private static volatile boolean enabled;
+
+	public static void setProperties(Properties props) {
+		enabled = Boolean.parseBoolean(props.getProperty(PROPERTY, "false"));
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the find with the projection applied if enabled.
+	 */
+	public static <T> FindIterable<T> apply(FindIterable<T> find, Bson projection) {
+		return enabled ? find.projection(projection) : find;
+	}
+
+	/**
+	 * Returns the stages, followed by a $project stage of the projection if
+	 * enabled.
+	 */
+	public static List<Bson> pipeline(Bson projection, Bson... stages) {
+		List<Bson> pipeline = new ArrayList<Bson>(Arrays.asList(stages));
+		if (enabled)
+			pipeline.add(Aggregates.project(projection));
+		return pipeline;
+	}
+
+	/**
+	 * Returns the $lookup stage that joins the documents of from whose foreignField
+	 * equals the localField, projected inside the $lookup if enabled.
+	 */
+	public static Bson lookup(final String from, final String localField, final String foreignField,
+			final Bson projection, final String as) {
+		if (!enabled)
+			return Aggregates.lookup(from, localField, foreignField, as);
+
+		return new Bson() {
+			@Override
+			public <TDocument> BsonDocument toBsonDocument(Class<TDocument> documentClass,
+					CodecRegistry codecRegistry) {
+				BsonArray pipeline = new BsonArray(Collections.singletonList(
+						Aggregates.project(projection).toBsonDocument(documentClass, codecRegistry)));
+				return new BsonDocument("$lookup", new BsonDocument("from", new BsonString(from))
+						.append("localField", new BsonString(localField))
+						.append("foreignField", new BsonString(foreignField))
+						.append("pipeline", pipeline)
+						.append("as", new BsonString(as)));
+			}
+		};
+	}
+
+	/**
+	 * Returns the projection of an item title and its comments by the user, the
+	 * aggregation counterpart of {@link #ITEM_MATCHED_COMMENT}.
+	 */
+	public static Bson itemCommentsBy(int userId) {
+		return Projections.fields(Projections.include("productTitle"), Projections.computed("comments",
+				new BsonDocument("$filter", new BsonDocument("input", new BsonString("$comments"))
+						.append("cond", new BsonDocument("$eq", new BsonArray(
+								Arrays.asList(new BsonString("$$this.id_user"), new BsonInt32(userId))))))));
+	}
+}
@@ -0,0 +1,22 @@
+package site.ycsb.db.RUBiS;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * One way to answer a RUBiS join sequence, e.g. Items->Bids, starting from the
+ * data of a user.
+ *
+ * @author vincent
+ *
+ */
+public interface QueryPlan {
+
+	/**
+	 * Runs the plan for the given user and returns its (first) result, null if
+	 * nothing was found.
+	 */
+	public Document execute(MongoDatabase database, int userId);
+
+}
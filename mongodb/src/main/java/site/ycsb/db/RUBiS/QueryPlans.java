@@ -0,0 +1,72 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The named RUBiS operations and the query plans that implement them per schema
+ * model.
+ *
+ * Models, selected with rubis.model:
+ * <ul>
+ * <li>denormalized (default): {@link WorkloadModel}, the recommended
+ * denormalized collections.</li>
+ * <li>normalized: client-side joins over the normalized collections that follow
+ * all children, one $in query per hop, see {@link JoinExecutor}.</li>
+ * <li>lookup: {@link WorkloadModelLocal}, $lookup aggregations.</li>
+ * <li>fivedoc: {@link WorkloadModelFiveDoc}, the five-collection
+ * recommendation.</li>
+ * </ul>
+ *
+ * @author vincent
+ *
+ */
+public class QueryPlans {
+
+	/**
+	 * All operations, named after their join sequence.
+	 */
+	public static final List<String> OPERATIONS = Collections.unmodifiableList(Arrays.asList("BidsUsers",
+			"BidsItems", "UsersRegions", "UsersItems", "UsersBidsItems", "UsersBidsItemsUsers", "UsersComments",
+			"ItemsComments", "ItemsCommentsUsers", "ItemsUsers", "ItemsBids", "RegionsUsers"));
+
+	public static final String MODEL_PROPERTY = "rubis.model";
+
+	public static final String MODEL_PROPERTY_DEFAULT = "denormalized";
+
+	/**
+	 * Returns the plans of a model per operation name. Operations the model has no
+	 * plan for are missing.
+	 */
+	public static Map<String, QueryPlan> forModel(String model) {
+		if ("denormalized".equals(model))
+			return WorkloadModel.plans();
+		if ("normalized".equals(model))
+			return WorkloadModel.normalizedPlans();
+		if ("lookup".equals(model))
+			return WorkloadModelLocal.plans();
+		if ("fivedoc".equals(model))
+			return WorkloadModelFiveDoc.plans();
+
+		throw new IllegalArgumentException("Unknown " + MODEL_PROPERTY + ": " + model);
+	}
+
+	/**
+	 * Returns the fields the plans of a model filter on, other than _id, per
+	 * collection.
+	 */
+	public static Map<String, List<String>> indexesForModel(String model) {
+		if ("denormalized".equals(model))
+			return WorkloadModel.indexes();
+		if ("normalized".equals(model))
+			return WorkloadModel.normalizedIndexes();
+		if ("lookup".equals(model))
+			return WorkloadModelLocal.indexes();
+		if ("fivedoc".equals(model))
+			return WorkloadModelFiveDoc.indexes();
+
+		throw new IllegalArgumentException("Unknown " + MODEL_PROPERTY + ": " + model);
+	}
+}
@@ -0,0 +1,193 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.RawBsonDocument;
+
+import site.ycsb.db.RUBiS.DataModel.Bid;
+import site.ycsb.db.RUBiS.DataModel.Entity;
+import site.ycsb.db.RUBiS.DataModel.Item;
+import site.ycsb.db.RUBiS.DataModel.User;
+
+/**
+ * Generates the same collections as the {@link DataModel.DocumentGenerator}, but
+ * encodes every variant directly as {@link RawBsonDocument}. Base documents are
+ * encoded once per thread, all variants embed them as byte copies.
+ *
+ * Thread-safe, every thread writes into its own buffer.
+ *
+ * @author vincent
+ *
+ */
+public class RawDocumentGenerator implements DataModel.RecordFactory<RawBsonDocument> {
+
+	private static final ThreadLocal<RawDocumentWriter> WRITER = new ThreadLocal<RawDocumentWriter>() {
+		@Override
+		protected RawDocumentWriter initialValue() {
+			return new RawDocumentWriter();
+		}
+	};
+
+	/**
+	 * Creates the records of the given user in all generated collections, see
+	 * {@link DataModel.DocumentGenerator#createRecords(int)}.
+	 */
+	@Override
+	public Map<String, List<RawBsonDocument>> createRecords(int userId) {
+		Map<String, List<RawBsonDocument>> generated = new HashMap<String, List<RawBsonDocument>>();
+		RawDocumentWriter writer = WRITER.get();
+
+		if (generates("Users"))
+			add(generated, "Users", raw(Entity.USER, userId));
+		if (generates("UsersComments"))
+			add(generated, "UsersComments", usersComments(writer, userId));
+
+		IdRange itemIds = User.getItemIds(userId);
+		for (int i = 0; i < itemIds.size(); i++) {
+			int itemId = itemIds.get(i);
+			if (generates("Items"))
+				add(generated, "Items", raw(Entity.ITEM, itemId));
+			if (generates("ItemsBids"))
+				add(generated, "ItemsBids", itemsBids(writer, itemId));
+			if (generates("ItemsBidsUsers"))
+				add(generated, "ItemsBidsUsers", itemsBidsUsers(writer, itemId));
+			if (generates("ItemsUsersRegions"))
+				add(generated, "ItemsUsersRegions", itemsUsersRegions(writer, itemId));
+			if (generates("ItemsComments"))
+				add(generated, "ItemsComments", itemsComments(writer, itemId));
+			if (generates("ItemsUsers"))
+				add(generated, "ItemsUsers", itemsUsers(writer, itemId));
+		}
+
+		if (generates("Comments"))
+			for (int i = 0; i < itemIds.size(); i++) {
+				IdRange commentIds = Item.getCommentIds(itemIds.get(i));
+				for (int j = 0; j < commentIds.size(); j++)
+					add(generated, "Comments", raw(Entity.COMMENT, commentIds.get(j)));
+			}
+
+		for (int i = 0; i < itemIds.size(); i++) {
+			IdRange bidIds = Item.getBidIds(itemIds.get(i));
+			for (int j = 0; j < bidIds.size(); j++) {
+				int bidId = bidIds.get(j);
+				if (generates("Bids"))
+					add(generated, "Bids", raw(Entity.BID, bidId));
+				if (generates("BidsUsers"))
+					add(generated, "BidsUsers", bidsUsers(writer, null, bidId).toDocument());
+				if (generates("BidsUsersItems"))
+					add(generated, "BidsUsersItems", bidsUsersItems(writer, bidId));
+				if (generates("BidsItems"))
+					add(generated, "BidsItems", bidsItems(writer, bidId));
+			}
+		}
+
+		if (userId == 0 && generates("Regions"))
+			for (int regionId = 0; regionId < DataModel.getNrOfRegions(); regionId++)
+				add(generated, "Regions", raw(Entity.REGION, regionId));
+
+		return generated;
+	}
+
+	private static boolean generates(String collection) {
+		return DataModel.generates(collection);
+	}
+
+	private static RawBsonDocument raw(Entity entity, int id) {
+		return DataModel.rawBaseDocument(entity, id);
+	}
+
+	private static void add(Map<String, List<RawBsonDocument>> generated, String collection, RawBsonDocument document) {
+		List<RawBsonDocument> documents = generated.get(collection);
+		if (documents == null) {
+			documents = new ArrayList<RawBsonDocument>();
+			generated.put(collection, documents);
+		}
+		documents.add(document);
+	}
+
+	private static RawBsonDocument usersComments(RawDocumentWriter writer, int userId) {
+		writer.startDocument(null, raw(Entity.USER, userId)).startArray("comments");
+		IdRange itemIds = User.getItemIds(userId);
+		for (int i = 0; i < itemIds.size(); i++) {
+			IdRange commentIds = Item.getCommentIds(itemIds.get(i));
+			for (int j = 0; j < commentIds.size(); j++)
+				writer.document(null, raw(Entity.COMMENT, commentIds.get(j)));
+		}
+		return writer.end().toDocument();
+	}
+
+	/*
+	 * The builders below leave the document they start open, the caller ends it.
+	 */
+
+	private static RawDocumentWriter usersRegions(RawDocumentWriter writer, String name, int userId) {
+		return writer.startDocument(name, raw(Entity.USER, userId))
+				.document("regions", raw(Entity.REGION, User.getRegionId(userId)));
+	}
+
+	private static RawDocumentWriter usersItems(RawDocumentWriter writer, String name, int userId) {
+		writer.startDocument(name, raw(Entity.USER, userId)).startArray("items");
+		IdRange itemIds = User.getItemIds(userId);
+		for (int i = 0; i < itemIds.size(); i++)
+			writer.document(null, raw(Entity.ITEM, itemIds.get(i)));
+		return writer.end();
+	}
+
+	private static RawDocumentWriter bidsUsers(RawDocumentWriter writer, String name, int bidId) {
+		return writer.startDocument(name, raw(Entity.BID, bidId))
+				.document("users", raw(Entity.USER, Bid.getUserId(bidId)));
+	}
+
+	/*
+	 * Top-level variants.
+	 */
+
+	private static RawBsonDocument itemsBids(RawDocumentWriter writer, int itemId) {
+		writer.startDocument(null, raw(Entity.ITEM, itemId)).startArray("bids");
+		IdRange bidIds = Item.getBidIds(itemId);
+		for (int i = 0; i < bidIds.size(); i++)
+			writer.document(null, raw(Entity.BID, bidIds.get(i)));
+		return writer.end().toDocument();
+	}
+
+	private static RawBsonDocument itemsBidsUsers(RawDocumentWriter writer, int itemId) {
+		writer.startDocument(null, raw(Entity.ITEM, itemId)).startArray("bids");
+		IdRange bidIds = Item.getBidIds(itemId);
+		for (int i = 0; i < bidIds.size(); i++)
+			bidsUsers(writer, null, bidIds.get(i)).end();
+		return writer.end().toDocument();
+	}
+
+	private static RawBsonDocument itemsUsersRegions(RawDocumentWriter writer, int itemId) {
+		writer.startDocument(null, raw(Entity.ITEM, itemId));
+		usersRegions(writer, "users", Item.getUserId(itemId)).end();
+		return writer.toDocument();
+	}
+
+	private static RawBsonDocument itemsComments(RawDocumentWriter writer, int itemId) {
+		writer.startDocument(null, raw(Entity.ITEM, itemId)).startArray("comments");
+		IdRange commentIds = Item.getCommentIds(itemId);
+		for (int i = 0; i < commentIds.size(); i++)
+			writer.document(null, raw(Entity.COMMENT, commentIds.get(i)));
+		return writer.end().toDocument();
+	}
+
+	private static RawBsonDocument itemsUsers(RawDocumentWriter writer, int itemId) {
+		return writer.startDocument(null, raw(Entity.ITEM, itemId))
+				.document("users", raw(Entity.USER, Item.getUserId(itemId))).toDocument();
+	}
+
+	private static RawBsonDocument bidsUsersItems(RawDocumentWriter writer, int bidId) {
+		writer.startDocument(null, raw(Entity.BID, bidId));
+		usersItems(writer, "users", Bid.getUserId(bidId)).end();
+		return writer.toDocument();
+	}
+
+	private static RawBsonDocument bidsItems(RawDocumentWriter writer, int bidId) {
+		return writer.startDocument(null, raw(Entity.BID, bidId))
+				.document("items", raw(Entity.ITEM, Bid.getItemId(bidId))).toDocument();
+	}
+}
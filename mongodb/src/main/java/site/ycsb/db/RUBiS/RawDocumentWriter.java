@@ -0,0 +1,121 @@
+package site.ycsb.db.RUBiS;
+
+import org.bson.BsonType;
+import org.bson.ByteBuf;
+import org.bson.RawBsonDocument;
+import org.bson.io.BasicOutputBuffer;
+
+/**
+ * Writes BSON documents straight into a reused output buffer. Documents start
+ * from the elements of a pre-encoded base document, embedded documents are
+ * copied as byte slices of their raw encoding instead of being encoded again.
+ *
+ * Not thread-safe.
+ *
+ * @author vincent
+ *
+ */
+class RawDocumentWriter {
+
+	private static final int MAX_DEPTH = 16;
+
+	private final BasicOutputBuffer buffer = new BasicOutputBuffer(1024);
+
+	/** Start position of every open document or array. */
+	private final int[] starts = new int[MAX_DEPTH];
+
+	/** Next element index of every open array, -1 for documents. */
+	private final int[] indexes = new int[MAX_DEPTH];
+
+	private int depth = 0;
+
+	/**
+	 * Starts a document with all elements of the given base document. At the top
+	 * level the name is ignored, in an array the element index is used.
+	 */
+	public RawDocumentWriter startDocument(String name, RawBsonDocument base) {
+		if (depth > 0)
+			writeName(BsonType.DOCUMENT, name);
+
+		open(-1);
+		copy(base, 4, 1);
+
+		return this;
+	}
+
+	/**
+	 * Adds a complete document.
+	 */
+	public RawDocumentWriter document(String name, RawBsonDocument document) {
+		writeName(BsonType.DOCUMENT, name);
+		copy(document, 0, 0);
+
+		return this;
+	}
+
+	public RawDocumentWriter startArray(String name) {
+		writeName(BsonType.ARRAY, name);
+		open(0);
+
+		return this;
+	}
+
+	/**
+	 * Ends the current document or array.
+	 */
+	public RawDocumentWriter end() {
+		buffer.writeByte(0);
+
+		depth--;
+		int start = starts[depth];
+		buffer.writeInt32(start, buffer.getPosition() - start);
+
+		return this;
+	}
+
+	/**
+	 * Ends the top-level document and returns it. The writer can be reused
+	 * afterwards.
+	 */
+	public RawBsonDocument toDocument() {
+		end();
+		if (depth != 0)
+			throw new IllegalStateException("Unbalanced document, depth " + depth);
+
+		RawBsonDocument document = new RawBsonDocument(buffer.toByteArray());
+		buffer.truncateToPosition(0);
+
+		return document;
+	}
+
+	private void open(int index) {
+		starts[depth] = buffer.getPosition();
+		indexes[depth] = index;
+		depth++;
+
+		buffer.writeInt32(0);
+	}
+
+	private void writeName(BsonType type, String name) {
+		buffer.writeByte(type.getValue());
+
+		int index = indexes[depth - 1];
+		if (index >= 0) {
+			buffer.writeCString(Integer.toString(index));
+			indexes[depth - 1]++;
+		} else {
+			buffer.writeCString(name);
+		}
+	}
+
+	/**
+	 * Copies the encoded document without the given number of leading and
+	 * trailing bytes.
+	 */
+	private void copy(RawBsonDocument document, int skipStart, int skipEnd) {
+		ByteBuf bytes = document.getByteBuffer();
+		int start = bytes.position() + skipStart;
+
+		buffer.writeBytes(bytes.array(), start, bytes.limit() - skipEnd - start);
+	}
+}
@@ -0,0 +1,293 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+/**
+ * Consumes the results of the RUBiS query plans, without writing to the console.
+ *
+ * The mode is configured with rubis.consume:
+ * <ul>
+ * <li>count: drains the cursors as raw BSON and only counts the documents.</li>
+ * <li>raw: like count, and hands the documents a plan returns to the caller as
+ * {@link RawBsonDocument}, without decoding them.</li>
+ * <li>decode (default): decodes the documents and copies the result of a read
+ * into the YCSB result map.</li>
+ * <li>verify: like decode, and checks that a plan found its documents and that
+ * every document has an _id. A failed check throws a
+ * {@link VerificationException}.</li>
+ * </ul>
+ *
+ * A plan whose result is a cursor returns the {@link #result} of draining it:
+ * the number of documents as {@link #COUNT_FIELD}, in raw mode with the
+ * documents as {@link #RAW_FIELD}, or null if there were none.
+ *
+ * A plan that reads single documents reads them with {@link #first}. In count
+ * and raw mode these are not decoded but wrapped as {@link #RAW_FIELD}, the plan
+ * takes the keys of its next query from them with {@link #value}, which only
+ * decodes the fields on the path.
+ *
+ * @author vincent
+ *
+ */
+public class ResultConsumer {
+
+	public enum Mode {
+		COUNT, RAW, DECODE, VERIFY;
+
+		/**
+		 * Whether the result of a read is copied into the YCSB result map.
+		 */
+		public boolean fillsResult() {
+			return this == DECODE || this == VERIFY;
+		}
+	}
+
+	public static final String MODE_PROPERTY = "rubis.consume";
+
+	/**
+	 * The field holding the raw result of a $lookup in count and raw mode, and the
+	 * raw documents of a drained cursor in raw mode.
+	 */
+	public static final String RAW_FIELD = "raw";
+
+	/** The field holding the number of documents of a drained cursor. */
+	public static final String COUNT_FIELD = "count";
+
+	private static volatile Mode mode = Mode.DECODE;
+
+	/**
+	 * Thrown in verify mode if a result is not what the plan asked for.
+	 */
+	public static class VerificationException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public VerificationException(String message) {
+			super(message);
+		}
+	}
+
+	public static void setProperties(Properties props) {
+		String value = props.getProperty(MODE_PROPERTY, "decode");
+		try {
+			mode = Mode.valueOf(value.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown " + MODE_PROPERTY + ": " + value);
+		}
+	}
+
+	public static Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Reads all documents matching the filter and returns their number.
+	 */
+	public static int drain(MongoCollection<Document> collection, Bson filter) {
+		return drain(collection, filter, null);
+	}
+
+	/**
+	 * Reads the projected fields of all documents matching the filter and returns
+	 * their number. The projection is applied as configured for the
+	 * {@link PlanProjection}, a null projection reads whole documents.
+	 */
+	public static int drain(MongoCollection<Document> collection, Bson filter, Bson projection) {
+		return drain(mode, collection, filter, projection, null);
+	}
+
+	/**
+	 * Reads the projected fields of all documents matching the filter as the
+	 * result of a plan, see {@link #counted(int, List)}.
+	 */
+	public static Document result(MongoCollection<Document> collection, Bson filter, Bson projection) {
+		Mode current = mode;
+		List<RawBsonDocument> kept = current == Mode.RAW ? new ArrayList<RawBsonDocument>() : null;
+		return counted(drain(current, collection, filter, projection, kept), kept);
+	}
+
+	/**
+	 * Returns the result of a plan that drained a cursor: the number of documents
+	 * as {@link #COUNT_FIELD} and the kept raw documents, if any, as
+	 * {@link #RAW_FIELD}. Returns null if the cursor was empty, the plan found
+	 * nothing.
+	 */
+	public static Document counted(int count, List<RawBsonDocument> kept) {
+		if (count == 0)
+			return null;
+
+		Document result = new Document(COUNT_FIELD, count);
+		if (kept != null)
+			result.append(RAW_FIELD, kept);
+		return result;
+	}
+
+	/**
+	 * Drains the cursor in the mode, adding the raw documents to kept if not null.
+	 */
+	private static int drain(Mode current, MongoCollection<Document> collection, Bson filter, Bson projection,
+			List<RawBsonDocument> kept) {
+		if (current == Mode.COUNT || current == Mode.RAW) {
+			int count = 0;
+			MongoCursor<RawBsonDocument> cursor = project(OperationContext.raw(collection).find(filter), projection)
+					.iterator();
+			try {
+				while (cursor.hasNext()) {
+					RawBsonDocument document = cursor.next();
+					if (kept != null)
+						kept.add(document);
+					count++;
+				}
+			} finally {
+				cursor.close();
+			}
+			return count;
+		}
+
+		int count = 0;
+		MongoCursor<Document> cursor = project(collection.find(filter), projection).iterator();
+		try {
+			while (cursor.hasNext()) {
+				Document document = cursor.next();
+				if (current == Mode.VERIFY)
+					verify(document, collection.getNamespace().getCollectionName());
+				count++;
+			}
+		} finally {
+			cursor.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the projected fields of the first document matching the filter, or
+	 * returns null if there is none. The projection is applied as configured for
+	 * the {@link PlanProjection}, a null projection reads the whole document. In
+	 * count and raw mode the document is not decoded but returned as the
+	 * {@link #RAW_FIELD} of a wrapper document, like by {@link #aggregate}.
+	 */
+	public static Document first(MongoCollection<Document> collection, Bson filter, Bson projection) {
+		Mode current = mode;
+
+		if (current == Mode.COUNT || current == Mode.RAW) {
+			RawBsonDocument raw = project(OperationContext.raw(collection).find(filter), projection).first();
+			return wrap(raw);
+		}
+
+		return project(collection.find(filter), projection).first();
+	}
+
+	/**
+	 * Returns the raw document as the result of a plan in count and raw mode.
+	 */
+	static Document wrap(RawBsonDocument raw) {
+		return raw != null ? new Document(RAW_FIELD, raw) : null;
+	}
+
+	/**
+	 * Returns the value at the path of fields in a document read with
+	 * {@link #first} or {@link #aggregate}, taking the first element of the arrays
+	 * on the way, or null if there is no such value. Of a raw document only the
+	 * fields on the path are decoded.
+	 */
+	public static Object value(Document result, String... path) {
+		if (result == null)
+			return null;
+
+		Object raw = result.get(RAW_FIELD);
+		if (raw instanceof RawBsonDocument) {
+			BsonValue current = (RawBsonDocument) raw;
+			for (String field : path) {
+				if (current != null && current.isArray())
+					current = current.asArray().isEmpty() ? null : current.asArray().get(0);
+				if (current == null || !current.isDocument())
+					return null;
+				current = current.asDocument().get(field);
+			}
+			return current != null ? decode(current) : null;
+		}
+
+		Object current = result;
+		for (String field : path) {
+			if (current instanceof List)
+				current = ((List<?>) current).isEmpty() ? null : ((List<?>) current).get(0);
+			if (!(current instanceof Document))
+				return null;
+			current = ((Document) current).get(field);
+		}
+		return current;
+	}
+
+	/**
+	 * Decodes a key value as the document codec would, other values stay BSON.
+	 */
+	private static Object decode(BsonValue value) {
+		switch (value.getBsonType()) {
+		case INT32:
+			return value.asInt32().getValue();
+		case INT64:
+			return value.asInt64().getValue();
+		case DOUBLE:
+			return value.asDouble().getValue();
+		case STRING:
+			return value.asString().getValue();
+		case OBJECT_ID:
+			return value.asObjectId().getValue();
+		case NULL:
+			return null;
+		default:
+			return value;
+		}
+	}
+
+	private static <T> FindIterable<T> project(FindIterable<T> find, Bson projection) {
+		return projection != null ? PlanProjection.apply(find, projection) : find;
+	}
+
+	/**
+	 * Runs an aggregation and returns its first document, or null if there is none.
+	 * In count and raw mode the document is not decoded but returned as the
+	 * {@link #RAW_FIELD} of a wrapper document.
+	 */
+	public static Document aggregate(MongoCollection<Document> collection, List<? extends Bson> pipeline) {
+		Mode current = mode;
+
+		if (current == Mode.COUNT || current == Mode.RAW)
+			return wrap(OperationContext.raw(collection).aggregate(pipeline).first());
+
+		Document document = collection.aggregate(pipeline).first();
+		if (current == Mode.VERIFY)
+			verify(document, collection.getNamespace().getCollectionName());
+		return document;
+	}
+
+	/**
+	 * Checks the document a plan returned, in verify mode only.
+	 */
+	public static void verify(Document document, String source) {
+		if (mode != Mode.VERIFY)
+			return;
+
+		if (document == null)
+			throw new VerificationException("No result from " + source);
+		if (document.containsKey("_id"))
+			return;
+
+		Object count = document.get(COUNT_FIELD);
+		if (count == null)
+			throw new VerificationException("Result from " + source + " without _id");
+		if (((Number) count).intValue() == 0)
+			throw new VerificationException("No documents from " + source);
+	}
+}
@@ -0,0 +1,231 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoDatabase;
+
+import site.ycsb.measurements.Measurements;
+
+/**
+ * In-process application cache in front of the RUBiS query plans, like the
+ * entity cache of a service in front of its database.
+ *
+ * Two tiers, each a {@link ClockCache}:
+ * <ul>
+ * <li>Results: the whole result of a plan, by operation and user. An operation
+ * only reads data of its user, except RegionsUsers, whose result is not cached.
+ * </li>
+ * <li>Entities: the base documents of Users, Items and Regions by _id, as the
+ * client-side joins of the normalized model fetch them, see
+ * {@link JoinExecutor}.</li>
+ * </ul>
+ *
+ * The writes of {@link UpdatePropagation} only change data of their user, which
+ * is invalidated in both tiers after every write.
+ *
+ * Configured with:
+ * <ul>
+ * <li>rubis.appcache.results: the most cached plan results, default 0, no
+ * result cache.</li>
+ * <li>rubis.appcache.entities: the most cached entities, default 0, no entity
+ * cache.</li>
+ * <li>rubis.appcache.shards: the number of independently locked shards of each
+ * tier, default 64.</li>
+ * </ul>
+ *
+ * The latency of a cached operation is measured as &lt;operation&gt;-CACHE-HIT
+ * or &lt;operation&gt;-CACHE-MISS next to its overall latency, the hit ratios of
+ * both tiers are printed by {@link #report()}.
+ *
+ * @author vincent
+ *
+ */
+public class RubisCache {
+
+	public static final String RESULTS_PROPERTY = "rubis.appcache.results";
+
+	public static final String ENTITIES_PROPERTY = "rubis.appcache.entities";
+
+	public static final String SHARDS_PROPERTY = "rubis.appcache.shards";
+
+	/** The collections of base entities that are cached by _id. */
+	public static final List<String> ENTITY_COLLECTIONS = Collections
+			.unmodifiableList(Arrays.asList("Users", "Items", "Regions"));
+
+	private static volatile ClockCache<Key, Document> results;
+
+	private static volatile ClockCache<Key, Document> entities;
+
+	private static final LongAdder resultHits = new LongAdder();
+
+	private static final LongAdder resultMisses = new LongAdder();
+
+	private static final LongAdder entityHits = new LongAdder();
+
+	private static final LongAdder entityMisses = new LongAdder();
+
+	/**
+	 * A cache key: an operation or collection name and a user or document id.
+	 */
+	static final class Key {
+
+		private final String name;
+
+		private final Object id;
+
+		Key(String name, Object id) {
+			this.name = name;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return name.equals(other.name) && id.equals(other.id);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * name.hashCode() + id.hashCode();
+		}
+	}
+
+	public static synchronized void setProperties(Properties props) {
+		int resultCapacity = Integer.parseInt(props.getProperty(RESULTS_PROPERTY, "0"));
+		int entityCapacity = Integer.parseInt(props.getProperty(ENTITIES_PROPERTY, "0"));
+		int shards = Integer.parseInt(props.getProperty(SHARDS_PROPERTY, "64"));
+		if (resultCapacity < 0 || entityCapacity < 0 || shards < 1)
+			throw new IllegalArgumentException(RESULTS_PROPERTY + " and " + ENTITIES_PROPERTY
+					+ " must not be negative, " + SHARDS_PROPERTY + " must be positive");
+
+		results = resultCapacity > 0 ? new ClockCache<Key, Document>(resultCapacity, shards) : null;
+		entities = entityCapacity > 0 ? new ClockCache<Key, Document>(entityCapacity, shards) : null;
+
+		resultHits.reset();
+		resultMisses.reset();
+		entityHits.reset();
+		entityMisses.reset();
+	}
+
+	/**
+	 * Returns the plan of an operation with its results cached, or the plan itself
+	 * if results are not cached.
+	 */
+	public static QueryPlan cached(final String operation, final QueryPlan plan) {
+		if (results == null || "RegionsUsers".equals(operation))
+			return plan;
+
+		final Measurements measurements = Measurements.getMeasurements();
+		return new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				ClockCache<Key, Document> cache = results;
+				if (cache == null)
+					return plan.execute(database, userId);
+
+				long st = System.nanoTime();
+				Key key = new Key(operation, userId);
+
+				Document result = cache.get(key);
+				if (result != null) {
+					resultHits.increment();
+					measurements.measure(operation + "-CACHE-HIT", (int) ((System.nanoTime() - st) / 1000));
+					return result;
+				}
+
+				long stamp = cache.stamp(key);
+				result = plan.execute(database, userId);
+				if (result != null)
+					cache.put(key, result, stamp);
+
+				resultMisses.increment();
+				measurements.measure(operation + "-CACHE-MISS", (int) ((System.nanoTime() - st) / 1000));
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Returns whether documents of the collection looked up by _id are cached.
+	 */
+	public static boolean cachesEntities(String collection) {
+		return entities != null && ENTITY_COLLECTIONS.contains(collection);
+	}
+
+	/**
+	 * Returns a copy of the cached entity, null if it is not cached.
+	 */
+	public static Document getEntity(String collection, Object id) {
+		ClockCache<Key, Document> cache = entities;
+		Document entity = cache != null ? cache.get(new Key(collection, id)) : null;
+		if (entity == null) {
+			entityMisses.increment();
+			return null;
+		}
+
+		entityHits.increment();
+		return new Document(entity);
+	}
+
+	/**
+	 * Returns the stamp to cache an entity read from the database after this call
+	 * with, see {@link ClockCache#stamp(Object)}.
+	 */
+	public static long entityStamp(String collection, Object id) {
+		ClockCache<Key, Document> cache = entities;
+		return cache != null ? cache.stamp(new Key(collection, id)) : 0;
+	}
+
+	/**
+	 * Caches a copy of the entity, before the caller stitches joined documents
+	 * into it.
+	 */
+	public static void putEntity(String collection, Document entity, long stamp) {
+		ClockCache<Key, Document> cache = entities;
+		if (cache != null)
+			cache.put(new Key(collection, entity.get("_id")), new Document(entity), stamp);
+	}
+
+	/**
+	 * Invalidates the results of all operations of the user and the user entity.
+	 */
+	public static void invalidateUser(int userId) {
+		ClockCache<Key, Document> cache = results;
+		if (cache != null)
+			for (String operation : QueryPlans.OPERATIONS)
+				cache.invalidate(new Key(operation, userId));
+
+		cache = entities;
+		if (cache != null)
+			cache.invalidate(new Key("Users", userId));
+	}
+
+	/**
+	 * Returns the hit ratios of the enabled tiers, null if there is no cache.
+	 */
+	public static String report() {
+		if (results == null && entities == null)
+			return null;
+
+		StringBuilder report = new StringBuilder("Application cache");
+		if (results != null)
+			report.append(", results: ").append(ratio(resultHits.sum(), resultMisses.sum()));
+		if (entities != null)
+			report.append(", entities: ").append(ratio(entityHits.sum(), entityMisses.sum()));
+		return report.toString();
+	}
+
+	private static String ratio(long hits, long misses) {
+		long lookups = hits + misses;
+		return hits + " hits of " + lookups + " lookups"
+				+ (lookups > 0 ? String.format(" (%.1f%%)", 100.0 * hits / lookups) : "");
+	}
+}
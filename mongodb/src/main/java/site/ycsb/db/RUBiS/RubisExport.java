@@ -0,0 +1,302 @@
+package site.ycsb.db.RUBiS;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bson.ByteBuf;
+import org.bson.RawBsonDocument;
+
+import site.ycsb.Client;
+import site.ycsb.Workload;
+
+/**
+ * Exports the RUBiS dataset to mongorestore compatible BSON dump files, one
+ * <code>&lt;dir&gt;/&lt;database&gt;/&lt;Collection&gt;.bson</code> per collection.
+ * Restore with <code>mongorestore --dir &lt;dir&gt;</code>.
+ *
+ * The users [insertstart, insertstart + insertcount) are exported in segments.
+ * Within a segment the users are split over several generator threads, which
+ * collect the documents of every collection in large local buffers and append
+ * them to the collection files in big sequential writes. Files of different
+ * collections are written in parallel.
+ *
+ * After every segment the files are forced to disk and the progress is written
+ * to <code>export.progress</code>. An interrupted export continues from the last
+ * completed segment, files are cut back to their size at that point and files
+ * created after it are deleted.
+ *
+ * Usage: RubisExport [-P propertyfile] [-p name=value]...
+ *
+ * @author vincent
+ *
+ */
+public class RubisExport {
+
+	private static final String PROGRESS_FILE = "export.progress";
+
+	private static final String NEXT_USER_ID = "nextUserId";
+
+	private final File directory;
+
+	private final File databaseDirectory;
+
+	private final int threads;
+
+	private final int segmentSize;
+
+	private final int bufferSize;
+
+	private final boolean resume;
+
+	private final int startUserId;
+
+	private final int endUserId;
+
+	/** The progress of the last completed segment. */
+	private final Properties progress = new Properties();
+
+	private final Map<String, CollectionFile> files = new HashMap<String, CollectionFile>();
+
+	private final RawDocumentGenerator generator = new RawDocumentGenerator();
+
+	public RubisExport(Properties props) {
+		int recordCount = Integer.parseInt(props.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT));
+		int insertStart = Integer.parseInt(
+				props.getProperty(Workload.INSERT_START_PROPERTY, Workload.INSERT_START_PROPERTY_DEFAULT));
+		int insertCount = Integer.parseInt(
+				props.getProperty(Workload.INSERT_COUNT_PROPERTY, String.valueOf(recordCount - insertStart)));
+
+		this.directory = new File(props.getProperty("rubis.export.dir", "dump"));
+		this.databaseDirectory = new File(directory, props.getProperty("rubis.export.database", "ycsb"));
+		this.threads = Integer.parseInt(props.getProperty("rubis.export.threads",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		this.segmentSize = Integer.parseInt(props.getProperty("rubis.export.segmentsize", "10000"));
+		this.bufferSize = Integer.parseInt(props.getProperty("rubis.export.buffersize", String.valueOf(1 << 20)));
+		this.resume = Boolean.parseBoolean(props.getProperty("rubis.export.resume", "true"));
+		this.startUserId = insertStart;
+		this.endUserId = insertStart + insertCount;
+
+		DataModel.setProperties(props);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Properties props = CommandLine.parse(args, "RubisExport");
+
+		new RubisExport(props).export();
+	}
+
+	/**
+	 * Runs the export, continuing a previous one if there is progress to resume.
+	 */
+	public void export() throws Exception {
+		if (!databaseDirectory.isDirectory() && !databaseDirectory.mkdirs())
+			throw new IOException("Could not create " + databaseDirectory);
+
+		int next = startUserId;
+		File progressFile = new File(directory, PROGRESS_FILE);
+		if (resume && progressFile.isFile()) {
+			InputStream in = new FileInputStream(progressFile);
+			try {
+				progress.load(in);
+			} finally {
+				in.close();
+			}
+			next = Integer.parseInt(progress.getProperty(NEXT_USER_ID));
+			System.out.println("Resuming RUBiS export at user " + next);
+		}
+		restoreCheckpoint();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long st = System.currentTimeMillis();
+			while (next < endUserId) {
+				int segmentEnd = (int) Math.min((long) next + segmentSize, endUserId);
+
+				exportSegment(executor, next, segmentEnd);
+				checkpoint(progressFile, segmentEnd);
+
+				System.out.println("Exported users [" + startUserId + ", " + segmentEnd + ") in "
+						+ (System.currentTimeMillis() - st) + " ms");
+				next = segmentEnd;
+			}
+		} finally {
+			executor.shutdown();
+			for (CollectionFile file : files.values())
+				file.close();
+		}
+	}
+
+	/**
+	 * Cuts every dump file back to its size at the last completed segment and
+	 * deletes the files that were not part of it, also those of collections that
+	 * get no documents in the remaining segments.
+	 */
+	private void restoreCheckpoint() throws IOException {
+		for (String key : progress.stringPropertyNames())
+			if (key.endsWith(".bytes")) {
+				String collection = key.substring(0, key.length() - ".bytes".length());
+				if (!new File(databaseDirectory, collection + ".bson").isFile())
+					throw new IOException("Missing " + collection + ".bson of the RUBiS export in " + databaseDirectory);
+				getFile(collection);
+			}
+
+		File[] dumps = databaseDirectory.listFiles();
+		if (dumps == null)
+			throw new IOException("Could not list " + databaseDirectory);
+		for (File dump : dumps) {
+			String name = dump.getName();
+			if (name.endsWith(".bson") && !files.containsKey(name.substring(0, name.length() - ".bson".length()))
+					&& !dump.delete())
+				throw new IOException("Could not delete " + dump);
+		}
+	}
+
+	/**
+	 * Exports the users [start, end), split over all generator threads.
+	 */
+	private void exportSegment(ExecutorService executor, int start, int end) throws Exception {
+		int count = end - start;
+		int usersPerThread = count / threads;
+		int remainder = count % threads;
+
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		int partStart = start;
+		for (int i = 0; i < threads; i++) {
+			final int first = partStart;
+			final int last = partStart + usersPerThread + (i < remainder ? 1 : 0);
+			partStart = last;
+
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					exportUsers(first, last);
+					return null;
+				}
+			}));
+		}
+
+		for (Future<Void> result : results)
+			result.get();
+	}
+
+	private void exportUsers(int first, int last) throws IOException {
+		Map<String, ByteBuffer> buffers = new HashMap<String, ByteBuffer>();
+
+		for (int userId = first; userId < last; userId++) {
+			for (Map.Entry<String, List<RawBsonDocument>> records : generator.createRecords(userId).entrySet()) {
+				ByteBuffer buffer = buffers.get(records.getKey());
+				if (buffer == null) {
+					buffer = ByteBuffer.allocateDirect(bufferSize);
+					buffers.put(records.getKey(), buffer);
+				}
+
+				for (RawBsonDocument document : records.getValue()) {
+					ByteBuf bytes = document.getByteBuffer();
+					if (bytes.remaining() > buffer.remaining()) {
+						flush(records.getKey(), buffer);
+
+						if (bytes.remaining() > buffer.remaining()) {
+							getFile(records.getKey())
+									.write(ByteBuffer.wrap(bytes.array(), bytes.position(), bytes.remaining()));
+							continue;
+						}
+					}
+					buffer.put(bytes.array(), bytes.position(), bytes.remaining());
+				}
+			}
+		}
+
+		for (Map.Entry<String, ByteBuffer> buffer : buffers.entrySet())
+			flush(buffer.getKey(), buffer.getValue());
+	}
+
+	private void flush(String collection, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		getFile(collection).write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Returns the file of a collection, cut back to its size at the last completed
+	 * segment.
+	 */
+	private synchronized CollectionFile getFile(String collection) throws IOException {
+		CollectionFile file = files.get(collection);
+		if (file == null) {
+			long size = Long.parseLong(progress.getProperty(collection + ".bytes", "0"));
+			file = new CollectionFile(new File(databaseDirectory, collection + ".bson"), size);
+			files.put(collection, file);
+		}
+		return file;
+	}
+
+	private void checkpoint(File progressFile, int nextUserId) throws IOException {
+		Map<String, Long> sizes = new TreeMap<String, Long>();
+		synchronized (this) {
+			for (Map.Entry<String, CollectionFile> file : files.entrySet())
+				sizes.put(file.getKey(), file.getValue().force());
+		}
+
+		for (Map.Entry<String, Long> size : sizes.entrySet())
+			progress.setProperty(size.getKey() + ".bytes", String.valueOf(size.getValue()));
+		progress.setProperty(NEXT_USER_ID, String.valueOf(nextUserId));
+
+		File tmp = new File(directory, PROGRESS_FILE + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			progress.store(out, "RUBiS export progress");
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(progressFile) && !(progressFile.delete() && tmp.renameTo(progressFile)))
+			throw new IOException("Could not write " + progressFile);
+	}
+
+	/**
+	 * A collection's dump file, appended to by all generator threads.
+	 */
+	private static class CollectionFile {
+
+		private final FileChannel channel;
+
+		CollectionFile(File file, long size) throws IOException {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			channel.truncate(size);
+			channel.position(size);
+		}
+
+		synchronized void write(ByteBuffer buffer) throws IOException {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+
+		/**
+		 * Forces the written documents to disk and returns the file size.
+		 */
+		synchronized long force() throws IOException {
+			channel.force(false);
+			return channel.position();
+		}
+
+		synchronized void close() throws IOException {
+			channel.close();
+		}
+	}
+}
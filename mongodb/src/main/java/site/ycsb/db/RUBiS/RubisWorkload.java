@@ -0,0 +1,173 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import site.ycsb.ByteIterator;
+import site.ycsb.DB;
+import site.ycsb.Status;
+import site.ycsb.Workload;
+import site.ycsb.WorkloadException;
+import site.ycsb.db.RUBiS.DataModel.DocumentGenerator;
+import site.ycsb.generator.DiscreteGenerator;
+import site.ycsb.measurements.Measurements;
+
+/**
+ * Workload that loads the RUBiS data model.
+ *
+ * Every client thread gets its own {@link DocumentGenerator} covering a disjoint
+ * range of user ids, derived from insertstart, insertcount and the thread id.
+ * The user id is passed to the DB as record key, the DB generates and stores
+ * all records of that user.
+ *
+ * Transactions run the named RUBiS operations of {@link QueryPlans}, e.g.
+ * ItemsBids, in the mix given by their proportions, like readproportion of the
+ * CoreWorkload: itemsbidsproportion=0.5, bidsusersproportion=0.5, ... The
+ * operation name is passed to the DB as table, the user id as key. Every
+ * operation is measured under its own name, next to the overall READ. The users
+ * are picked per thread by a {@link UserChooser}.
+ *
+ * The write operations of {@link UpdatePropagation}, e.g. PlaceBid, are mixed
+ * in the same way, placebidproportion=0.1, and passed to the DB as update,
+ * measured next to the overall UPDATE.
+ *
+ * With rubis.async.window the reads run asynchronously, see {@link AsyncPlans}:
+ * the DB measures an operation when its plan completes, the overall READ is the
+ * time to start it.
+ *
+ * Run with: workload=site.ycsb.db.RUBiS.RubisWorkload
+ *
+ * @author vincent
+ *
+ */
+public class RubisWorkload extends Workload {
+
+	/** The table name passed to the DB, the RUBiS collections are chosen by the DB. */
+	public static final String TABLENAME = "Users";
+
+	/** The suffix of the proportion property of an operation, after its lower case name. */
+	public static final String PROPORTION_PROPERTY_SUFFIX = "proportion";
+
+	/** Chooses the operation of every transaction. */
+	private DiscreteGenerator operationChooser;
+
+	private final Measurements measurements = Measurements.getMeasurements();
+
+	/** Whether the DB measures the reads when their asynchronous plans complete. */
+	private boolean asyncReads;
+
+	@Override
+	public void init(Properties p) throws WorkloadException {
+		operationChooser = createOperationChooser(p);
+		try {
+			asyncReads = AsyncPlans.window(p) > 0;
+		} catch (IllegalArgumentException e) {
+			throw new WorkloadException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the operation chooser from the proportion of every operation. Without
+	 * any proportion all transactions run ItemsBids.
+	 */
+	static DiscreteGenerator createOperationChooser(Properties p) throws WorkloadException {
+		String model = p.getProperty(QueryPlans.MODEL_PROPERTY, QueryPlans.MODEL_PROPERTY_DEFAULT);
+		Map<String, QueryPlan> plans;
+		try {
+			plans = QueryPlans.forModel(model);
+		} catch (IllegalArgumentException e) {
+			throw new WorkloadException(e.getMessage());
+		}
+
+		DiscreteGenerator chooser = new DiscreteGenerator();
+		boolean any = false;
+		List<String> operations = new ArrayList<String>(QueryPlans.OPERATIONS);
+		operations.addAll(UpdatePropagation.OPERATIONS);
+		for (String operation : operations) {
+			String property = operation.toLowerCase() + PROPORTION_PROPERTY_SUFFIX;
+			double proportion = Double.parseDouble(p.getProperty(property, "0"));
+			if (proportion <= 0)
+				continue;
+
+			if (QueryPlans.OPERATIONS.contains(operation) && !plans.containsKey(operation))
+				throw new WorkloadException("Model " + model + " has no plan for " + operation + ", set " + property + "=0");
+
+			chooser.addValue(proportion, operation);
+			any = true;
+		}
+
+		if (!any)
+			chooser.addValue(1, "ItemsBids");
+
+		return chooser;
+	}
+
+	@Override
+	public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException {
+		try {
+			return new ThreadState(DocumentGenerator.forThread(p, mythreadid, threadcount),
+					UserChooser.fromProperties(p, mythreadid, threadcount));
+		} catch (IllegalArgumentException e) {
+			throw new WorkloadException(e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean doInsert(DB db, Object threadstate) {
+		DocumentGenerator generator = ((ThreadState) threadstate).generator;
+
+		if (!generator.hasNext())
+			return false;
+
+		String key = String.valueOf(generator.nextUserId());
+		Status status = db.insert(TABLENAME, key, new HashMap<String, ByteIterator>());
+
+		return null != status && status.isOk();
+	}
+
+	/**
+	 * Runs one operation of the mix. Like the core workload it returns true
+	 * whatever the status: the status is counted for the operation, and a NOT_FOUND,
+	 * e.g. for a user without items, must not stop the client thread.
+	 */
+	@Override
+	public boolean doTransaction(DB db, Object threadstate) {
+		String operation = operationChooser.nextString();
+		String key = String.valueOf(((ThreadState) threadstate).userChooser.nextUserId());
+
+		long st = System.nanoTime();
+		Status status;
+		if (UpdatePropagation.OPERATIONS.contains(operation)) {
+			status = db.update(operation, key, new HashMap<String, ByteIterator>());
+		} else {
+			status = db.read(operation, key, null, new HashMap<String, ByteIterator>());
+			if (asyncReads)
+				return true;
+		}
+		long en = System.nanoTime();
+
+		measurements.measure(operation, (int) ((en - st) / 1000));
+		if (status != null)
+			measurements.reportStatus(operation, status);
+
+		return true;
+	}
+
+	/**
+	 * The users one client thread loads and queries.
+	 */
+	private static class ThreadState {
+
+		private final DocumentGenerator generator;
+
+		private final UserChooser userChooser;
+
+		ThreadState(DocumentGenerator generator, UserChooser userChooser) {
+			this.generator = generator;
+			this.userChooser = userChooser;
+		}
+	}
+}
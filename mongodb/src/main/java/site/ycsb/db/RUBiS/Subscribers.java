@@ -0,0 +1,128 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.List;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.mongodb.Block;
+
+import site.ycsb.db.RUBiS.AsyncQueryPlan.Callback;
+
+/**
+ * Consumes the publishers of the reactive streams driver into a
+ * {@link Callback}, the way the asynchronous plans chain their queries.
+ *
+ * All documents are requested at once, the driver still fetches them in
+ * batches. A failure of the block cancels the subscription and completes the
+ * callback.
+ *
+ * @author vincent
+ *
+ */
+public class Subscribers {
+
+	/**
+	 * Passes the first published document, or null if there is none, to the
+	 * callback.
+	 */
+	public static <T> void first(Publisher<T> publisher, final Callback<T> callback) {
+		publisher.subscribe(new BlockSubscriber<T>(null, null) {
+			private T first;
+
+			@Override
+			void next(T document) {
+				if (first == null)
+					first = document;
+			}
+
+			@Override
+			void complete(Throwable t) {
+				callback.onResult(t == null ? first : null, t);
+			}
+		});
+	}
+
+	/**
+	 * Applies the block to every published document, then completes the callback.
+	 */
+	public static <T> void forEach(Publisher<T> publisher, Block<? super T> block, Callback<Void> callback) {
+		publisher.subscribe(new BlockSubscriber<T>(block, callback));
+	}
+
+	/**
+	 * Adds all published documents to the list and passes it to the callback.
+	 */
+	public static <T> void into(Publisher<T> publisher, final List<T> target, final Callback<List<T>> callback) {
+		forEach(publisher, new Block<T>() {
+			@Override
+			public void apply(T document) {
+				target.add(document);
+			}
+		}, new Callback<Void>() {
+			@Override
+			public void onResult(Void result, Throwable t) {
+				callback.onResult(t == null ? target : null, t);
+			}
+		});
+	}
+
+	private static class BlockSubscriber<T> implements Subscriber<T> {
+
+		private final Block<? super T> block;
+
+		private final Callback<Void> callback;
+
+		private Subscription subscription;
+
+		private boolean done;
+
+		BlockSubscriber(Block<? super T> block, Callback<Void> callback) {
+			this.block = block;
+			this.callback = callback;
+		}
+
+		@Override
+		public void onSubscribe(Subscription s) {
+			subscription = s;
+			s.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(T document) {
+			if (done)
+				return;
+			try {
+				next(document);
+			} catch (RuntimeException e) {
+				subscription.cancel();
+				onError(e);
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			if (done)
+				return;
+			done = true;
+			complete(t);
+		}
+
+		@Override
+		public void onComplete() {
+			if (done)
+				return;
+			done = true;
+			complete(null);
+		}
+
+		void next(T document) {
+			block.apply(document);
+		}
+
+		void complete(Throwable t) {
+			callback.onResult(null, t);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+import site.ycsb.Status;
+import site.ycsb.measurements.Measurements;
+
+/**
+ * The RUBiS write operations, which apply a change to every generated
+ * collection holding a copy of the changed document.
+ *
+ * Operations, starting from a user like the query plans:
+ * <ul>
+ * <li>UpdateUser: sets a new about of the user, in Users and UsersComments and
+ * in every copy embedded in ItemsUsers, ItemsUsersRegions, BidsUsers,
+ * BidsUsersItems and, through an array filter, ItemsBidsUsers.</li>
+ * <li>PlaceBid: a new bid on an item of the user, inserted into Bids, BidsItems,
+ * BidsUsers and BidsUsersItems and pushed onto the bids of ItemsBids and
+ * ItemsBidsUsers.</li>
+ * <li>AddComment: a new comment on an item of the user, inserted into Comments
+ * and pushed onto the comments of UsersComments and ItemsComments.</li>
+ * </ul>
+ *
+ * Every collection gets one bulkWrite. Next to the latency of an operation, the
+ * documents inserted or modified are measured as &lt;operation&gt;-DOCUMENTS and
+ * the bytes written as &lt;operation&gt;-BYTES: the encoded size of every
+ * inserted document and of the update of every modified document.
+ *
+ * After the writes the user is invalidated in the {@link RubisCache}.
+ *
+ * New bids and comments get an ObjectId. The user and item copies they embed
+ * are generated like at load time, with the same size but, with random payload,
+ * other values than the loaded copies.
+ *
+ * @author vincent
+ *
+ */
+public class UpdatePropagation {
+
+	/**
+	 * All write operations.
+	 */
+	public static final List<String> OPERATIONS = Collections
+			.unmodifiableList(Arrays.asList("UpdateUser", "PlaceBid", "AddComment"));
+
+	private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+	/**
+	 * One write to a collection, with the encoded size of the document it writes.
+	 */
+	static class Write {
+
+		final String collection;
+
+		final WriteModel<Document> model;
+
+		final int bytes;
+
+		Write(String collection, WriteModel<Document> model, Document written) {
+			this.collection = collection;
+			this.model = model;
+			this.bytes = new RawBsonDocument(written, DOCUMENT_CODEC).getByteBuffer().remaining();
+		}
+	}
+
+	/**
+	 * Returns whether any write operation has a proportion in the transaction mix.
+	 */
+	public static boolean inMix(Properties props) {
+		for (String operation : OPERATIONS)
+			if (Double.parseDouble(props.getProperty(operation.toLowerCase() + RubisWorkload.PROPORTION_PROPERTY_SUFFIX,
+					"0")) > 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the fields the writes filter on, other than _id, per collection.
+	 */
+	public static Map<String, List<String>> indexes() {
+		Map<String, List<String>> indexes = new LinkedHashMap<String, List<String>>();
+		indexes.put("ItemsUsers", Arrays.asList("users._id"));
+		indexes.put("ItemsUsersRegions", Arrays.asList("users._id"));
+		indexes.put("BidsUsers", Arrays.asList("users._id"));
+		indexes.put("BidsUsersItems", Arrays.asList("users._id"));
+		indexes.put("ItemsBidsUsers", Arrays.asList("bids.users._id"));
+		return indexes;
+	}
+
+	/**
+	 * Runs a write operation for the given user.
+	 *
+	 * @return NOT_FOUND if the user has no item to write to or no copy was
+	 *         modified, OK otherwise.
+	 */
+	public static Status execute(MongoDatabase database, String operation, int userId) {
+		List<Write> writes = fanOut(operation, userId);
+		if (writes == null)
+			return Status.NOT_FOUND;
+
+		long documents = 0;
+		long bytes = 0;
+		boolean acknowledged = true;
+		for (Write write : writes) {
+			List<WriteModel<Document>> models = new ArrayList<WriteModel<Document>>();
+			models.add(write.model);
+
+			BulkWriteResult result = database.getCollection(write.collection).bulkWrite(models);
+			if (!result.wasAcknowledged()) {
+				acknowledged = false;
+				continue;
+			}
+
+			int touched = result.getInsertedCount() + result.getModifiedCount();
+			documents += touched;
+			bytes += (long) touched * write.bytes;
+		}
+		RubisCache.invalidateUser(userId);
+
+		if (!acknowledged)
+			return Status.OK;
+
+		Measurements measurements = Measurements.getMeasurements();
+		measurements.measure(operation + "-DOCUMENTS", (int) Math.min(documents, Integer.MAX_VALUE));
+		measurements.measure(operation + "-BYTES", (int) Math.min(bytes, Integer.MAX_VALUE));
+
+		return documents > 0 ? Status.OK : Status.NOT_FOUND;
+	}
+
+	/**
+	 * Returns the writes of an operation to the generated collections, null if the
+	 * user has no item to write to.
+	 */
+	static List<Write> fanOut(String operation, int userId) {
+		if ("UpdateUser".equals(operation))
+			return updateUser(userId);
+		if ("PlaceBid".equals(operation))
+			return placeBid(userId);
+		if ("AddComment".equals(operation))
+			return addComment(userId);
+
+		throw new IllegalArgumentException("Unknown write operation: " + operation);
+	}
+
+	private static List<Write> updateUser(int userId) {
+		String about = PayloadSource.alphanumeric(ThreadLocalRandom.current().nextLong(), 70);
+		List<Write> writes = new ArrayList<Write>();
+
+		for (String collection : new String[] { "Users", "UsersComments" })
+			if (DataModel.generates(collection)) {
+				Document update = new Document("$set", new Document("about", about));
+				writes.add(new Write(collection, new UpdateOneModel<Document>(new Document("_id", userId), update),
+						update));
+			}
+
+		for (String collection : new String[] { "ItemsUsers", "ItemsUsersRegions", "BidsUsers", "BidsUsersItems" })
+			if (DataModel.generates(collection)) {
+				Document update = new Document("$set", new Document("users.about", about));
+				writes.add(new Write(collection,
+						new UpdateManyModel<Document>(new Document("users._id", userId), update), update));
+			}
+
+		if (DataModel.generates("ItemsBidsUsers")) {
+			Document update = new Document("$set", new Document("bids.$[bid].users.about", about));
+			UpdateOptions options = new UpdateOptions()
+					.arrayFilters(Arrays.asList(new Document("bid.users._id", userId)));
+			writes.add(new Write("ItemsBidsUsers",
+					new UpdateManyModel<Document>(new Document("bids.users._id", userId), update, options), update));
+		}
+
+		return writes;
+	}
+
+	private static List<Write> placeBid(int userId) {
+		int itemId = randomItem(userId);
+		if (itemId < 0)
+			return null;
+
+		Document bid = new Document("_id", new ObjectId());
+		bid.put("price", PayloadSource.alphanumeric(ThreadLocalRandom.current().nextLong(), 5));
+		bid.put("date", PayloadSource.alphanumeric(ThreadLocalRandom.current().nextLong(), 30));
+		bid.put("id_user", userId);
+		bid.put("id_item", itemId);
+
+		List<Write> writes = new ArrayList<Write>();
+
+		if (DataModel.generates("Bids"))
+			writes.add(insert("Bids", bid));
+		if (DataModel.generates("BidsItems"))
+			writes.add(insert("BidsItems", new Document(bid).append("items", DataModel.Item.generateDocument(itemId))));
+		if (DataModel.generates("BidsUsers"))
+			writes.add(insert("BidsUsers", new Document(bid).append("users", DataModel.User.generateDocument(userId))));
+		if (DataModel.generates("BidsUsersItems"))
+			writes.add(insert("BidsUsersItems",
+					new Document(bid).append("users", DataModel.User.generateDocumentUserItems(userId))));
+
+		if (DataModel.generates("ItemsBids"))
+			writes.add(push("ItemsBids", itemId, "bids", bid));
+		if (DataModel.generates("ItemsBidsUsers"))
+			writes.add(push("ItemsBidsUsers", itemId, "bids",
+					new Document(bid).append("users", DataModel.User.generateDocument(userId))));
+
+		return writes;
+	}
+
+	private static List<Write> addComment(int userId) {
+		int itemId = randomItem(userId);
+		if (itemId < 0)
+			return null;
+
+		Document comment = new Document("_id", new ObjectId());
+		comment.put("commentTitle", PayloadSource.alphanumeric(ThreadLocalRandom.current().nextLong(), 20));
+		comment.put("commentText", PayloadSource.alphanumeric(ThreadLocalRandom.current().nextLong(), 70));
+		comment.put("date", PayloadSource.alphanumeric(ThreadLocalRandom.current().nextLong(), 20));
+		comment.put("id_user", userId);
+		comment.put("id_item", itemId);
+
+		List<Write> writes = new ArrayList<Write>();
+
+		if (DataModel.generates("Comments"))
+			writes.add(insert("Comments", comment));
+		if (DataModel.generates("UsersComments"))
+			writes.add(push("UsersComments", userId, "comments", comment));
+		if (DataModel.generates("ItemsComments"))
+			writes.add(push("ItemsComments", itemId, "comments", comment));
+
+		return writes;
+	}
+
+	/**
+	 * Returns a random item of the user, -1 if the user has none.
+	 */
+	private static int randomItem(int userId) {
+		IdRange itemIds = DataModel.User.getItemIds(userId);
+		if (itemIds.size() == 0)
+			return -1;
+
+		return itemIds.get(ThreadLocalRandom.current().nextInt(itemIds.size()));
+	}
+
+	private static Write insert(String collection, Document document) {
+		return new Write(collection, new InsertOneModel<Document>(document), document);
+	}
+
+	private static Write push(String collection, int id, String array, Document element) {
+		Document update = new Document("$push", new Document(array, element));
+		return new Write(collection, new UpdateOneModel<Document>(new Document("_id", id), update), update);
+	}
+}
@@ -0,0 +1,77 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.Properties;
+
+import site.ycsb.Client;
+import site.ycsb.generator.CounterGenerator;
+import site.ycsb.generator.HotspotIntegerGenerator;
+import site.ycsb.generator.NumberGenerator;
+import site.ycsb.generator.ScrambledZipfianGenerator;
+import site.ycsb.generator.SkewedLatestGenerator;
+import site.ycsb.generator.UniformLongGenerator;
+import site.ycsb.workloads.CoreWorkload;
+
+/**
+ * Chooses the users the RUBiS query plans start from. The items, bids and
+ * comments a plan reads follow from the user through the id mapping of the
+ * {@link DataModel}, so they share the user's skew.
+ *
+ * The distribution over the loaded users [0, recordcount) is configured with the
+ * CoreWorkload properties requestdistribution (uniform, zipfian, hotspot, latest
+ * or sequential), hotspotdatafraction and hotspotopnfraction.
+ *
+ * Every client thread holds its own chooser, there is no shared counter.
+ *
+ * @author vincent
+ *
+ */
+public class UserChooser {
+
+	private final NumberGenerator generator;
+
+	/** The number of users, sequential choosers wrap around. */
+	private final long userCount;
+
+	UserChooser(NumberGenerator generator, long userCount) {
+		this.generator = generator;
+		this.userCount = userCount;
+	}
+
+	/**
+	 * Creates the chooser of one client thread.
+	 */
+	public static UserChooser fromProperties(Properties p, int threadId, int threadCount) {
+		long userCount = Math.max(
+				Long.parseLong(p.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT)), 1);
+		String distribution = p.getProperty(CoreWorkload.REQUEST_DISTRIBUTION_PROPERTY,
+				CoreWorkload.REQUEST_DISTRIBUTION_PROPERTY_DEFAULT);
+
+		NumberGenerator generator;
+		if ("uniform".equals(distribution)) {
+			generator = new UniformLongGenerator(0, userCount - 1);
+		} else if ("zipfian".equals(distribution)) {
+			generator = new ScrambledZipfianGenerator(0, userCount - 1);
+		} else if ("hotspot".equals(distribution)) {
+			double hotsetFraction = Double.parseDouble(
+					p.getProperty(CoreWorkload.HOTSPOT_DATA_FRACTION, CoreWorkload.HOTSPOT_DATA_FRACTION_DEFAULT));
+			double hotOpnFraction = Double.parseDouble(
+					p.getProperty(CoreWorkload.HOTSPOT_OPN_FRACTION, CoreWorkload.HOTSPOT_OPN_FRACTION_DEFAULT));
+			generator = new HotspotIntegerGenerator(0, userCount - 1, hotsetFraction, hotOpnFraction);
+		} else if ("latest".equals(distribution)) {
+			// The last loaded user is the latest, nothing is inserted during the run.
+			generator = new SkewedLatestGenerator(new CounterGenerator(userCount));
+		} else if ("sequential".equals(distribution)) {
+			// Every thread starts at its own share of the users.
+			generator = new CounterGenerator(userCount * threadId / Math.max(threadCount, 1));
+		} else {
+			throw new IllegalArgumentException(
+					"Unknown " + CoreWorkload.REQUEST_DISTRIBUTION_PROPERTY + ": " + distribution);
+		}
+
+		return new UserChooser(generator, userCount);
+	}
+
+	public int nextUserId() {
+		return (int) (generator.nextValue().longValue() % userCount);
+	}
+}
@@ -0,0 +1,331 @@
+package site.ycsb.db.RUBiS;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import com.mongodb.event.ConnectionPoolListenerAdapter;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+
+import site.ycsb.measurements.Measurements;
+
+/**
+ * Counts the wire traffic of every operation: the bytes of the commands it
+ * sends and of their replies, the number of commands, the time the driver
+ * waited for the replies, and the time it waited for a pooled connection.
+ *
+ * Registered as command listener and, with {@link #poolListener()}, as
+ * connection pool listener of the blocking MongoClients, which call them on the
+ * thread that runs the command. Every client thread counts into its own
+ * {@link Tally} between {@link #enter(String)} and {@link #exit()}, without locks
+ * or shared writes. The parallel cursors of the normalized joins count into a
+ * {@link #fork()} of the tally of their operation, which is added to it with
+ * {@link #join(Tally)}.
+ *
+ * Per operation the tallies are measured next to its latencies, so their
+ * percentiles are exported with the other histograms:
+ * <ul>
+ * <li>&lt;operation&gt;-REQUEST-BYTES: the BSON bytes of the commands, only with
+ * rubis.wirestats.requestbytes. The driver hands the commands to the listener
+ * as documents, sizing them means encoding them again on the client thread,
+ * which adds to the latency that is measured.</li>
+ * <li>&lt;operation&gt;-REPLY-BYTES: the BSON bytes of the replies.</li>
+ * <li>&lt;operation&gt;-COMMANDS: the commands, i.e. round trips, including
+ * getMores.</li>
+ * <li>&lt;operation&gt;-COMMAND-US: the microseconds from sending the commands
+ * to their replies, the time spent on the server and the network. The rest of
+ * the latency of the operation is spent in the client.</li>
+ * <li>&lt;operation&gt;-POOL-WAIT-US: the microseconds the commands waited in
+ * the wait queue of the connection pool for a free connection, apart from the
+ * command time. It grows with the client threads per pooled connection, while
+ * the command time grows with the load of the server.</li>
+ * </ul>
+ * The totals per operation are printed by {@link #report()}. The
+ * {@link PlanComparison} reads the tally of each profiled plan from
+ * {@link #exit()}.
+ *
+ * @author vincent
+ *
+ */
+public class WireStats implements CommandListener {
+
+	public static final String PROPERTY = "rubis.wirestats";
+
+	public static final String REQUEST_BYTES_PROPERTY = "rubis.wirestats.requestbytes";
+
+	private static final ThreadLocal<Tally> CURRENT = new ThreadLocal<Tally>();
+
+	private final Map<String, Totals> totals = new ConcurrentHashMap<String, Totals>();
+
+	private final Measurements measurements = Measurements.getMeasurements();
+
+	/** If the commands are encoded to count their bytes. */
+	private final boolean requestBytes;
+
+	/**
+	 * The traffic of one operation, written by one thread at a time.
+	 */
+	public static final class Tally {
+
+		private String operation;
+
+		private long requestBytes;
+
+		private long replyBytes;
+
+		private long commands;
+
+		private long commandNanos;
+
+		private long poolNanos;
+
+		private long poolWaitStart;
+
+		private final BasicOutputBuffer buffer = new BasicOutputBuffer();
+
+		private final BsonDocumentCodec codec = new BsonDocumentCodec();
+
+		private void reset(String operationName) {
+			operation = operationName;
+			requestBytes = 0;
+			replyBytes = 0;
+			commands = 0;
+			commandNanos = 0;
+			poolNanos = 0;
+			poolWaitStart = 0;
+		}
+
+		private void add(Tally other) {
+			requestBytes += other.requestBytes;
+			replyBytes += other.replyBytes;
+			commands += other.commands;
+			commandNanos += other.commandNanos;
+			poolNanos += other.poolNanos;
+		}
+
+		long getReplyBytes() {
+			return replyBytes;
+		}
+
+		long getCommands() {
+			return commands;
+		}
+
+		/**
+		 * Returns the encoded size of the document, the replies are usually raw.
+		 */
+		private long size(BsonDocument document) {
+			if (document instanceof RawBsonDocument)
+				return ((RawBsonDocument) document).getByteBuffer().remaining();
+
+			buffer.truncateToPosition(0);
+			codec.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+			return buffer.getSize();
+		}
+	}
+
+	/**
+	 * The traffic of all executions of one operation.
+	 */
+	private static final class Totals {
+
+		final LongAdder operations = new LongAdder();
+
+		final LongAdder requestBytes = new LongAdder();
+
+		final LongAdder replyBytes = new LongAdder();
+
+		final LongAdder commands = new LongAdder();
+
+		final LongAdder commandNanos = new LongAdder();
+
+		final LongAdder poolNanos = new LongAdder();
+	}
+
+	/**
+	 * @param requestBytes if the commands are encoded to count their bytes.
+	 */
+	public WireStats(boolean requestBytes) {
+		this.requestBytes = requestBytes;
+	}
+
+	/**
+	 * Counts the commands of the calling thread for the operation until
+	 * {@link #exit()}.
+	 */
+	public void enter(String operationName) {
+		Tally tally = CURRENT.get();
+		if (tally == null) {
+			tally = new Tally();
+			CURRENT.set(tally);
+		}
+		tally.reset(operationName);
+	}
+
+	/**
+	 * Measures the traffic of the operation of the calling thread and returns its
+	 * tally, valid until the thread enters its next operation, or null if no
+	 * operation was entered.
+	 */
+	public Tally exit() {
+		Tally tally = CURRENT.get();
+		if (tally == null || tally.operation == null)
+			return null;
+
+		String operationName = tally.operation;
+		tally.operation = null;
+
+		if (requestBytes)
+			measurements.measure(operationName + "-REQUEST-BYTES", clamp(tally.requestBytes));
+		measurements.measure(operationName + "-REPLY-BYTES", clamp(tally.replyBytes));
+		measurements.measure(operationName + "-COMMANDS", clamp(tally.commands));
+		measurements.measure(operationName + "-COMMAND-US", clamp(tally.commandNanos / 1000));
+		measurements.measure(operationName + "-POOL-WAIT-US", clamp(tally.poolNanos / 1000));
+
+		Totals total = totals.get(operationName);
+		if (total == null) {
+			Totals created = new Totals();
+			total = totals.putIfAbsent(operationName, created);
+			if (total == null)
+				total = created;
+		}
+		total.operations.increment();
+		total.requestBytes.add(tally.requestBytes);
+		total.replyBytes.add(tally.replyBytes);
+		total.commands.add(tally.commands);
+		total.commandNanos.add(tally.commandNanos);
+		total.poolNanos.add(tally.poolNanos);
+		return tally;
+	}
+
+	/**
+	 * Returns a new tally for the operation of the calling thread, for commands
+	 * it hands to another thread, or null if it counts none.
+	 */
+	public static Tally fork() {
+		Tally tally = CURRENT.get();
+		if (tally == null || tally.operation == null)
+			return null;
+
+		Tally forked = new Tally();
+		forked.reset(tally.operation);
+		return forked;
+	}
+
+	/**
+	 * Counts the commands of the calling thread into the forked tally, until it is
+	 * attached again with null.
+	 */
+	public static void attach(Tally forked) {
+		if (forked == null)
+			CURRENT.remove();
+		else
+			CURRENT.set(forked);
+	}
+
+	/**
+	 * Adds a forked tally, whose thread is done, to the tally of the calling
+	 * thread.
+	 */
+	public static void join(Tally forked) {
+		Tally tally = CURRENT.get();
+		if (forked != null && tally != null && tally.operation != null)
+			tally.add(forked);
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+		Tally tally = CURRENT.get();
+		if (tally == null || tally.operation == null)
+			return;
+
+		if (requestBytes)
+			tally.requestBytes += tally.size(event.getCommand());
+		tally.commands++;
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		Tally tally = CURRENT.get();
+		if (tally == null || tally.operation == null)
+			return;
+
+		tally.replyBytes += tally.size(event.getResponse());
+		tally.commandNanos += event.getElapsedTime(TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		Tally tally = CURRENT.get();
+		if (tally == null || tally.operation == null)
+			return;
+
+		tally.commandNanos += event.getElapsedTime(TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the listener that times the waits of the commands for a pooled
+	 * connection. The pool calls it on the waiting thread, the opening of a new
+	 * connection is not included.
+	 */
+	public ConnectionPoolListener poolListener() {
+		return new ConnectionPoolListenerAdapter() {
+			@Override
+			public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+				Tally tally = CURRENT.get();
+				if (tally != null && tally.operation != null)
+					tally.poolWaitStart = System.nanoTime();
+			}
+
+			@Override
+			public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+				Tally tally = CURRENT.get();
+				if (tally != null && tally.operation != null && tally.poolWaitStart != 0) {
+					tally.poolNanos += System.nanoTime() - tally.poolWaitStart;
+					tally.poolWaitStart = 0;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the traffic per operation, null if no operation was counted.
+	 */
+	public String report() {
+		if (totals.isEmpty())
+			return null;
+
+		StringBuilder report = new StringBuilder("Wire traffic");
+		for (Map.Entry<String, Totals> entry : new TreeMap<String, Totals>(totals).entrySet()) {
+			Totals total = entry.getValue();
+			long operations = Math.max(total.operations.sum(), 1);
+			report.append(String.format("%n  %s: %d operations, ", entry.getKey(), total.operations.sum()));
+			if (requestBytes)
+				report.append(String.format("%d request bytes, ", total.requestBytes.sum()));
+			report.append(String.format("%d reply bytes, %d commands, %d command ms, %d pool wait ms "
+					+ "(%.1f reply bytes/op, %.2f commands/op)", total.replyBytes.sum(), total.commands.sum(),
+					total.commandNanos.sum() / 1000000, total.poolNanos.sum() / 1000000,
+					(double) total.replyBytes.sum() / operations, (double) total.commands.sum() / operations));
+		}
+		return report.toString();
+	}
+
+	private static int clamp(long value) {
+		return (int) Math.min(value, Integer.MAX_VALUE);
+	}
+}
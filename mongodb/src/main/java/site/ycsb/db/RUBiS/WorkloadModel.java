@@ -1,14 +1,14 @@
 package site.ycsb.db.RUBiS;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 import org.bson.Document;
 
-import com.mongodb.Block;
 import com.mongodb.client.AggregateIterable;
-import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Accumulators;
@@ -17,6 +17,7 @@ import com.mongodb.client.model.Filters;
 
 import site.ycsb.db.RUBiS.DataModel.DocumentGenerator;
 import site.ycsb.db.RUBiS.DataModel.User;
+import site.ycsb.db.RUBiS.JoinExecutor.Hop;
 
 /**
  * Defines several query plans that can be tested.
@@ -53,29 +54,23 @@ import site.ycsb.db.RUBiS.DataModel.User;
 public class WorkloadModel {
 	
 	/**
-	 * Workload generator factory.
+	 * Workload generator of one client thread.
 	 * 
-	 * Starts at a user with record ID = 1.
+	 * Starts every query at a user picked by its own {@link UserChooser}.
 	 * 
 	 * @author vincent
 	 *
 	 */
 	public static class WorkloadGenerator {
 
-		private static WorkloadGenerator instance = null;
+		private final UserChooser userChooser;
 
-		private int recordId = 0;
-
-		public static WorkloadGenerator getInstance() {
-			if (instance == null)
-				instance = new WorkloadGenerator();
-
-			return instance;
+		public WorkloadGenerator(UserChooser userChooser) {
+			this.userChooser = userChooser;
 		}
 		
 		public Document executeQuery(MongoDatabase db) {
-			int userId = recordId;
-			recordId++;
+			int userId = userChooser.nextUserId();
 			
 			Document result;
 			
@@ -92,30 +87,215 @@ public class WorkloadModel {
 			result = getItemsBids(db, userId);
 //			
 //			System.out.println("----");
-//			result = getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getBidIds(userId).get(0));
-//			result = getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getBidIds(userId).get(0));
+//			result = getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getFirstBidId(userId));
+//			result = getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getFirstBidId(userId));
 //			
 //			result = getNormalizedQuery(db, "Users", "Regions", "id_region", "_id", userId);
 //			result = getNormalizedQuery(db, "Users", "Items", "_id", "id_seller", userId);
 //			result = getNormalizedQuery(db, "Users", "Comments", "_id", "id_user", userId);
 //			
-//			result = getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).get(0));
-//			result = getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).get(0));
-//			result = getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).get(0));
+//			result = getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).first());
+//			result = getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).first());
+//			result = getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).first());
 //			
 //			result = getNormalizedQuery(db, "Regions", "Users", "_id", "id_region", User.getRegionId(userId));
 //			
 //			result = getNormalizedQueryItemsCommentsUser(db, userId);
 //			result = getNormalizedQueryUsersBidsItemsUser(db, userId);
 //			result = getNormalizedQueryUsersBidsItems(db, userId);
-			
-			System.out.println(result);
 
 			
 			return result;			
 		}
 	}
 	
+	/**
+	 * Returns the query plans of this model per operation name, see
+	 * {@link QueryPlans}.
+	 */
+	public static Map<String, QueryPlan> plans() {
+		Map<String, QueryPlan> plans = new LinkedHashMap<String, QueryPlan>();
+
+		plans.put("BidsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getBidsUsers(database, userId);
+			}
+		});
+		plans.put("BidsItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getBidsItems(database, userId);
+			}
+		});
+		plans.put("UsersRegions", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersRegions(database, userId);
+			}
+		});
+		plans.put("UsersItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersItems(database, userId);
+			}
+		});
+		plans.put("UsersBidsItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersBidsItems(database, userId);
+			}
+		});
+		plans.put("UsersBidsItemsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersBidsItemsUsers(database, userId);
+			}
+		});
+		plans.put("UsersComments", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersComments(database, userId);
+			}
+		});
+		plans.put("ItemsComments", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsComments(database, userId);
+			}
+		});
+		plans.put("ItemsCommentsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsCommentsUsers(database, userId);
+			}
+		});
+		plans.put("ItemsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsUsers(database, userId);
+			}
+		});
+		plans.put("ItemsBids", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsBids(database, userId);
+			}
+		});
+
+		return plans;
+	}
+
+	/**
+	 * Returns the fields the plans of this model filter on, other than _id, per
+	 * collection, see {@link IndexProvisioner}.
+	 */
+	public static Map<String, List<String>> indexes() {
+		Map<String, List<String>> indexes = new LinkedHashMap<String, List<String>>();
+		indexes.put("ItemsUsersRegions", Arrays.asList("users._id"));
+		indexes.put("BidsItems", Arrays.asList("id_user", "items._id"));
+		indexes.put("ItemsComments", Arrays.asList("comments.id_user"));
+
+		return indexes;
+	}
+	
+	/**
+	 * Returns the client-side joins over the normalized collections per operation
+	 * name, see {@link QueryPlans}.
+	 */
+	public static Map<String, QueryPlan> normalizedPlans() {
+		Map<String, QueryPlan> plans = new LinkedHashMap<String, QueryPlan>();
+
+		plans.put("BidsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Bids", "Users", "id_user", "_id", User.getFirstBidId(userId));
+			}
+		});
+		plans.put("BidsItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Bids", "Items", "id_item", "_id", User.getFirstBidId(userId));
+			}
+		});
+		plans.put("UsersRegions", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Users", "Regions", "id_region", "_id", userId);
+			}
+		});
+		plans.put("UsersItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Users", "Items", "_id", "id_seller", userId);
+			}
+		});
+		plans.put("UsersBidsItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQueryUsersBidsItems(database, userId);
+			}
+		});
+		plans.put("UsersBidsItemsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQueryUsersBidsItemsUser(database, userId);
+			}
+		});
+		plans.put("UsersComments", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Users", "Comments", "_id", "id_user", userId);
+			}
+		});
+		plans.put("ItemsComments", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).first());
+			}
+		});
+		plans.put("ItemsCommentsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQueryItemsCommentsUser(database, userId);
+			}
+		});
+		plans.put("ItemsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).first());
+			}
+		});
+		plans.put("ItemsBids", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).first());
+			}
+		});
+		plans.put("RegionsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getNormalizedQuery(database, "Regions", "Users", "_id", "id_region", User.getRegionId(userId));
+			}
+		});
+
+		return plans;
+	}
+
+	/**
+	 * Returns the join fields of the normalized plans, other than _id, per
+	 * collection, see {@link IndexProvisioner}.
+	 */
+	public static Map<String, List<String>> normalizedIndexes() {
+		Map<String, List<String>> indexes = new LinkedHashMap<String, List<String>>();
+		indexes.put("Users", Arrays.asList("id_region"));
+		indexes.put("Items", Arrays.asList("id_seller"));
+		indexes.put("Bids", Arrays.asList("id_user", "id_item"));
+		indexes.put("Comments", Arrays.asList("id_user", "id_item"));
+
+		return indexes;
+	}
+	
 	/**
 	 * ========================================
 	 *  QUERY PLAN RECOMMENDATIONS 
@@ -131,31 +311,30 @@ public class WorkloadModel {
 	 * @return
 	 */
 	public static Document getBidsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("BidsItems");
-		Document query = new Document("_id", User.getBidIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("BidsItems");
+		Document query = context.filter("_id", User.getFirstBidId(userId));
 		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.BID);
 		
 //		System.out.println(queryResult);
 		
-		collection = database.getCollection("ItemsUsersRegions");
-		query = new Document("users._id", queryResult.get("id_user"));
+		collection = context.collection("ItemsUsersRegions");
+		query = context.filter("users._id", ResultConsumer.value(queryResult, "id_user"));
 		
 		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
+		ResultConsumer.drain(collection, query, PlanProjection.EMBEDDED_USER);
 		
 		return queryResult;
 	}
 	
 	// OK
 	public static Document getBidsItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("BidsItems");
-		Document query = new Document("_id", User.getBidIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("BidsItems");
+		Document query = context.filter("_id", User.getFirstBidId(userId));
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.BID_ITEM);
 		
 		return queryResult;
 	}
@@ -166,12 +345,11 @@ public class WorkloadModel {
 	 * @return
 	 */
 	public static Document getUsersRegions(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("users._id", userId);
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("users._id", userId);
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 		return queryResult;
 	}
@@ -182,12 +360,11 @@ public class WorkloadModel {
 	 * @return
 	 */
 	public static Document getUsersItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("users._id", userId);
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("users._id", userId);
 		
-		collection.find(query).forEach(printBlock);
-		
-		return query;
+		return ResultConsumer.result(collection, query, PlanProjection.ITEM);
 	}
 	
 	/**
@@ -198,19 +375,19 @@ public class WorkloadModel {
 	 * @return
 	 */
 	public static Document getUsersBidsItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("users._id", userId);
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("users._id", userId);
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 //		System.out.println(queryResult);
 		
-		Object id = ((Document) queryResult.get("users")).get("_id");
-		collection = database.getCollection("BidsItems");
-		query = new Document("id_user", id);
+		Object id = ResultConsumer.value(queryResult, "users", "_id");
+		collection = context.collection("BidsItems");
+		query = context.filter("id_user", id);
 		
 		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
+		ResultConsumer.drain(collection, query, PlanProjection.BID_ITEM);
 		
 		return queryResult;
 	}
@@ -221,27 +398,25 @@ public class WorkloadModel {
 	 * queryMapping={0=[Query [users]], 1=[Query [bids], Query [items]], 2=[Query [users]]}, secondaryIndex={0=[ users-820 ]}]
 	 */
 	public static Document getUsersBidsItemsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("users._id", userId);
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("users._id", userId);
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 //		System.out.println(queryResult);
 		
-		Object id = ((Document) queryResult.get("users")).get("_id");
-		collection = database.getCollection("BidsItems");
-		query = new Document("id_user", id);
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
+		Object id = ResultConsumer.value(queryResult, "users", "_id");
+		collection = context.collection("BidsItems");
+		query = context.filter("id_user", id);
+		queryResult = ResultConsumer.first(collection, query, PlanProjection.BID_ITEM);
 		
 //		System.out.println(queryResult);
 		// OK -> Only 1 seller_id anyway (checked)
 		
-		id = ((Document) queryResult.get("items")).get("id_seller");
-		collection = database.getCollection("ItemsUsersRegions");
-		query = new Document("users._id", id);
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
+		id = ResultConsumer.value(queryResult, "items", "id_seller");
+		collection = context.collection("ItemsUsersRegions");
+		query = context.filter("users._id", id);
+		queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 //		System.out.println(queryResult);
 		
@@ -255,19 +430,19 @@ public class WorkloadModel {
 	 * 
 	 */
 	public static Document getUsersComments(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("users._id", userId);
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("users._id", userId);
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 //		System.out.println(queryResult);
 		
-		Object id = ((Document) queryResult.get("users")).get("_id");
-		collection = database.getCollection("ItemsComments");
-		query = new Document("comments.id_user", id);
+		Object id = ResultConsumer.value(queryResult, "users", "_id");
+		collection = context.collection("ItemsComments");
+		query = context.filter("comments.id_user", id);
 		
 		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
+		ResultConsumer.drain(collection, query, PlanProjection.ITEM_MATCHED_COMMENT);
 		
 //		System.out.println(queryResult);
 		
@@ -276,11 +451,11 @@ public class WorkloadModel {
 	
 	// OK [Items|Comments]
 	public static Document getItemsComments(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsComments");
-		Document query = new Document("_id", User.getItemIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsComments");
+		Document query = context.filter("_id", User.getItemIds(userId).first());
 		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_COMMENTS);
 		
 		return queryResult;
 	}
@@ -292,32 +467,29 @@ public class WorkloadModel {
 	 * @return
 	 */
 	public static Document getItemsCommentsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document>  collection = database.getCollection("ItemsComments");
-		Document query = new Document("_id", User.getCommentIds(userId).get(0));
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document>  collection = context.collection("ItemsComments");
+		Document query = context.filter("_id", User.getFirstCommentId(userId));
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_FIRST_COMMENT);
 		
 //		System.out.println(queryResult);
 		
 		// OK Only 1 probably. Item - 2 comments - User has more.
-		Object id = ((ArrayList<Document>) queryResult.get("comments")).get(0).get("id_user");
-		collection = database.getCollection("ItemsUsersRegions");
-		query = new Document("users._id", id);
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-		System.out.println(queryResult);
+		Object id = ResultConsumer.value(queryResult, "comments", "id_user");
+		collection = context.collection("ItemsUsersRegions");
+		query = context.filter("users._id", id);
+		queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 		return queryResult;
 	}
 	
 	// OK [Items|Users|Regions]
 	public static Document getItemsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("_id", User.getItemIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("_id", User.getItemIds(userId).first());
 		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_SELLER);
 		
 		return queryResult;
 	}
@@ -326,16 +498,15 @@ public class WorkloadModel {
 	 * OK
 	 */
 	public static Document getItemsBids(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("BidsItems");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("BidsItems");
 		
-		int itemId = User.getItemIds(userId).get(0);
-		Document query = new Document("items._id", itemId);
+		int itemId = User.getItemIds(userId).first();
+		Document query = context.filter("items._id", itemId);
 		
 //		System.out.println(query);
 		
-		collection.find(query).forEach(printBlock);
-		
-		return query;
+		return ResultConsumer.result(collection, query, PlanProjection.BID);
 	}
 	
 	/**
@@ -360,41 +531,31 @@ public class WorkloadModel {
 	 * ===============================
 	 */
 	private static void getNormalizedQueries(MongoDatabase db, int userId) {
-		getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getBidIds(userId).get(0));
-		getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getBidIds(userId).get(0));
+		getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getFirstBidId(userId));
+		getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getFirstBidId(userId));
 		
 		getNormalizedQuery(db, "Users", "Regions", "id_region", "_id", userId);
 		getNormalizedQuery(db, "Users", "Items", "_id", "id_seller", userId);
 		getNormalizedQuery(db, "Users", "Comments", "_id", "id_user", userId);
 		
-		getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).get(0));
-		getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).get(0));
-		getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).get(0));
+		getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).first());
+		getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).first());
+		getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).first());
 		
 		getNormalizedQuery(db, "Regions", "Users", "_id", "id_region", User.getRegionId(userId));
 		
 		// Two longer cases.
-		System.out.println(getNormalizedQueryItemsCommentsUser(db, userId));
-		System.out.println(getNormalizedQueryUsersBidsItemsUser(db, userId));
-		System.out.println(getNormalizedQueryUsersBidsItems(db, userId));
+		getNormalizedQueryItemsCommentsUser(db, userId);
+		getNormalizedQueryUsersBidsItemsUser(db, userId);
+		getNormalizedQueryUsersBidsItems(db, userId);
 	}
 
+	/**
+	 * CollectionOne->CollectionTwo, all documents of collectionTwo whose foreignKey
+	 * matches the localKey of the document with the given id.
+	 */
 	private static Document getNormalizedQuery(MongoDatabase db, String collectionOne, String collectionTwo, String localKey, String foreignKey, int id) {
-		MongoCollection<Document> collection = db.getCollection(collectionOne);
-		Document query = new Document("_id", id);
-		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		collection = db.getCollection(collectionTwo);
-		query = new Document(foreignKey, queryResult.get(localKey));
-		
-		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
-		
-		return queryResult;
+		return JoinExecutor.join(db, collectionOne, id, new Hop(collectionTwo, localKey, foreignKey));
 	}
 
 	
@@ -402,28 +563,9 @@ public class WorkloadModel {
 	 * Items->Comments->User
 	 */
 	private static Document getNormalizedQueryItemsCommentsUser(MongoDatabase db, int userId) {
-		MongoCollection<Document>  collection = db.getCollection("Items");
-		Document query = new Document("_id", User.getItemIds(userId).get(0));
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		collection = db.getCollection("Comments");
-		query = new Document("id_item", queryResult.get("_id"));
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		collection = db.getCollection("Users");
-		query = new Document("_id", queryResult.get("id_user"));
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		return queryResult;
+		return JoinExecutor.join(db, "Items", User.getItemIds(userId).first(),
+				new Hop("Comments", "_id", "id_item"),
+				new Hop("Users", "id_user", "_id"));
 	}
 	
 	/**
@@ -439,29 +581,9 @@ public class WorkloadModel {
 	 * @return
 	 */
 	private static Document getNormalizedQueryUsersBidsItems(MongoDatabase db, int userId) {
-		MongoCollection<Document>  collection = db.getCollection("Users");
-		Document query = new Document("_id", userId);
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		collection = db.getCollection("Bids");
-		query = new Document("id_user", queryResult.get("_id"));
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		//TODO query all?
-		collection = db.getCollection("Items");
-		query = new Document("_id", queryResult.get("id_item"));
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		return queryResult;
+		return JoinExecutor.join(db, "Users", userId,
+				new Hop("Bids", "_id", "id_user"),
+				new Hop("Items", "id_item", "_id"));
 	}
 	
 	/**
@@ -478,45 +600,11 @@ public class WorkloadModel {
 	 * @return
 	 */
 	private static Document getNormalizedQueryUsersBidsItemsUser(MongoDatabase db, int userId) {
-		MongoCollection<Document>  collection = db.getCollection("Users");
-		Document query = new Document("_id", userId);
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		collection = db.getCollection("Bids");
-		query = new Document("id_user", queryResult.get("_id"));
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		//TODO query all?
-		collection = db.getCollection("Items");
-		query = new Document("_id", queryResult.get("id_item"));
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		collection = db.getCollection("Users");
-		query = new Document("_id", queryResult.get("id_seller"));
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-//		System.out.println(queryResult);
-		
-		
-		return queryResult;
+		return JoinExecutor.join(db, "Users", userId,
+				new Hop("Bids", "_id", "id_user"),
+				new Hop("Items", "id_item", "_id"),
+				new Hop("Users", "id_seller", "_id"));
 	}
 	
 	
-	public static Block<Document> printBlock = new Block<Document>() {
-	       @Override
-	       public void apply(final Document document) {
-//	           System.out.println(document.toJson());
-	       }
-	};
-	
 }
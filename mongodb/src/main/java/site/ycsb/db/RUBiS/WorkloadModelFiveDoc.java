@@ -1,12 +1,13 @@
 package site.ycsb.db.RUBiS;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 import org.bson.Document;
 
-import com.mongodb.Block;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
@@ -53,29 +54,23 @@ import site.ycsb.db.RUBiS.DataModel.User;
 public class WorkloadModelFiveDoc {
 	
 	/**
-	 * Workload generator factory.
+	 * Workload generator of one client thread.
 	 * 
-	 * Starts at a user with record ID = 1.
+	 * Starts every query at a user picked by its own {@link UserChooser}.
 	 * 
 	 * @author vincent
 	 *
 	 */
 	public static class WorkloadGenerator {
 
-		private static WorkloadGenerator instance = null;
+		private final UserChooser userChooser;
 
-		private int recordId = 0;
-
-		public static WorkloadGenerator getInstance() {
-			if (instance == null)
-				instance = new WorkloadGenerator();
-
-			return instance;
+		public WorkloadGenerator(UserChooser userChooser) {
+			this.userChooser = userChooser;
 		}
 		
 		public Document executeQuery(MongoDatabase db) {
-			int userId = recordId;
-			recordId++;
+			int userId = userChooser.nextUserId();
 			
 			Document result;
 			
@@ -92,30 +87,125 @@ public class WorkloadModelFiveDoc {
 //			result = getItemsBids(db, userId);
 //			
 //			System.out.println("----");
-//			result = getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getBidIds(userId).get(0));
-//			result = getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getBidIds(userId).get(0));
+//			result = getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getFirstBidId(userId));
+//			result = getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getFirstBidId(userId));
 //			
 //			result = getNormalizedQuery(db, "Users", "Regions", "id_region", "_id", userId);
 //			result = getNormalizedQuery(db, "Users", "Items", "_id", "id_seller", userId);
 //			result = getNormalizedQuery(db, "Users", "Comments", "_id", "id_user", userId);
 //			
-//			result = getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).get(0));
-//			result = getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).get(0));
-//			result = getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).get(0));
+//			result = getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).first());
+//			result = getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).first());
+//			result = getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).first());
 //			
 //			result = getNormalizedQuery(db, "Regions", "Users", "_id", "id_region", User.getRegionId(userId));
 //			
 //			result = getNormalizedQueryItemsCommentsUser(db, userId);
 //			result = getNormalizedQueryUsersBidsItemsUser(db, userId);
 //			result = getNormalizedQueryUsersBidsItems(db, userId);
-			
-			System.out.println(result);
 
 			
 			return result;			
 		}
 	}
 	
+	/**
+	 * Returns the query plans of this model per operation name, see
+	 * {@link QueryPlans}.
+	 */
+	public static Map<String, QueryPlan> plans() {
+		Map<String, QueryPlan> plans = new LinkedHashMap<String, QueryPlan>();
+
+		plans.put("BidsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getBidsUsers(database, userId);
+			}
+		});
+		plans.put("BidsItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getBidsItems(database, userId);
+			}
+		});
+		plans.put("UsersRegions", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersRegions(database, userId);
+			}
+		});
+		plans.put("UsersItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersItems(database, userId);
+			}
+		});
+		plans.put("UsersBidsItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersBidsItems(database, userId);
+			}
+		});
+		plans.put("UsersBidsItemsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersBidsItemsUsers(database, userId);
+			}
+		});
+		plans.put("UsersComments", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersComments(database, userId);
+			}
+		});
+		plans.put("ItemsComments", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsComments(database, userId);
+			}
+		});
+		plans.put("ItemsCommentsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsCommentsUsers(database, userId);
+			}
+		});
+		plans.put("ItemsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsUsers(database, userId);
+			}
+		});
+		plans.put("ItemsBids", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsBids(database, userId);
+			}
+		});
+		plans.put("RegionsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getRegionsUsers(database, userId);
+			}
+		});
+
+		return plans;
+	}
+
+	/**
+	 * Returns the fields the plans of this model filter on, other than _id, per
+	 * collection, see {@link IndexProvisioner}.
+	 */
+	public static Map<String, List<String>> indexes() {
+		Map<String, List<String>> indexes = new LinkedHashMap<String, List<String>>();
+		indexes.put("ItemsUsers", Arrays.asList("users._id"));
+		indexes.put("ItemsUsersRegions", Arrays.asList("users._id", "users.regions._id"));
+		indexes.put("BidsItems", Arrays.asList("id_user"));
+		indexes.put("ItemsComments", Arrays.asList("comments.id_user"));
+
+		return indexes;
+	}
+	
 	/**
 	 * ========================================
 	 *  QUERY PLAN RECOMMENDATIONS 
@@ -132,31 +222,30 @@ public class WorkloadModelFiveDoc {
 	 * @return
 	 */
 	public static Document getBidsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("BidsItems");
-		Document query = new Document("_id", User.getBidIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("BidsItems");
+		Document query = context.filter("_id", User.getFirstBidId(userId));
 		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.BID);
 		
 //		System.out.println(queryResult);
 		
-		collection = database.getCollection("ItemsUsers");
-		query = new Document("users._id", queryResult.get("id_user"));
+		collection = context.collection("ItemsUsers");
+		query = context.filter("users._id", ResultConsumer.value(queryResult, "id_user"));
 		
 		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
+		ResultConsumer.drain(collection, query, PlanProjection.EMBEDDED_USER);
 		
 		return queryResult;
 	}
 	
 	// OK
 	public static Document getBidsItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("BidsItems");
-		Document query = new Document("_id", User.getBidIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("BidsItems");
+		Document query = context.filter("_id", User.getFirstBidId(userId));
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.BID_ITEM);
 		
 		return queryResult;
 	}
@@ -170,12 +259,11 @@ public class WorkloadModelFiveDoc {
 	 * @return
 	 */
 	public static Document getUsersRegions(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("users._id", userId);
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("users._id", userId);
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 		return queryResult;
 	}
@@ -186,12 +274,11 @@ public class WorkloadModelFiveDoc {
 	 * @return
 	 */
 	public static Document getUsersItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsers");
-		Document query = new Document("users._id", userId);
-		
-		collection.find(query).forEach(printBlock);
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsers");
+		Document query = context.filter("users._id", userId);
 		
-		return query;
+		return ResultConsumer.result(collection, query, PlanProjection.ITEM);
 	}
 	
 	/**
@@ -204,19 +291,19 @@ public class WorkloadModelFiveDoc {
 	 * @return
 	 */
 	public static Document getUsersBidsItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsers");
-		Document query = new Document("users._id", userId);
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsers");
+		Document query = context.filter("users._id", userId);
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 //		System.out.println(queryResult);
 		
-		Object id = ((Document) queryResult.get("users")).get("_id");
-		collection = database.getCollection("BidsItems");
-		query = new Document("id_user", id);
+		Object id = ResultConsumer.value(queryResult, "users", "_id");
+		collection = context.collection("BidsItems");
+		query = context.filter("id_user", id);
 		
 		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
+		ResultConsumer.drain(collection, query, PlanProjection.BID_ITEM);
 		
 		return queryResult;
 	}
@@ -227,27 +314,25 @@ public class WorkloadModelFiveDoc {
 	 * queryMapping={0=[Query [users]], 1=[Query [bids], Query [items]], 2=[Query [users]]}, secondaryIndex={0=[ users-820 ]}]
 	 */
 	public static Document getUsersBidsItemsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsers");
-		Document query = new Document("users._id", userId);
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsers");
+		Document query = context.filter("users._id", userId);
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 //		System.out.println(queryResult);
 		
-		Object id = ((Document) queryResult.get("users")).get("_id");
-		collection = database.getCollection("BidsItems");
-		query = new Document("id_user", id);
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
+		Object id = ResultConsumer.value(queryResult, "users", "_id");
+		collection = context.collection("BidsItems");
+		query = context.filter("id_user", id);
+		queryResult = ResultConsumer.first(collection, query, PlanProjection.BID_ITEM);
 		
 //		System.out.println(queryResult);
 		// OK -> Only 1 seller_id anyway (checked)
 		
-		id = ((Document) queryResult.get("items")).get("id_seller");
-		collection = database.getCollection("ItemsUsers");
-		query = new Document("users._id", id);
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
+		id = ResultConsumer.value(queryResult, "items", "id_seller");
+		collection = context.collection("ItemsUsers");
+		query = context.filter("users._id", id);
+		queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 //		System.out.println(queryResult);
 		
@@ -261,19 +346,19 @@ public class WorkloadModelFiveDoc {
 	 * 
 	 */
 	public static Document getUsersComments(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsers");
-		Document query = new Document("users._id", userId);
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsers");
+		Document query = context.filter("users._id", userId);
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 //		System.out.println(queryResult);
 		
-		Object id = ((Document) queryResult.get("users")).get("_id");
-		collection = database.getCollection("ItemsComments");
-		query = new Document("comments.id_user", id);
+		Object id = ResultConsumer.value(queryResult, "users", "_id");
+		collection = context.collection("ItemsComments");
+		query = context.filter("comments.id_user", id);
 		
 		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
+		ResultConsumer.drain(collection, query, PlanProjection.ITEM_MATCHED_COMMENT);
 		
 //		System.out.println(queryResult);
 		
@@ -282,11 +367,11 @@ public class WorkloadModelFiveDoc {
 	
 	// OK [Items|Comments]
 	public static Document getItemsComments(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsComments");
-		Document query = new Document("_id", User.getItemIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsComments");
+		Document query = context.filter("_id", User.getItemIds(userId).first());
 		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_COMMENTS);
 		
 		return queryResult;
 	}
@@ -298,32 +383,29 @@ public class WorkloadModelFiveDoc {
 	 * @return
 	 */
 	public static Document getItemsCommentsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document>  collection = database.getCollection("ItemsComments");
-		Document query = new Document("_id", User.getCommentIds(userId).get(0));
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document>  collection = context.collection("ItemsComments");
+		Document query = context.filter("_id", User.getFirstCommentId(userId));
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_FIRST_COMMENT);
 		
 //		System.out.println(queryResult);
 		
 		// OK Only 1 probably. Item - 2 comments - User has more.
-		Object id = ((ArrayList<Document>) queryResult.get("comments")).get(0).get("id_user");
-		collection = database.getCollection("ItemsUsers");
-		query = new Document("users._id", id);
-		findIterable = collection.find(query);
-		queryResult = findIterable.first();
-		
-		System.out.println(queryResult);
+		Object id = ResultConsumer.value(queryResult, "comments", "id_user");
+		collection = context.collection("ItemsUsers");
+		query = context.filter("users._id", id);
+		queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 		return queryResult;
 	}
 	
 	// OK [Items|Users|Regions]
 	public static Document getItemsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("_id", User.getItemIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("_id", User.getItemIds(userId).first());
 		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_SELLER);
 		
 		return queryResult;
 	}
@@ -332,16 +414,15 @@ public class WorkloadModelFiveDoc {
 	 * OK on [Items|Bids]
 	 */
 	public static Document getItemsBids(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsBids");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsBids");
 		
-		int itemId = User.getItemIds(userId).get(0);
-		Document query = new Document("_id", itemId);
+		int itemId = User.getItemIds(userId).first();
+		Document query = context.filter("_id", itemId);
 		
 //		System.out.println(query);
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_BIDS);
 		
 		return queryResult;
 	}
@@ -353,16 +434,15 @@ public class WorkloadModelFiveDoc {
 	 * @return
 	 */
 	public static Document getRegionsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
 		
 		int regionId = User.getRegionId(userId);
-		Document query = new Document("users.regions._id", regionId);
+		Document query = context.filter("users.regions._id", regionId);
 		
 		//TODO find all?
 		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
-		
-		return query;
+		return ResultConsumer.result(collection, query, PlanProjection.ITEM_SELLER);
 	}
 	
 	/**
@@ -387,27 +467,27 @@ public class WorkloadModelFiveDoc {
 	 * ===============================
 	 */
 	private static void getNormalizedQueries(MongoDatabase db, int userId) {
-		getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getBidIds(userId).get(0));
-		getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getBidIds(userId).get(0));
+		getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getFirstBidId(userId));
+		getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getFirstBidId(userId));
 		
 		getNormalizedQuery(db, "Users", "Regions", "id_region", "_id", userId);
 		getNormalizedQuery(db, "Users", "Items", "_id", "id_seller", userId);
 		getNormalizedQuery(db, "Users", "Comments", "_id", "id_user", userId);
 		
-		getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).get(0));
-		getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).get(0));
-		getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).get(0));
+		getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).first());
+		getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).first());
+		getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).first());
 		
 		getNormalizedQuery(db, "Regions", "Users", "_id", "id_region", User.getRegionId(userId));
 		
 		// Two longer cases.
-		System.out.println(getNormalizedQueryItemsCommentsUser(db, userId));
-		System.out.println(getNormalizedQueryUsersBidsItemsUser(db, userId));
-		System.out.println(getNormalizedQueryUsersBidsItems(db, userId));
+		getNormalizedQueryItemsCommentsUser(db, userId);
+		getNormalizedQueryUsersBidsItemsUser(db, userId);
+		getNormalizedQueryUsersBidsItems(db, userId);
 	}
 
 	private static Document getNormalizedQuery(MongoDatabase db, String collectionOne, String collectionTwo, String localKey, String foreignKey, int id) {
-		MongoCollection<Document> collection = db.getCollection(collectionOne);
+		MongoCollection<Document> collection = OperationContext.of(db).collection(collectionOne);
 		Document query = new Document("_id", id);
 		
 		FindIterable<Document> findIterable = collection.find(query);
@@ -415,11 +495,11 @@ public class WorkloadModelFiveDoc {
 		
 //		System.out.println(queryResult);
 		
-		collection = db.getCollection(collectionTwo);
+		collection = OperationContext.of(db).collection(collectionTwo);
 		query = new Document(foreignKey, queryResult.get(localKey));
 		
 		// loop over result set to make sure we get all.
-		collection.find(query).forEach(printBlock);
+		ResultConsumer.drain(collection, query);
 		
 		return queryResult;
 	}
@@ -429,21 +509,21 @@ public class WorkloadModelFiveDoc {
 	 * Items->Comments->User
 	 */
 	private static Document getNormalizedQueryItemsCommentsUser(MongoDatabase db, int userId) {
-		MongoCollection<Document>  collection = db.getCollection("Items");
-		Document query = new Document("_id", User.getItemIds(userId).get(0));
+		MongoCollection<Document>  collection = OperationContext.of(db).collection("Items");
+		Document query = new Document("_id", User.getItemIds(userId).first());
 		FindIterable<Document> findIterable = collection.find(query);
 		Document queryResult = findIterable.first();
 		
 //		System.out.println(queryResult);
 		
-		collection = db.getCollection("Comments");
+		collection = OperationContext.of(db).collection("Comments");
 		query = new Document("id_item", queryResult.get("_id"));
 		findIterable = collection.find(query);
 		queryResult = findIterable.first();
 		
 //		System.out.println(queryResult);
 		
-		collection = db.getCollection("Users");
+		collection = OperationContext.of(db).collection("Users");
 		query = new Document("_id", queryResult.get("id_user"));
 		findIterable = collection.find(query);
 		queryResult = findIterable.first();
@@ -466,14 +546,14 @@ public class WorkloadModelFiveDoc {
 	 * @return
 	 */
 	private static Document getNormalizedQueryUsersBidsItems(MongoDatabase db, int userId) {
-		MongoCollection<Document>  collection = db.getCollection("Users");
+		MongoCollection<Document>  collection = OperationContext.of(db).collection("Users");
 		Document query = new Document("_id", userId);
 		FindIterable<Document> findIterable = collection.find(query);
 		Document queryResult = findIterable.first();
 		
 //		System.out.println(queryResult);
 		
-		collection = db.getCollection("Bids");
+		collection = OperationContext.of(db).collection("Bids");
 		query = new Document("id_user", queryResult.get("_id"));
 		findIterable = collection.find(query);
 		queryResult = findIterable.first();
@@ -481,7 +561,7 @@ public class WorkloadModelFiveDoc {
 //		System.out.println(queryResult);
 		
 		//TODO query all?
-		collection = db.getCollection("Items");
+		collection = OperationContext.of(db).collection("Items");
 		query = new Document("_id", queryResult.get("id_item"));
 		findIterable = collection.find(query);
 		queryResult = findIterable.first();
@@ -505,14 +585,14 @@ public class WorkloadModelFiveDoc {
 	 * @return
 	 */
 	private static Document getNormalizedQueryUsersBidsItemsUser(MongoDatabase db, int userId) {
-		MongoCollection<Document>  collection = db.getCollection("Users");
+		MongoCollection<Document>  collection = OperationContext.of(db).collection("Users");
 		Document query = new Document("_id", userId);
 		FindIterable<Document> findIterable = collection.find(query);
 		Document queryResult = findIterable.first();
 		
 //		System.out.println(queryResult);
 		
-		collection = db.getCollection("Bids");
+		collection = OperationContext.of(db).collection("Bids");
 		query = new Document("id_user", queryResult.get("_id"));
 		findIterable = collection.find(query);
 		queryResult = findIterable.first();
@@ -520,14 +600,14 @@ public class WorkloadModelFiveDoc {
 //		System.out.println(queryResult);
 		
 		//TODO query all?
-		collection = db.getCollection("Items");
+		collection = OperationContext.of(db).collection("Items");
 		query = new Document("_id", queryResult.get("id_item"));
 		findIterable = collection.find(query);
 		queryResult = findIterable.first();
 		
 //		System.out.println(queryResult);
 		
-		collection = db.getCollection("Users");
+		collection = OperationContext.of(db).collection("Users");
 		query = new Document("_id", queryResult.get("id_seller"));
 		findIterable = collection.find(query);
 		queryResult = findIterable.first();
@@ -539,11 +619,4 @@ public class WorkloadModelFiveDoc {
 	}
 	
 	
-	public static Block<Document> printBlock = new Block<Document>() {
-	       @Override
-	       public void apply(final Document document) {
-//	           System.out.println(document.toJson());
-	       }
-	};
-	
 }
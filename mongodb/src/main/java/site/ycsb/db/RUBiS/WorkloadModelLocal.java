@@ -2,18 +2,20 @@ package site.ycsb.db.RUBiS;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 import org.bson.Document;
 
 import com.mongodb.Block;
-import com.mongodb.client.AggregateIterable;
-import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 
 import site.ycsb.db.RUBiS.DataModel.DocumentGenerator;
 import site.ycsb.db.RUBiS.DataModel.User;
@@ -52,44 +54,37 @@ import site.ycsb.db.RUBiS.DataModel.User;
 public class WorkloadModelLocal {
 	
 	/**
-	 * Workload generator factory.
+	 * Workload generator of one client thread.
 	 * 
-	 * Starts at a user with record ID = 1.
+	 * Starts every query at a user picked by its own {@link UserChooser}.
 	 * 
 	 * @author vincent
 	 *
 	 */
 	public static class WorkloadGenerator {
 
-		private static WorkloadGenerator instance = null;
+		private final UserChooser userChooser;
 
-		private int recordId = 0;
-
-		public static WorkloadGenerator getInstance() {
-			if (instance == null)
-				instance = new WorkloadGenerator();
-
-			return instance;
+		public WorkloadGenerator(UserChooser userChooser) {
+			this.userChooser = userChooser;
 		}
 		
 		public Document executeQuery(MongoDatabase db) {
-			int userId = recordId;
-			recordId++;
+			int userId = userChooser.nextUserId();
 			
-			System.out.println(getBidsUsers(db, userId));
-			System.out.println(getBidsItems(db, userId));
-			System.out.println(getUsersRegions(db, userId));
-			System.out.println(getUsersItems(db, userId));
-			System.out.println(getUsersBidsItems(db, userId));
-			System.out.println(getUsersBidsItemsUsers(db, userId));
-			System.out.println(getUsersComments(db, userId));
-			System.out.println(getItemsComments(db, userId));
-			System.out.println(getItemsCommentsUsers(db, userId));
-			System.out.println(getItemsUsers(db, userId));
-			System.out.println(getItemsBids(db, userId));
-			System.out.println(getRegionsUsers(db, userId));
+			getBidsUsers(db, userId);
+			getBidsItems(db, userId);
+			getUsersRegions(db, userId);
+			getUsersItems(db, userId);
+			getUsersBidsItems(db, userId);
+			getUsersBidsItemsUsers(db, userId);
+			getUsersComments(db, userId);
+			getItemsComments(db, userId);
+			getItemsCommentsUsers(db, userId);
+			getItemsUsers(db, userId);
+			getItemsBids(db, userId);
+			getRegionsUsers(db, userId);
 			
-			System.out.println("----");
 			getNormalizedQueries(db, userId);
 			
 			getNormalizedQuery(db, "Users", "Items", "_id", "id_seller", userId);
@@ -98,6 +93,103 @@ public class WorkloadModelLocal {
 		}
 	}
 	
+	/**
+	 * Returns the query plans of this model per operation name, see
+	 * {@link QueryPlans}.
+	 */
+	public static Map<String, QueryPlan> plans() {
+		Map<String, QueryPlan> plans = new LinkedHashMap<String, QueryPlan>();
+
+		plans.put("BidsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getBidsUsers(database, userId);
+			}
+		});
+		plans.put("BidsItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getBidsItems(database, userId);
+			}
+		});
+		plans.put("UsersRegions", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersRegions(database, userId);
+			}
+		});
+		plans.put("UsersItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersItems(database, userId);
+			}
+		});
+		plans.put("UsersBidsItems", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersBidsItems(database, userId);
+			}
+		});
+		plans.put("UsersBidsItemsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersBidsItemsUsers(database, userId);
+			}
+		});
+		plans.put("UsersComments", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getUsersComments(database, userId);
+			}
+		});
+		plans.put("ItemsComments", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsComments(database, userId);
+			}
+		});
+		plans.put("ItemsCommentsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsCommentsUsers(database, userId);
+			}
+		});
+		plans.put("ItemsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsUsers(database, userId);
+			}
+		});
+		plans.put("ItemsBids", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getItemsBids(database, userId);
+			}
+		});
+		plans.put("RegionsUsers", new QueryPlan() {
+			@Override
+			public Document execute(MongoDatabase database, int userId) {
+				return getRegionsUsers(database, userId);
+			}
+		});
+
+		return plans;
+	}
+
+	/**
+	 * Returns the fields the plans and $lookup stages of this model filter on,
+	 * other than _id, per collection, see {@link IndexProvisioner}.
+	 */
+	public static Map<String, List<String>> indexes() {
+		Map<String, List<String>> indexes = new LinkedHashMap<String, List<String>>();
+		indexes.put("ItemsUsers", Arrays.asList("users._id"));
+		indexes.put("ItemsUsersRegions", Arrays.asList("users._id", "users.regions._id"));
+		indexes.put("BidsItems", Arrays.asList("id_user"));
+		indexes.put("ItemsComments", Arrays.asList("comments.id_user"));
+
+		return indexes;
+	}
+	
 	/**
 	 * ========================================
 	 *  QUERY PLAN RECOMMENDATIONS 
@@ -114,16 +206,16 @@ public class WorkloadModelLocal {
 	 * @return
 	 */
 	public static Document getBidsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("BidsItems");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("BidsItems");
 		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
-				 Aggregates.match(Filters.eq("_id", User.getBidIds(userId).get(0))),
-	              Aggregates.lookup("ItemsUsers", "id_user", "users._id", "UsersBids")
+		Document queryResult = ResultConsumer.aggregate(collection, PlanProjection.pipeline(
+				Projections.fields(PlanProjection.BID, Projections.include("UsersBids")),
+				 Aggregates.match(Filters.eq("_id", User.getFirstBidId(userId))),
+	              PlanProjection.lookup("ItemsUsers", "id_user", "users._id", PlanProjection.EMBEDDED_USER, "UsersBids")
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
 //		System.out.println(queryResult);
 		
 		return queryResult;
@@ -131,12 +223,11 @@ public class WorkloadModelLocal {
 	
 	// OK
 	public static Document getBidsItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("BidsItems");
-		Document query = new Document("_id", User.getBidIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("BidsItems");
+		Document query = context.filter("_id", User.getFirstBidId(userId));
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.BID_ITEM);
 		
 		return queryResult;
 	}
@@ -150,12 +241,11 @@ public class WorkloadModelLocal {
 	 * @return
 	 */
 	public static Document getUsersRegions(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("users._id", userId);
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("users._id", userId);
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.EMBEDDED_USER);
 		
 		return queryResult;
 	}
@@ -166,12 +256,11 @@ public class WorkloadModelLocal {
 	 * @return
 	 */
 	public static Document getUsersItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsers");
-		Document query = new Document("users._id", userId);
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsers");
+		Document query = context.filter("users._id", userId);
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_SELLER);
 		
 		return queryResult;
 	}
@@ -186,16 +275,16 @@ public class WorkloadModelLocal {
 	 * @return
 	 */
 	public static Document getUsersBidsItems(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsers");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsers");
 		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
+		Document queryResult = ResultConsumer.aggregate(collection, PlanProjection.pipeline(
+				Projections.fields(PlanProjection.EMBEDDED_USER, Projections.include("UsersBidsItems")),
 				 Aggregates.match(Filters.eq("users._id", userId)),
-	              Aggregates.lookup("BidsItems", "users._id", "id_user", "UsersBidsItems")
+	              PlanProjection.lookup("BidsItems", "users._id", "id_user", PlanProjection.BID_ITEM, "UsersBidsItems")
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
 //		System.out.println(queryResult);
 		
 		return queryResult;
@@ -207,17 +296,18 @@ public class WorkloadModelLocal {
 	 * queryMapping={0=[Query [users]], 1=[Query [bids], Query [items]], 2=[Query [users]]}, secondaryIndex={0=[ users-820 ]}]
 	 */
 	public static Document getUsersBidsItemsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsers");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsers");
 		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
+		Document queryResult = ResultConsumer.aggregate(collection, PlanProjection.pipeline(
+				Projections.fields(PlanProjection.EMBEDDED_USER, Projections.include("UsersBidsItems", "UsersBidsItemsUsers")),
 				 Aggregates.match(Filters.eq("users._id", userId)),
-	              Aggregates.lookup("BidsItems", "users._id", "id_user", "UsersBidsItems"),
-	              Aggregates.lookup("ItemsUsersRegions", "UsersBidsItems.users.id_seller", "users._id", "UsersBidsItemsUsers")
+	              PlanProjection.lookup("BidsItems", "users._id", "id_user", PlanProjection.BID_ITEM, "UsersBidsItems"),
+	              PlanProjection.lookup("ItemsUsersRegions", "UsersBidsItems.users.id_seller", "users._id",
+	            		  PlanProjection.EMBEDDED_USER, "UsersBidsItemsUsers")
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
 //		System.out.println(queryResult);
 		
 		return queryResult;
@@ -230,26 +320,27 @@ public class WorkloadModelLocal {
 	 * 
 	 */
 	public static Document getUsersComments(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsers");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsers");
 		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
+		Document queryResult = ResultConsumer.aggregate(collection, PlanProjection.pipeline(
+				Projections.fields(PlanProjection.EMBEDDED_USER, Projections.include("UsersComments")),
 				 Aggregates.match(Filters.eq("users._id", userId)),
-	              Aggregates.lookup("ItemsComments", "users._id", "comments.id_user", "UsersComments")
+	              PlanProjection.lookup("ItemsComments", "users._id", "comments.id_user",
+	            		  PlanProjection.itemCommentsBy(userId), "UsersComments")
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
 		return queryResult;
 	}
 	
 	// OK [Items|Comments]
 	public static Document getItemsComments(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsComments");
-		Document query = new Document("_id", User.getItemIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsComments");
+		Document query = context.filter("_id", User.getItemIds(userId).first());
 		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_COMMENTS);
 		
 		return queryResult;
 	}
@@ -261,26 +352,27 @@ public class WorkloadModelLocal {
 	 * @return
 	 */
 	public static Document getItemsCommentsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsComments");
-		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
-				 Aggregates.match(Filters.eq("_id", User.getItemIds(userId).get(0))),
-	              Aggregates.lookup("ItemsUsers", "comments.id_user", "users._id", "ItemsCommentsUsers")
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsComments");
+		
+		Document queryResult = ResultConsumer.aggregate(collection, PlanProjection.pipeline(
+				Projections.fields(PlanProjection.ITEM_COMMENTS_STAGE, Projections.include("ItemsCommentsUsers")),
+				 Aggregates.match(Filters.eq("_id", User.getItemIds(userId).first())),
+	              PlanProjection.lookup("ItemsUsers", "comments.id_user", "users._id", PlanProjection.EMBEDDED_USER,
+	            		  "ItemsCommentsUsers")
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
 		return queryResult;
 	}
 	
 	// OK [Items|Users|Regions]
 	public static Document getItemsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
-		Document query = new Document("_id", User.getItemIds(userId).get(0));
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
+		Document query = context.filter("_id", User.getItemIds(userId).first());
 		
-		FindIterable<Document> findIterable = collection.find(query);
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_SELLER);
 		
 		return queryResult;
 	}
@@ -289,16 +381,15 @@ public class WorkloadModelLocal {
 	 * OK on [Items|Bids]
 	 */
 	public static Document getItemsBids(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsBids");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsBids");
 		
-		int itemId = User.getItemIds(userId).get(0);
-		Document query = new Document("_id", itemId);
+		int itemId = User.getItemIds(userId).first();
+		Document query = context.filter("_id", itemId);
 		
 //		System.out.println(query);
 		
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_BIDS);
 		
 		return queryResult;
 	}
@@ -310,15 +401,14 @@ public class WorkloadModelLocal {
 	 * @return
 	 */
 	public static Document getRegionsUsers(MongoDatabase database, int userId) {
-		MongoCollection<Document> collection = database.getCollection("ItemsUsersRegions");
+		OperationContext context = OperationContext.of(database);
+		MongoCollection<Document> collection = context.collection("ItemsUsersRegions");
 		
 		int regionId = User.getRegionId(userId);
-		Document query = new Document("users.regions._id", regionId);
+		Document query = context.filter("users.regions._id", regionId);
 		
 		//TODO find all?
-		FindIterable<Document> findIterable = collection.find(query);
-
-		Document queryResult = findIterable.first();
+		Document queryResult = ResultConsumer.first(collection, query, PlanProjection.ITEM_SELLER);
 		
 		return queryResult;
 	}
@@ -345,38 +435,34 @@ public class WorkloadModelLocal {
 	 * ===============================
 	 */
 	private static void getNormalizedQueries(MongoDatabase db, int userId) {
-		getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getBidIds(userId).get(0));
-		getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getBidIds(userId).get(0));
+		getNormalizedQuery(db, "Bids", "Users", "id_user", "_id", User.getFirstBidId(userId));
+		getNormalizedQuery(db, "Bids", "Items", "id_item", "_id", User.getFirstBidId(userId));
 		
 		getNormalizedQuery(db, "Users", "Regions", "id_region", "_id", userId);
 		getNormalizedQuery(db, "Users", "Items", "_id", "id_seller", userId);
 		getNormalizedQuery(db, "Users", "Comments", "_id", "id_user", userId);
 		
-		getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).get(0));
-		getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).get(0));
-		getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).get(0));
+		getNormalizedQuery(db, "Items", "Users", "id_seller", "_id", User.getItemIds(userId).first());
+		getNormalizedQuery(db, "Items", "Comments", "_id", "id_item", User.getItemIds(userId).first());
+		getNormalizedQuery(db, "Items", "Bids", "_id", "id_item", User.getItemIds(userId).first());
 		
 		getNormalizedQuery(db, "Regions", "Users", "_id", "id_region", User.getRegionId(userId));
 		
 		// Two longer cases.
-		System.out.println(getNormalizedQueryItemsCommentsUser(db, userId));
-		System.out.println(getNormalizedQueryUsersBidsItemsUser(db, userId));
-		System.out.println(getNormalizedQueryUsersBidsItems(db, userId));
+		getNormalizedQueryItemsCommentsUser(db, userId);
+		getNormalizedQueryUsersBidsItemsUser(db, userId);
+		getNormalizedQueryUsersBidsItems(db, userId);
 	}
 
 	private static Document getNormalizedQuery(MongoDatabase db, String collectionOne, String collectionTwo, String localKey, String foreignKey, int id) {
-		MongoCollection<Document> collection = db.getCollection(collectionOne);
+		MongoCollection<Document> collection = OperationContext.of(db).collection(collectionOne);
 		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
+		Document queryResult = ResultConsumer.aggregate(collection, Arrays.asList(
 				 Aggregates.match(Filters.eq("_id", id)),
 	             Aggregates.lookup(collectionTwo, localKey, foreignKey, "JOIN")
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
-		System.out.println(queryResult);
-		
 		return queryResult;
 	}
 	
@@ -384,20 +470,15 @@ public class WorkloadModelLocal {
 	 * Items->Comments->User
 	 */
 	private static Document getNormalizedQueryItemsCommentsUser(MongoDatabase db, int userId) {
-		MongoCollection<Document> collection = db.getCollection("Items");
+		MongoCollection<Document> collection = OperationContext.of(db).collection("Items");
 		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
-				 Aggregates.match(Filters.eq("_id", User.getItemIds(userId).get(0))),
+		Document queryResult = ResultConsumer.aggregate(collection, Arrays.asList(
+				 Aggregates.match(Filters.eq("_id", User.getItemIds(userId).first())),
 	             Aggregates.lookup("Comments", "_id", "id_item", "ItemsComments"),
 	             Aggregates.lookup("Users", "ItemsComments.id_user", "_id", "CommentsUsers")
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
-		//TODO: verify
-		System.out.println(queryResult);
-		
 		return queryResult;
 	}
 	
@@ -414,20 +495,15 @@ public class WorkloadModelLocal {
 	 * @return
 	 */
 	private static Document getNormalizedQueryUsersBidsItems(MongoDatabase db, int userId) {
-		MongoCollection<Document> collection = db.getCollection("Users");
+		MongoCollection<Document> collection = OperationContext.of(db).collection("Users");
 		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
+		Document queryResult = ResultConsumer.aggregate(collection, Arrays.asList(
 				 Aggregates.match(Filters.eq("_id", userId)),
 	             Aggregates.lookup("Bids", "_id", "id_item", "UsersBids"),
 	             Aggregates.lookup("Items", "UsersBids.id_item", "_id", "BidsItems")
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
-		//TODO: verify
-		System.out.println(queryResult);
-		
 		return queryResult;
 	}
 	
@@ -445,9 +521,9 @@ public class WorkloadModelLocal {
 	 * @return
 	 */
 	private static Document getNormalizedQueryUsersBidsItemsUser(MongoDatabase db, int userId) {
-		MongoCollection<Document> collection = db.getCollection("Users");
+		MongoCollection<Document> collection = OperationContext.of(db).collection("Users");
 		
-		AggregateIterable<Document> aggIterable = collection.aggregate(Arrays.asList(
+		Document queryResult = ResultConsumer.aggregate(collection, Arrays.asList(
 				 Aggregates.match(Filters.eq("_id", userId)),
 	             Aggregates.lookup("Bids", "_id", "id_item", "UsersBids"),
 	             Aggregates.lookup("Items", "UsersBids.id_item", "_id", "BidsItems"),
@@ -455,11 +531,6 @@ public class WorkloadModelLocal {
 				)
 		);
 		
-		Document queryResult = aggIterable.first();
-		
-		//TODO: verify
-		System.out.println(queryResult);
-		
 		return queryResult;
 	}
 	
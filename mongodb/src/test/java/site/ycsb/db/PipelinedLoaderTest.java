@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import site.ycsb.db.RUBiS.DataModel.RecordFactory;
+import site.ycsb.measurements.Measurements;
+
+/**
+ * PipelinedLoaderTest provides tests for the hand-off between the client,
+ * producer and writer threads of the {@link PipelinedLoader}.
+ */
+public class PipelinedLoaderTest {
+
+  /** Generates a user and two items per user id. */
+  private static final RecordFactory<Document> FACTORY = new RecordFactory<Document>() {
+    @Override
+    public Map<String, ? extends Collection<Document>> createRecords(int userId) {
+      Map<String, List<Document>> records = new HashMap<String, List<Document>>();
+      records.put("Users", Collections.singletonList(new Document("_id", userId)));
+      records.put("Items", Arrays.asList(new Document("_id", 2 * userId), new Document("_id", 2 * userId + 1)));
+      return records;
+    }
+  };
+
+  @BeforeClass
+  public static void setUp() {
+    Measurements.setProperties(new Properties());
+  }
+
+  /**
+   * Returns a database whose collections record the inserted documents in
+   * {@code inserted}, or throw {@code failure} if it is not null.
+   */
+  private static MongoDatabase database(final Map<String, List<Object>> inserted, final RuntimeException failure) {
+    return (MongoDatabase) Proxy.newProxyInstance(PipelinedLoaderTest.class.getClassLoader(),
+        new Class<?>[] {MongoDatabase.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!method.getName().equals("getCollection")) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            return collection((String) args[0], inserted, failure);
+          }
+        });
+  }
+
+  private static MongoCollection<?> collection(final String name, final Map<String, List<Object>> inserted,
+      final RuntimeException failure) {
+    return (MongoCollection<?>) Proxy.newProxyInstance(PipelinedLoaderTest.class.getClassLoader(),
+        new Class<?>[] {MongoCollection.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!method.getName().equals("insertMany")) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            if (failure != null) {
+              throw failure;
+            }
+            synchronized (inserted) {
+              List<Object> documents = inserted.get(name);
+              if (documents == null) {
+                documents = new ArrayList<Object>();
+                inserted.put(name, documents);
+              }
+              documents.addAll((List<?>) args[0]);
+            }
+            return null;
+          }
+        });
+  }
+
+  private static Set<Object> ids(List<Object> documents) {
+    Set<Object> ids = new HashSet<Object>();
+    for (Object document : documents) {
+      ids.add(((Document) document).get("_id"));
+    }
+    return ids;
+  }
+
+  /**
+   * All records of the submitted users are written once the loader is closed,
+   * including the partial batches.
+   */
+  @Test(timeout = 10000)
+  public void testCompletion() throws Exception {
+    Map<String, List<Object>> inserted = new HashMap<String, List<Object>>();
+    PipelinedLoader<Document> loader =
+        new PipelinedLoader<Document>(database(inserted, null), FACTORY, Document.class, 3, 2, 4, 7, 0);
+    assertThat(loader.report(), is(nullValue()));
+
+    for (int userId = 0; userId < 100; userId++) {
+      loader.submit(userId);
+    }
+    loader.close();
+
+    assertThat(inserted.get("Users").size(), is(100));
+    assertThat(ids(inserted.get("Users")).size(), is(100));
+    assertThat(inserted.get("Items").size(), is(200));
+    assertThat(ids(inserted.get("Items")).size(), is(200));
+    assertThat(loader.report(), containsString("RUBiS pipeline: 100 users, 300 documents in "));
+    assertThat(Measurements.getMeasurements().getSummary(), containsString("PIPELINE-USERS-PER-SEC"));
+    assertThat(Measurements.getMeasurements().getSummary(), containsString("PIPELINE-DOCUMENTS-PER-SEC"));
+  }
+
+  /**
+   * A failed writer is reported to the client thread, and close does not block
+   * on the records it no longer writes.
+   */
+  @Test(timeout = 10000)
+  public void testWriterFailure() throws Exception {
+    Map<String, List<Object>> inserted = new HashMap<String, List<Object>>();
+    RuntimeException failure = new IllegalStateException("disk full");
+    PipelinedLoader<Document> loader =
+        new PipelinedLoader<Document>(database(inserted, failure), FACTORY, Document.class, 2, 2, 2, 1, 0);
+
+    try {
+      for (int userId = 0; userId < 1000; userId++) {
+        loader.submit(userId);
+      }
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("disk full"));
+    }
+
+    try {
+      loader.close();
+      fail("Expected the writer failure");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("disk full"));
+    }
+    assertThat(inserted.isEmpty(), is(true));
+    assertThat(loader.report(), containsString("RUBiS pipeline: 0 users, 0 documents in "));
+  }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import site.ycsb.measurements.Measurements;
+
+import java.util.Properties;
+
+/**
+ * PoolWaitListenerTest checks when the waits for a pooled connection are
+ * measured.
+ */
+public class PoolWaitListenerTest {
+
+  private static final ServerId SERVER = new ServerId(new ClusterId(), new ServerAddress());
+
+  @BeforeClass
+  public static void setUp() {
+    Measurements.setProperties(new Properties());
+  }
+
+  @Test
+  public void testTuned() {
+    Properties props = new Properties();
+    props.setProperty("rubis.wirestats", "true");
+    assertThat(PoolWaitListener.isTuned(props), is(false));
+
+    props.setProperty("mongodb.pool.maxsize", "10");
+    assertThat(PoolWaitListener.isTuned(props), is(true));
+
+    Properties clients = new Properties();
+    clients.setProperty("mongodb.clients", "4");
+    assertThat(PoolWaitListener.isTuned(clients), is(true));
+  }
+
+  /**
+   * A wait is measured when the thread leaves the wait queue.
+   */
+  @Test
+  public void testWait() {
+    PoolWaitListener listener = new PoolWaitListener();
+    listener.waitQueueExited(new ConnectionPoolWaitQueueExitedEvent(SERVER));
+    listener.waitQueueEntered(new ConnectionPoolWaitQueueEnteredEvent(SERVER));
+    listener.waitQueueExited(new ConnectionPoolWaitQueueExitedEvent(SERVER));
+
+    assertThat(Measurements.getMeasurements().getSummary(), containsString("[POOL-WAIT-US: Count=1,"));
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * AsyncPlansTest checks that the asynchronous plans match the blocking ones.
+ */
+public class AsyncPlansTest {
+
+  @Test
+  public void testSameOperationsAsBlockingPlans() {
+    for (String model : new String[] {"denormalized", "normalized"}) {
+      assertThat(model, AsyncPlans.forModel(model).keySet(), is(QueryPlans.forModel(model).keySet()));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testModelWithoutAsyncPlans() {
+    AsyncPlans.forModel("lookup");
+  }
+
+  @Test
+  public void testBlockingByDefault() {
+    assertThat(AsyncPlans.window(new Properties()), is(0));
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Test;
+
+import site.ycsb.db.RUBiS.DataModel.Bid;
+import site.ycsb.db.RUBiS.DataModel.Comment;
+import site.ycsb.db.RUBiS.DataModel.Item;
+import site.ycsb.db.RUBiS.DataModel.User;
+
+/**
+ * CardinalityTest provides tests for the {@link Cardinality} of the RUBiS relations.
+ */
+public class CardinalityTest {
+
+  @After
+  public void resetProperties() {
+    DataModel.setProperties(new Properties());
+  }
+
+  /**
+   * The default cardinalities keep the original id layout.
+   */
+  @Test
+  public void testDefaultLayout() {
+    assertThat(User.getItemIds(2).get(0), is(10));
+    assertThat(User.getItemIds(2).size(), is(5));
+    assertThat(User.getFirstBidId(2), is(30));
+    assertThat(Item.getBidIds(14), is(new IdRange(42, 3)));
+    assertThat(User.getFirstCommentId(2), is(20));
+    assertThat(Item.getCommentIds(14), is(new IdRange(28, 2)));
+    assertThat(Bid.getUserId(44), is(2));
+    assertThat(Bid.getItemId(44), is(14));
+  }
+
+  /**
+   * Skewed counts stay within their bounds, are the same on every call and the
+   * id mappings stay invertible.
+   */
+  @Test
+  public void testSkewedLayoutIsInvertible() {
+    Properties props = new Properties();
+    props.setProperty("rubis.item.bids", "3");
+    props.setProperty("rubis.item.bids.distribution", "zipfian");
+    props.setProperty("rubis.item.bids.max", "1000");
+    props.setProperty("rubis.item.comments.distribution", "uniform");
+    DataModel.setProperties(props);
+
+    int largest = 0;
+    for (int userId = 0; userId < 200; userId++) {
+      IdRange itemIds = User.getItemIds(userId);
+      for (int i = 0; i < itemIds.size(); i++) {
+        int itemId = itemIds.get(i);
+        assertThat(Item.getUserId(itemId), is(userId));
+
+        IdRange bidIds = Item.getBidIds(itemId);
+        assertThat(Item.getBidIds(itemId), is(bidIds));
+        assertTrue(bidIds.size() <= 1000);
+        largest = Math.max(largest, bidIds.size());
+        for (int j = 0; j < bidIds.size(); j++) {
+          assertThat(Bid.getItemId(bidIds.get(j)), is(itemId));
+          assertThat(Bid.getUserId(bidIds.get(j)), is(userId));
+        }
+
+        IdRange commentIds = Item.getCommentIds(itemId);
+        for (int j = 0; j < commentIds.size(); j++) {
+          assertThat(Comment.getItemId(commentIds.get(j)), is(itemId));
+          assertThat(Comment.getUserId(commentIds.get(j)), is(userId));
+        }
+      }
+    }
+    assertTrue("no hot item among 1000 items", largest > 100);
+  }
+
+  private static double mean(Cardinality cardinality, int parents) {
+    long total = 0;
+    for (int parentId = 0; parentId < parents; parentId++) {
+      total += cardinality.count(parentId);
+    }
+    return total / (double) parents;
+  }
+
+  /**
+   * The count of zipfian is its mean, with a small default max.
+   */
+  @Test
+  public void testZipfianMeanIsCount() {
+    Properties props = new Properties();
+    props.setProperty("rubis.user.items", "5");
+    props.setProperty("rubis.user.items.distribution", "zipfian");
+    Cardinality items = Cardinality.fromProperties(props, "rubis.user.items", 5);
+
+    assertThat(items.max(), is(21));
+    assertTrue("mean " + mean(items, 100000), Math.abs(mean(items, 100000) - 5) < 0.25);
+  }
+
+  @Test
+  public void testExponentialMeanIsCount() {
+    Properties props = new Properties();
+    props.setProperty("rubis.item.bids", "3");
+    props.setProperty("rubis.item.bids.distribution", "exponential");
+    Cardinality bids = Cardinality.fromProperties(props, "rubis.item.bids", 3);
+
+    assertTrue(bids.max() <= 30);
+    assertTrue("mean " + mean(bids, 100000), Math.abs(mean(bids, 100000) - 3) < 0.15);
+  }
+
+  /**
+   * An explicit max bounds zipfian, the count does not have to be reachable.
+   */
+  @Test
+  public void testZipfianExplicitMax() {
+    Properties props = new Properties();
+    props.setProperty("rubis.item.bids", "3");
+    props.setProperty("rubis.item.bids.distribution", "zipfian");
+    props.setProperty("rubis.item.bids.zipfian.constant", "3");
+    props.setProperty("rubis.item.bids.max", "50");
+    assertTrue(Cardinality.fromProperties(props, "rubis.item.bids", 3).max() <= 50);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZipfianUnreachableMean() {
+    Properties props = new Properties();
+    props.setProperty("rubis.item.bids", "3");
+    props.setProperty("rubis.item.bids.distribution", "zipfian");
+    props.setProperty("rubis.item.bids.zipfian.constant", "3");
+    Cardinality.fromProperties(props, "rubis.item.bids", 3);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyHistogram() throws IOException {
+    File file = File.createTempFile("bids", ".histogram");
+    file.deleteOnExit();
+    FileWriter out = new FileWriter(file);
+    try {
+      out.write("BlockSize\t10\n");
+    } finally {
+      out.close();
+    }
+
+    Properties props = new Properties();
+    props.setProperty("rubis.item.bids.distribution", "histogram");
+    props.setProperty("rubis.item.bids.histogram", file.getPath());
+    Cardinality.fromProperties(props, "rubis.item.bids", 3);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * ClockCacheTest provides tests for the eviction and invalidation of the
+ * {@link ClockCache}.
+ */
+public class ClockCacheTest {
+
+  @Test
+  public void testBoundedSize() {
+    ClockCache<Integer, String> cache = new ClockCache<Integer, String>(10, 4);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "v" + i, cache.stamp(i));
+    }
+    assertThat(cache.size(), is(10));
+  }
+
+  /**
+   * A referenced entry gets a second chance, the first unreferenced one is
+   * evicted.
+   */
+  @Test
+  public void testReferencedEntrySurvives() {
+    ClockCache<Integer, String> cache = new ClockCache<Integer, String>(2, 1);
+    cache.put(1, "a", cache.stamp(1));
+    cache.put(2, "b", cache.stamp(2));
+    assertThat(cache.get(1), is("a"));
+
+    cache.put(3, "c", cache.stamp(3));
+    assertThat(cache.get(1), is("a"));
+    assertNull(cache.get(2));
+    assertThat(cache.get(3), is("c"));
+  }
+
+  @Test
+  public void testInvalidate() {
+    ClockCache<Integer, String> cache = new ClockCache<Integer, String>(4, 1);
+    cache.put(1, "a", cache.stamp(1));
+    cache.invalidate(1);
+    assertNull(cache.get(1));
+    assertThat(cache.size(), is(0));
+  }
+
+  /**
+   * A value read before a concurrent invalidation is not cached.
+   */
+  @Test
+  public void testStaleValueIsDropped() {
+    ClockCache<Integer, String> cache = new ClockCache<Integer, String>(4, 1);
+    long stamp = cache.stamp(1);
+    cache.invalidate(1);
+    cache.put(1, "stale", stamp);
+    assertNull(cache.get(1));
+
+    cache.put(1, "fresh", cache.stamp(1));
+    assertThat(cache.get(1), is("fresh"));
+  }
+}
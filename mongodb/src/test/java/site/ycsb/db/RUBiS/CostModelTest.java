@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * CostModelTest provides tests for the calibration of the RUBiS {@link CostModel}.
+ */
+public class CostModelTest {
+
+  private static final double[] DOCUMENTS = {10, 200, 35, 80, 500, 3};
+  private static final double[] ROUND_TRIPS = {1, 3, 2, 2, 4, 1};
+  private static final double[] BYTES = {2000, 90000, 7000, 16000, 150000, 400};
+
+  /**
+   * Latencies that follow a linear model give back its coefficients.
+   */
+  @Test
+  public void testFitRecoversCoefficients() {
+    CostModel model = new CostModel(150, 0.8, 120, 0.002);
+    double[] latencies = new double[DOCUMENTS.length];
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = model.cost(DOCUMENTS[i], ROUND_TRIPS[i], BYTES[i]);
+    }
+
+    CostModel fitted = CostModel.fit(DOCUMENTS, ROUND_TRIPS, BYTES, latencies);
+    assertEquals(150, fitted.getFixed(), 1e-6);
+    assertEquals(0.8, fitted.getPerDocument(), 1e-9);
+    assertEquals(120, fitted.getPerRoundTrip(), 1e-6);
+    assertEquals(0.002, fitted.getPerByte(), 1e-12);
+    assertEquals(1, fitted.rSquared(DOCUMENTS, ROUND_TRIPS, BYTES, latencies), 1e-9);
+  }
+
+  /**
+   * A feature that is the same for every plan gets no cost of its own.
+   */
+  @Test
+  public void testConstantFeature() {
+    double[] roundTrips = {2, 2, 2, 2, 2, 2};
+    double[] latencies = new double[DOCUMENTS.length];
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = 100 + 2 * DOCUMENTS[i] + 50 * roundTrips[i];
+    }
+
+    CostModel fitted = CostModel.fit(DOCUMENTS, roundTrips, new double[DOCUMENTS.length], latencies);
+    assertThat(fitted.getPerRoundTrip(), is(0.0));
+    assertEquals(2, fitted.getPerDocument(), 1e-9);
+    assertEquals(200, fitted.getFixed(), 1e-6);
+  }
+
+  @Test
+  public void testKendallTau() {
+    assertThat(CostModel.kendallTau(new double[] {1, 2, 3}, new double[] {10, 20, 30}), is(1.0));
+    assertThat(CostModel.kendallTau(new double[] {1, 2, 3}, new double[] {3, 2, 1}), is(-1.0));
+    assertEquals(2.0 / 3, CostModel.kendallTau(new double[] {1, 2, 3, 4}, new double[] {1, 3, 2, 4}), 1e-12);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.After;
+import org.junit.Test;
+
+import site.ycsb.db.RUBiS.DataModel.Bid;
+import site.ycsb.db.RUBiS.DataModel.DocumentGenerator;
+import site.ycsb.db.RUBiS.DataModel.Item;
+import site.ycsb.db.RUBiS.DataModel.User;
+
+/**
+ * DataModelTest provides tests for the documents generated by the {@link DataModel}.
+ */
+public class DataModelTest {
+
+  @After
+  public void resetProperties() {
+    DataModel.setProperties(new Properties());
+  }
+
+  /**
+   * Embedded copies of an entity must hold the same values as its top-level document.
+   */
+  @Test
+  public void testEmbeddedDocumentsMatchBaseDocuments() {
+    Document item = Item.generateDocument(7);
+    Document bidsItems = Bid.generateDocumentBidsItems(Item.getBidIds(7).get(0));
+    assertThat((Document) bidsItems.get("items"), is(item));
+
+    Document user = User.generateDocument(Item.getUserId(7));
+    Document itemsUsers = Item.generateDocumentItemsUsers(7);
+    assertThat((Document) itemsUsers.get("users"), is(user));
+    assertThat(itemsUsers.get("productTitle"), is(item.get("productTitle")));
+  }
+
+  /**
+   * The raw generator must produce the same documents as the Document based generator.
+   */
+  @Test
+  public void testRawDocumentsMatchDocuments() {
+    Map<String, Set<Document>> documents = new DocumentGenerator(0, 0).createRecords(0);
+    Map<String, List<RawBsonDocument>> rawDocuments = new RawDocumentGenerator().createRecords(0);
+
+    assertThat(rawDocuments.keySet(), is(documents.keySet()));
+    DocumentCodec codec = new DocumentCodec();
+    for (Map.Entry<String, List<RawBsonDocument>> entry : rawDocuments.entrySet()) {
+      Set<Document> decoded = new HashSet<Document>();
+      for (RawBsonDocument raw : entry.getValue()) {
+        decoded.add(raw.decode(codec));
+      }
+      assertThat(entry.getKey(), decoded, is(documents.get(entry.getKey())));
+    }
+  }
+
+  /**
+   * Only the collections listed in rubis.collections are generated.
+   */
+  @Test
+  public void testCollectionSelection() {
+    Properties props = new Properties();
+    props.setProperty("rubis.collections", "BidsItems, ItemsComments");
+    DataModel.setProperties(props);
+
+    Set<String> expected = new HashSet<String>();
+    expected.add("BidsItems");
+    expected.add("ItemsComments");
+
+    assertThat(new DocumentGenerator(0, 0).createRecords(0).keySet(), is(expected));
+    assertThat(new RawDocumentGenerator().createRecords(0).keySet(), is(expected));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownCollection() {
+    DataModel.parseCollections("Users,Auctions");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoRegions() {
+    Properties props = new Properties();
+    props.setProperty("rubis.regions", "0");
+    DataModel.setProperties(props);
+  }
+
+  /**
+   * The default bounds of the skewed cardinalities fit realistic loads.
+   */
+  @Test
+  public void testSkewedLoadFitsIdRange() {
+    Properties props = new Properties();
+    props.setProperty("recordcount", "1000000");
+    props.setProperty("rubis.user.items.distribution", "zipfian");
+    props.setProperty("rubis.item.bids.distribution", "zipfian");
+    props.setProperty("rubis.item.comments.distribution", "exponential");
+    DataModel.setProperties(props);
+  }
+
+  /**
+   * Ids follow from the absolute user id, a load starting at insertstart
+   * reaches larger ids than its recordcount.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testIdRangeCountsInsertStart() {
+    Properties props = new Properties();
+    props.setProperty("recordcount", "1000");
+    props.setProperty("insertstart", "200000000");
+    props.setProperty("insertcount", "1000");
+    DataModel.setProperties(props);
+  }
+
+  /**
+   * A user without items has no first bid or comment to start a plan from.
+   */
+  @Test
+  public void testUserWithoutItems() {
+    Properties props = new Properties();
+    props.setProperty("rubis.user.items.distribution", "zipfian");
+    DataModel.setProperties(props);
+
+    int userId = 0;
+    while (!User.getItemIds(userId).isEmpty()) {
+      userId++;
+    }
+    try {
+      User.getFirstBidId(userId);
+      fail("User " + userId + " has no bids");
+    } catch (IdRange.EmptyRangeException e) {
+      // expected
+    }
+    try {
+      User.getItemIds(userId).first();
+      fail("User " + userId + " has no items");
+    } catch (IdRange.EmptyRangeException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import site.ycsb.db.RUBiS.DataModel.DocumentGenerator;
+
+/**
+ * DocumentGeneratorTest provides tests for the user range partitioning of the
+ * {@link DocumentGenerator}.
+ */
+public class DocumentGeneratorTest {
+
+  /**
+   * The thread ranges must be disjoint and cover [insertstart, insertstart + insertcount).
+   */
+  @Test
+  public void testForThreadCoversInsertRange() {
+    Properties props = new Properties();
+    props.setProperty("recordcount", "1000");
+    props.setProperty("insertstart", "100");
+    props.setProperty("insertcount", "503");
+
+    int threadCount = 7;
+    int expectedStart = 100;
+    for (int threadId = 0; threadId < threadCount; threadId++) {
+      DocumentGenerator generator = DocumentGenerator.forThread(props, threadId, threadCount);
+      assertThat(generator.getStartUserId(), is(expectedStart));
+      expectedStart = generator.getEndUserId();
+    }
+    assertThat(expectedStart, is(603));
+  }
+
+  /**
+   * A generator hands out every user of its range exactly once.
+   */
+  @Test
+  public void testNextUserId() {
+    DocumentGenerator generator = new DocumentGenerator(10, 3);
+    assertThat(generator.nextUserId(), is(10));
+    assertThat(generator.nextUserId(), is(11));
+    assertThat(generator.nextUserId(), is(12));
+    assertFalse(generator.hasNext());
+  }
+}
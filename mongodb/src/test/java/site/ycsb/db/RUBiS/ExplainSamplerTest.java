@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.bson.Document;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import site.ycsb.measurements.Measurements;
+
+/**
+ * ExplainSamplerTest provides tests for reading the explain results of the
+ * RUBiS query plans with the {@link ExplainSampler}.
+ */
+public class ExplainSamplerTest {
+
+  @BeforeClass
+  public static void setUp() {
+    Measurements.setProperties(new Properties());
+  }
+
+  /**
+   * An indexed find reports its own statistics and the index of its winning plan.
+   */
+  @Test
+  public void testFind() {
+    Document explain = new Document("queryPlanner", new Document("winningPlan",
+        new Document("stage", "FETCH").append("inputStage",
+            new Document("stage", "IXSCAN").append("indexName", "id_item_1")
+                .append("keyPattern", new Document("id_item", 1)))))
+        .append("executionStats", new Document("nReturned", 3).append("totalKeysExamined", 3)
+            .append("totalDocsExamined", 3));
+
+    ExplainSampler.Stats stats = ExplainSampler.parse(explain);
+    assertThat(stats.docsExamined, is(3L));
+    assertThat(stats.keysExamined, is(3L));
+    assertThat(stats.returned, is(3L));
+    assertThat(stats.plan, is("id_item_1"));
+  }
+
+  @Test
+  public void testCollectionScan() {
+    Document explain = new Document("queryPlanner", new Document("winningPlan",
+        new Document("stage", "COLLSCAN").append("filter", new Document("id_region", new Document("$eq", 2)))))
+        .append("executionStats", new Document("nReturned", 40).append("totalKeysExamined", 0)
+            .append("totalDocsExamined", 100000));
+
+    ExplainSampler.Stats stats = ExplainSampler.parse(explain);
+    assertThat(stats.docsExamined, is(100000L));
+    assertThat(stats.plan, is("COLLSCAN"));
+  }
+
+  /**
+   * The $lookup stages of an aggregation add the documents and indexes of the
+   * joined collection.
+   */
+  @Test
+  public void testLookup() {
+    Document cursor = new Document("$cursor", new Document("queryPlanner",
+        new Document("winningPlan", new Document("stage", "IDHACK")))
+        .append("executionStats", new Document("nReturned", 1).append("totalKeysExamined", 1)
+            .append("totalDocsExamined", 1)));
+    Document lookup = new Document("$lookup", new Document("from", "Bids").append("as", "UsersBids"))
+        .append("totalDocsExamined", 12L).append("totalKeysExamined", 12L).append("collectionScans", 0L)
+        .append("indexesUsed", Arrays.asList("id_user_1"));
+    Document explain = new Document("stages", Arrays.asList(cursor, lookup));
+
+    ExplainSampler.Stats stats = ExplainSampler.parse(explain);
+    assertThat(stats.docsExamined, is(13L));
+    assertThat(stats.keysExamined, is(13L));
+    assertThat(stats.returned, is(1L));
+    assertThat(stats.plan, is("IDHACK+id_user_1"));
+  }
+
+  /**
+   * The winning plan of a sample is counted under its own name.
+   */
+  @Test
+  public void testRecordPlan() throws InterruptedException {
+    ExplainSampler.Stats stats = new ExplainSampler.Stats();
+    stats.docsExamined = 3;
+    stats.returned = 3;
+    stats.plan = "id_item_1";
+
+    ExplainSampler sampler = new ExplainSampler(1, 1);
+    try {
+      sampler.record("ViewBidHistory", stats);
+    } finally {
+      sampler.close();
+    }
+    assertThat(Measurements.getMeasurements().getSummary(), containsString("ViewBidHistory-PLAN-id_item_1"));
+    assertThat(Measurements.getMeasurements().getSummary(), containsString("ViewBidHistory-DOCS-EXAMINED"));
+  }
+}
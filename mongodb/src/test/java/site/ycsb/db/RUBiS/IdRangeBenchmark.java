@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import site.ycsb.db.RUBiS.DataModel.Item;
+import site.ycsb.db.RUBiS.DataModel.User;
+
+/**
+ * Compares the garbage of the {@link IdRange} id mapping with the boxed id lists
+ * it replaced. Walks the items, bids and comments of every user the way the
+ * generators do, and reports nanoseconds and allocated bytes per user.
+ * <p>
+ * Run with <code>java -cp ... site.ycsb.db.RUBiS.IdRangeBenchmark [users] [rounds]</code>.
+ * The first rounds warm up the JIT; once the mapping is compiled the ranges are
+ * usually scalar replaced and the range walk allocates nothing.
+ * </p>
+ */
+public final class IdRangeBenchmark {
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private IdRangeBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    int users = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    long sink = 0;
+    for (int round = 0; round < rounds; round++) {
+      sink += run("lists ", users, false);
+      sink += run("ranges", users, true);
+    }
+    System.out.println("checksum " + sink);
+  }
+
+  private static long run(String name, int users, boolean ranges) {
+    long threadId = Thread.currentThread().getId();
+    long bytes = THREADS.getThreadAllocatedBytes(threadId);
+    long st = System.nanoTime();
+
+    long sum = 0;
+    for (int userId = 0; userId < users; userId++) {
+      sum += ranges ? walkRanges(userId) : walkLists(userId);
+    }
+
+    long ns = System.nanoTime() - st;
+    bytes = THREADS.getThreadAllocatedBytes(threadId) - bytes;
+    System.out.printf("%s %8.1f ns/user %8.1f bytes/user%n", name, (double) ns / users, (double) bytes / users);
+    return sum;
+  }
+
+  private static long walkRanges(int userId) {
+    long sum = 0;
+    IdRange itemIds = User.getItemIds(userId);
+    for (int i = 0; i < itemIds.size(); i++) {
+      int itemId = itemIds.get(i);
+      IdRange bidIds = Item.getBidIds(itemId);
+      for (int j = 0; j < bidIds.size(); j++) {
+        sum += bidIds.get(j);
+      }
+      IdRange commentIds = Item.getCommentIds(itemId);
+      for (int j = 0; j < commentIds.size(); j++) {
+        sum += commentIds.get(j);
+      }
+    }
+    return sum + User.getFirstBidId(userId);
+  }
+
+  /**
+   * The previous mapping: a new list of boxed ids per call.
+   */
+  private static long walkLists(int userId) {
+    long sum = 0;
+    for (int itemId : toList(User.getItemIds(userId))) {
+      for (int bidId : toList(Item.getBidIds(itemId))) {
+        sum += bidId;
+      }
+      for (int commentId : toList(Item.getCommentIds(itemId))) {
+        sum += commentId;
+      }
+    }
+    return sum + toList(Item.getBidIds(User.getItemIds(userId).first())).get(0);
+  }
+
+  private static List<Integer> toList(IdRange range) {
+    List<Integer> ids = new ArrayList<Integer>(range.size());
+    for (int i = 0; i < range.size(); i++) {
+      ids.add(range.get(i));
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * JoinExecutorTest provides tests for collecting the keys of a hop, stitching
+ * the children into their parents and splitting the keys into batches.
+ */
+public class JoinExecutorTest {
+
+  @After
+  public void tearDown() {
+    JoinExecutor.setProperties(new Properties());
+  }
+
+  private static Map<Object, List<Document>> children(String foreignKey, Document... documents) {
+    Map<Object, List<Document>> children = new HashMap<Object, List<Document>>();
+    JoinExecutor.group(children, Arrays.asList(documents), foreignKey);
+    return children;
+  }
+
+  private static List<Object> range(int size) {
+    List<Object> keys = new ArrayList<Object>();
+    for (int i = 0; i < size; i++) {
+      keys.add(i);
+    }
+    return keys;
+  }
+
+  private static void setProperties(int batchSize, int parallelism) {
+    Properties props = new Properties();
+    props.setProperty(JoinExecutor.BATCH_SIZE_PROPERTY, Integer.toString(batchSize));
+    props.setProperty(JoinExecutor.PARALLELISM_PROPERTY, Integer.toString(parallelism));
+    JoinExecutor.setProperties(props);
+  }
+
+  /**
+   * The elements of array-valued local keys are joined one by one, each key is
+   * queried once and a parent without the key gets no children.
+   */
+  @Test
+  public void testArrayKeys() {
+    Document first = new Document("_id", 1).append("bids", Arrays.asList(10, 11, 10));
+    Document second = new Document("_id", 2).append("bids", Arrays.asList(11, 12));
+    Document third = new Document("_id", 3);
+    List<Document> level = Arrays.asList(first, second, third);
+    JoinExecutor.Hop hop = new JoinExecutor.Hop("Bids", "bids", "_id");
+
+    assertThat(JoinExecutor.keys(level, hop), is(Arrays.<Object>asList(10, 11, 12)));
+
+    Document bid10 = new Document("_id", 10);
+    Document bid11 = new Document("_id", 11);
+    Document bid12 = new Document("_id", 12);
+    List<Document> next = JoinExecutor.stitch(level, hop, children("_id", bid10, bid11, bid12));
+
+    assertThat(next.size(), is(3));
+    assertThat(first.get("Bids"), is((Object) Arrays.asList(bid10, bid11)));
+    assertThat(second.get("Bids"), is((Object) Arrays.asList(bid11, bid12)));
+    assertThat(third.get("Bids"), is((Object) Collections.emptyList()));
+  }
+
+  /**
+   * A scalar local key joins all children with that foreign key.
+   */
+  @Test
+  public void testScalarKeys() {
+    Document seller = new Document("_id", 1);
+    Document buyer = new Document("_id", 2);
+    List<Document> level = Arrays.asList(seller, buyer);
+    JoinExecutor.Hop hop = new JoinExecutor.Hop("Items", "_id", "seller");
+
+    assertThat(JoinExecutor.keys(level, hop), is(Arrays.<Object>asList(1, 2)));
+
+    Document item1 = new Document("_id", 100).append("seller", 1);
+    Document item2 = new Document("_id", 101).append("seller", 1);
+    JoinExecutor.stitch(level, hop, children("seller", item1, item2));
+
+    assertThat(seller.get("Items"), is((Object) Arrays.asList(item1, item2)));
+    assertThat(buyer.get("Items"), is((Object) Collections.emptyList()));
+  }
+
+  /**
+   * Without parallel cursors the keys are only split by the batch size.
+   */
+  @Test
+  public void testBatchSize() {
+    setProperties(1000, 3);
+    List<Object> keys = range(2501);
+
+    List<List<Object>> batches = JoinExecutor.batches(keys, false);
+    assertThat(batches.size(), is(3));
+    assertThat(batches.get(0).size(), is(834));
+    assertThat(batches.get(1).size(), is(834));
+    assertThat(batches.get(2).size(), is(833));
+
+    assertThat(JoinExecutor.batches(range(1000), false).size(), is(1));
+    assertThat(JoinExecutor.batches(range(1001), false).size(), is(2));
+  }
+
+  /**
+   * With parallel cursors a hop is split into at least as many batches as
+   * cursors, but never into empty batches.
+   */
+  @Test
+  public void testParallelBatches() {
+    setProperties(1000, 3);
+
+    List<List<Object>> batches = JoinExecutor.batches(range(10), true);
+    assertThat(batches.size(), is(3));
+    assertThat(batches.get(0), is(range(10).subList(0, 4)));
+    assertThat(batches.get(1), is(range(10).subList(4, 8)));
+    assertThat(batches.get(2), is(range(10).subList(8, 10)));
+
+    assertThat(JoinExecutor.batches(range(2), true).size(), is(2));
+    assertThat(JoinExecutor.batches(range(1), true).size(), is(1));
+
+    batches = JoinExecutor.batches(range(2501), true);
+    assertThat(batches.size(), is(3));
+    assertThat(batches.get(2).size(), is(833));
+
+    setProperties(1000, 4);
+    List<Object> keys = range(2501);
+    batches = JoinExecutor.batches(keys, true);
+    assertThat(batches.size(), is(4));
+    List<Object> joined = new ArrayList<Object>();
+    for (List<Object> batch : batches) {
+      assertThat(batch.size() <= 1000, is(true));
+      joined.addAll(batch);
+    }
+    assertThat(joined, is(keys));
+  }
+}
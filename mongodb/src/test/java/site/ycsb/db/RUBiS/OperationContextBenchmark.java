@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import java.lang.management.ManagementFactory;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import com.mongodb.MongoClient;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Compares the client-side cost of preparing a query with and without the
+ * {@link OperationContext}: resolving the collection handles, the raw handle of
+ * a drained cursor and the _id filter, then building the find. Nothing is sent,
+ * so no server is needed. Reports nanoseconds and allocated bytes per query.
+ * <p>
+ * Run with <code>java -cp ... site.ycsb.db.RUBiS.OperationContextBenchmark [queries] [rounds]</code>.
+ * The first rounds warm up the JIT.
+ * </p>
+ */
+public final class OperationContextBenchmark {
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private static final String[] COLLECTIONS = {"BidsItems", "ItemsUsersRegions", "ItemsComments"};
+
+  private OperationContextBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    int queries = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    MongoClient client = new MongoClient();
+    try {
+      MongoDatabase database = client.getDatabase("rubis").withReadPreference(ReadPreference.primary())
+          .withWriteConcern(WriteConcern.ACKNOWLEDGED);
+
+      long sink = 0;
+      for (int round = 0; round < rounds; round++) {
+        sink += run("per query", database, queries, false);
+        sink += run("context  ", database, queries, true);
+      }
+      System.out.println("checksum " + sink);
+    } finally {
+      client.close();
+    }
+  }
+
+  private static long run(String name, MongoDatabase database, int queries, boolean context) {
+    long threadId = Thread.currentThread().getId();
+    long bytes = THREADS.getThreadAllocatedBytes(threadId);
+    long st = System.nanoTime();
+
+    long sum = 0;
+    for (int i = 0; i < queries; i++) {
+      String collection = COLLECTIONS[i % COLLECTIONS.length];
+      sum += (context ? withContext(database, collection, i) : perQuery(database, collection, i)).hashCode();
+    }
+
+    long ns = System.nanoTime() - st;
+    bytes = THREADS.getThreadAllocatedBytes(threadId) - bytes;
+    System.out.printf("%s %8.1f ns/query %8.1f bytes/query%n", name, (double) ns / queries,
+        (double) bytes / queries);
+    return sum;
+  }
+
+  /**
+   * The previous preparation: new handles and a new filter per query.
+   */
+  private static FindIterable<RawBsonDocument> perQuery(MongoDatabase database, String name, int id) {
+    MongoCollection<Document> collection = database.getCollection(name);
+    return collection.withDocumentClass(RawBsonDocument.class).find(new Document("_id", id));
+  }
+
+  private static FindIterable<RawBsonDocument> withContext(MongoDatabase database, String name, int id) {
+    OperationContext context = OperationContext.of(database);
+    MongoCollection<Document> collection = context.collection(name);
+    return OperationContext.raw(collection).find(context.filter("_id", id));
+  }
+}
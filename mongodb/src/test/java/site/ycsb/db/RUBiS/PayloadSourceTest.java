@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import site.ycsb.db.RUBiS.DataModel.Entity;
+
+/**
+ * PayloadSourceTest provides tests for the {@link PayloadSource} implementations.
+ */
+public class PayloadSourceTest {
+
+  /**
+   * The deterministic source derives a value from (seed, entity, id, field) only.
+   */
+  @Test
+  public void testDeterministicPayload() {
+    Properties props = new Properties();
+    props.setProperty("rubis.payload", "deterministic");
+    props.setProperty("rubis.seed", "42");
+
+    PayloadSource first = PayloadSource.fromProperties(props);
+    PayloadSource second = PayloadSource.fromProperties(props);
+
+    String value = first.alphanumeric(Entity.USER, 3, "firstName", 20);
+    assertThat(value.length(), is(20));
+    assertThat(value.matches("[A-Za-z0-9]+"), is(true));
+    assertThat(second.alphanumeric(Entity.USER, 3, "firstName", 20), is(value));
+    assertThat(first.alphanumeric(Entity.USER, 4, "firstName", 20), is(not(value)));
+    assertThat(first.alphanumeric(Entity.USER, 3, "lastName", 20), is(not(value)));
+  }
+}
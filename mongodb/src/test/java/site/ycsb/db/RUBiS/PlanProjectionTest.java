@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.bson.BsonDocument;
+import org.bson.conversions.Bson;
+import org.junit.After;
+import org.junit.Test;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+
+/**
+ * PlanProjectionTest checks the stages the plans send with and without
+ * projections.
+ */
+public class PlanProjectionTest {
+
+  @After
+  public void resetProperties() {
+    PlanProjection.setProperties(new Properties());
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    Bson lookup = PlanProjection.lookup("ItemsUsers", "id_user", "users._id", PlanProjection.EMBEDDED_USER, "UsersBids");
+    assertThat(render(lookup), is(render(Aggregates.lookup("ItemsUsers", "id_user", "users._id", "UsersBids"))));
+
+    List<Bson> pipeline = PlanProjection.pipeline(PlanProjection.BID, Aggregates.match(Filters.eq("_id", 1)));
+    assertThat(pipeline.size(), is(1));
+  }
+
+  @Test
+  public void testLookupProjectsJoinedDocuments() {
+    enable();
+
+    BsonDocument lookup = render(PlanProjection.lookup("ItemsUsers", "id_user", "users._id",
+        PlanProjection.EMBEDDED_USER, "UsersBids")).getDocument("$lookup");
+    assertThat(lookup.getString("localField").getValue(), is("id_user"));
+    assertThat(lookup.getString("foreignField").getValue(), is("users._id"));
+    assertThat(lookup.getArray("pipeline").get(0).asDocument(),
+        is(render(Aggregates.project(PlanProjection.EMBEDDED_USER))));
+  }
+
+  @Test
+  public void testPipelineEndsWithProject() {
+    enable();
+
+    List<Bson> pipeline = PlanProjection.pipeline(PlanProjection.BID, Aggregates.match(Filters.eq("_id", 1)));
+    assertThat(pipeline.size(), is(2));
+    assertThat(render(pipeline.get(1)), is(render(Aggregates.project(PlanProjection.BID))));
+  }
+
+  /**
+   * In a $project stage $slice is an expression, not a find projection.
+   */
+  @Test
+  public void testCommentsSliceAsExpression() {
+    BsonDocument comments = render(PlanProjection.ITEM_COMMENTS_STAGE).getDocument("comments");
+    assertThat(comments.getArray("$slice").get(0).asString().getValue(), is("$comments"));
+    assertThat(comments.getArray("$slice").get(1).asInt32().getValue(), is(PlanProjection.PAGE_SIZE));
+  }
+
+  private static void enable() {
+    Properties props = new Properties();
+    props.setProperty(PlanProjection.PROPERTY, "true");
+    PlanProjection.setProperties(props);
+  }
+
+  private static BsonDocument render(Bson bson) {
+    return bson.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.After;
+import org.junit.Test;
+
+import site.ycsb.db.RUBiS.ResultConsumer.VerificationException;
+
+/**
+ * ResultConsumerTest checks the results of the plans that drain a cursor and
+ * their verification.
+ */
+public class ResultConsumerTest {
+
+  @After
+  public void resetProperties() {
+    ResultConsumer.setProperties(new Properties());
+  }
+
+  private static void setMode(String mode) {
+    Properties props = new Properties();
+    props.setProperty(ResultConsumer.MODE_PROPERTY, mode);
+    ResultConsumer.setProperties(props);
+  }
+
+  /**
+   * An empty cursor is no result, a plan found nothing.
+   */
+  @Test
+  public void testCountedEmpty() {
+    assertThat(ResultConsumer.counted(0, null), is(nullValue()));
+  }
+
+  @Test
+  public void testCounted() {
+    Document result = ResultConsumer.counted(3, null);
+    assertThat(result.getInteger(ResultConsumer.COUNT_FIELD), is(3));
+    assertThat(result.containsKey(ResultConsumer.RAW_FIELD), is(false));
+  }
+
+  /**
+   * In raw mode the documents of the cursor are handed to the caller.
+   */
+  @Test
+  public void testCountedKeepsRawDocuments() {
+    List<RawBsonDocument> kept = Arrays.asList(
+        new RawBsonDocument(new BsonDocument("_id", new BsonInt32(1)), new BsonDocumentCodec()),
+        new RawBsonDocument(new BsonDocument("_id", new BsonInt32(2)), new BsonDocumentCodec()));
+
+    Document result = ResultConsumer.counted(kept.size(), kept);
+    assertThat(result.getInteger(ResultConsumer.COUNT_FIELD), is(2));
+    assertThat(result.get(ResultConsumer.RAW_FIELD), is((Object) kept));
+  }
+
+  /**
+   * The keys of the next query are taken from decoded documents, through
+   * embedded documents and the first element of arrays.
+   */
+  @Test
+  public void testValue() {
+    Document item = new Document("_id", 1)
+        .append("users", new Document("_id", 2))
+        .append("comments", Arrays.asList(new Document("id_user", 3), new Document("id_user", 4)));
+
+    assertThat(ResultConsumer.value(item, "_id"), is((Object) 1));
+    assertThat(ResultConsumer.value(item, "users", "_id"), is((Object) 2));
+    assertThat(ResultConsumer.value(item, "comments", "id_user"), is((Object) 3));
+    assertThat(ResultConsumer.value(item, "bids", "_id"), is(nullValue()));
+    assertThat(ResultConsumer.value(null, "_id"), is(nullValue()));
+  }
+
+  /**
+   * The same keys are decoded from a raw document, as the values the document
+   * codec would decode.
+   */
+  @Test
+  public void testRawValue() {
+    BsonDocument item = new BsonDocument("_id", new BsonInt32(1))
+        .append("users", new BsonDocument("_id", new BsonInt32(2)).append("nickname", new BsonString("nick")))
+        .append("comments", new BsonArray(Arrays.asList(
+            new BsonDocument("id_user", new BsonInt32(3)), new BsonDocument("id_user", new BsonInt32(4)))));
+    Document result = ResultConsumer.wrap(new RawBsonDocument(item, new BsonDocumentCodec()));
+
+    assertThat(ResultConsumer.value(result, "_id"), is((Object) 1));
+    assertThat(ResultConsumer.value(result, "users", "_id"), is((Object) 2));
+    assertThat(ResultConsumer.value(result, "users", "nickname"), is((Object) "nick"));
+    assertThat(ResultConsumer.value(result, "comments", "id_user"), is((Object) 3));
+    assertThat(ResultConsumer.value(result, "bids", "_id"), is(nullValue()));
+    assertThat(ResultConsumer.wrap(null), is(nullValue()));
+  }
+
+  @Test
+  public void testVerifyDocument() {
+    setMode("verify");
+    ResultConsumer.verify(new Document("_id", 1).append("productTitle", "title"), "ItemsUsers");
+  }
+
+  @Test
+  public void testVerifyCounted() {
+    setMode("verify");
+    ResultConsumer.verify(ResultConsumer.counted(5, null), "ItemsBids");
+  }
+
+  @Test(expected = VerificationException.class)
+  public void testVerifyNoResult() {
+    setMode("verify");
+    ResultConsumer.verify(ResultConsumer.counted(0, null), "ItemsBids");
+  }
+
+  @Test(expected = VerificationException.class)
+  public void testVerifyZeroCount() {
+    setMode("verify");
+    ResultConsumer.verify(new Document(ResultConsumer.COUNT_FIELD, 0), "ItemsBids");
+  }
+
+  /**
+   * A filter returned in place of a result has no _id.
+   */
+  @Test(expected = VerificationException.class)
+  public void testVerifyWithoutId() {
+    setMode("verify");
+    ResultConsumer.verify(new Document("items._id", 7), "ItemsBids");
+  }
+
+  @Test
+  public void testNoVerifyOutsideVerifyMode() {
+    setMode("count");
+    ResultConsumer.verify(null, "ItemsBids");
+    ResultConsumer.verify(new Document("items._id", 7), "ItemsBids");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownMode() {
+    setMode("print");
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.bson.RawBsonDocument;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * RubisExportTest checks that an export resumed after a crash writes the same
+ * dump files as an uninterrupted export.
+ */
+public class RubisExportTest {
+
+  private static final int RECORD_COUNT = 40;
+
+  /** Smaller than some documents, so that these are written directly. */
+  private static final int SMALL_BUFFER = 128;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void resetProperties() {
+    DataModel.setProperties(new Properties());
+  }
+
+  private static Properties props(File directory, int insertCount, int bufferSize) {
+    Properties props = new Properties();
+    props.setProperty("recordcount", String.valueOf(RECORD_COUNT));
+    props.setProperty("insertcount", String.valueOf(insertCount));
+    props.setProperty("rubis.payload", "deterministic");
+    props.setProperty("rubis.seed", "7");
+    props.setProperty("rubis.export.dir", directory.getPath());
+    props.setProperty("rubis.export.threads", "1");
+    props.setProperty("rubis.export.segmentsize", "10");
+    props.setProperty("rubis.export.buffersize", String.valueOf(bufferSize));
+    return props;
+  }
+
+  private static Properties load(File file) throws IOException {
+    Properties props = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      props.load(in);
+    } finally {
+      in.close();
+    }
+    return props;
+  }
+
+  private static void append(File file, byte[] bytes) throws IOException {
+    OutputStream out = new FileOutputStream(file, true);
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Crashes after the checkpoint of the second segment, with partial writes of
+   * the third segment in the dump files and a partial progress file, and then
+   * resumes. The dump files are cut back to their sizes at the checkpoint and end
+   * up byte-identical to those of an uninterrupted export.
+   */
+  @Test
+  public void testResume() throws Exception {
+    File reference = folder.newFolder("reference");
+    new RubisExport(props(reference, RECORD_COUNT, 1 << 20)).export();
+
+    File resumed = folder.newFolder("resumed");
+    RubisExport crashed = new RubisExport(props(resumed, 20, SMALL_BUFFER));
+    assertDirectWrites();
+    crashed.export();
+
+    File progressFile = new File(resumed, "export.progress");
+    Properties progress = load(progressFile);
+    assertThat(progress.getProperty("nextUserId"), is("20"));
+
+    File database = new File(resumed, "ycsb");
+    File[] files = database.listFiles();
+    assertThat(files.length > 0, is(true));
+    for (File file : files) {
+      String collection = file.getName().substring(0, file.getName().length() - ".bson".length());
+      assertThat(progress.getProperty(collection + ".bytes"), is(String.valueOf(file.length())));
+      append(file, new byte[] {42, 0, 0, 0, 2, 'x'});
+    }
+    append(new File(resumed, "export.progress.tmp"), "nextUserId=3".getBytes("UTF-8"));
+
+    new RubisExport(props(resumed, RECORD_COUNT, SMALL_BUFFER)).export();
+
+    progress = load(progressFile);
+    assertThat(progress.getProperty("nextUserId"), is(String.valueOf(RECORD_COUNT)));
+    assertThat(new File(resumed, "export.progress.tmp").exists(), is(false));
+
+    File[] expected = new File(reference, "ycsb").listFiles();
+    Arrays.sort(expected);
+    File[] actual = database.listFiles();
+    Arrays.sort(actual);
+    assertThat(actual.length, is(expected.length));
+    for (int i = 0; i < expected.length; i++) {
+      assertThat(actual[i].getName(), is(expected[i].getName()));
+      assertArrayEquals(actual[i].getName(), Files.readAllBytes(expected[i].toPath()),
+          Files.readAllBytes(actual[i].toPath()));
+    }
+  }
+
+  /**
+   * Checks that the small buffer holds some documents and is too small for
+   * others, so that the resumed export takes both paths.
+   */
+  private static void assertDirectWrites() {
+    boolean buffered = false;
+    boolean direct = false;
+    for (List<RawBsonDocument> documents : new RawDocumentGenerator().createRecords(0).values()) {
+      for (RawBsonDocument document : documents) {
+        int size = document.getByteBuffer().remaining();
+        buffered |= size <= SMALL_BUFFER;
+        direct |= size > SMALL_BUFFER;
+      }
+    }
+    assertThat(buffered, is(true));
+    assertThat(direct, is(true));
+  }
+}
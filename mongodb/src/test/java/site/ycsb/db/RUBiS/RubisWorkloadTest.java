@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import site.ycsb.ByteIterator;
+import site.ycsb.DB;
+import site.ycsb.Status;
+import site.ycsb.WorkloadException;
+import site.ycsb.generator.DiscreteGenerator;
+import site.ycsb.measurements.Measurements;
+
+/**
+ * RubisWorkloadTest provides tests for the operation mix of the {@link RubisWorkload}.
+ */
+public class RubisWorkloadTest {
+
+  @Test
+  public void testOperationMix() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("bidsusersproportion", "1");
+    props.setProperty("itemsbidsproportion", "0");
+
+    DiscreteGenerator chooser = RubisWorkload.createOperationChooser(props);
+    for (int i = 0; i < 100; i++) {
+      assertThat(chooser.nextString(), is("BidsUsers"));
+    }
+  }
+
+  /**
+   * Write operations need no query plan.
+   */
+  @Test
+  public void testWriteOperationMix() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(QueryPlans.MODEL_PROPERTY, "lookup");
+    props.setProperty("placebidproportion", "1");
+
+    DiscreteGenerator chooser = RubisWorkload.createOperationChooser(props);
+    for (int i = 0; i < 100; i++) {
+      assertThat(chooser.nextString(), is("PlaceBid"));
+    }
+  }
+
+  @Test
+  public void testDefaultOperation() throws Exception {
+    assertThat(RubisWorkload.createOperationChooser(new Properties()).nextString(), is("ItemsBids"));
+  }
+
+  /**
+   * The denormalized model has no plan for Regions->Users.
+   */
+  @Test(expected = WorkloadException.class)
+  public void testOperationWithoutPlan() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("regionsusersproportion", "0.5");
+    RubisWorkload.createOperationChooser(props);
+  }
+
+  @Test(expected = WorkloadException.class)
+  public void testUnknownModel() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(QueryPlans.MODEL_PROPERTY, "graph");
+    RubisWorkload.createOperationChooser(props);
+  }
+
+  /**
+   * Every distribution picks loaded users only.
+   */
+  @Test
+  public void testUserChooserRange() {
+    for (String distribution : new String[] {"uniform", "zipfian", "hotspot", "latest", "sequential"}) {
+      Properties props = new Properties();
+      props.setProperty("recordcount", "100");
+      props.setProperty("requestdistribution", distribution);
+
+      UserChooser chooser = UserChooser.fromProperties(props, 3, 4);
+      for (int i = 0; i < 1000; i++) {
+        int userId = chooser.nextUserId();
+        assertTrue(distribution + " chose " + userId, userId >= 0 && userId < 100);
+      }
+    }
+  }
+
+  /**
+   * An operation that finds nothing is counted, but does not stop the client
+   * thread.
+   */
+  @Test
+  public void testNotFoundContinues() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("recordcount", "10");
+    Measurements.setProperties(props);
+
+    RubisWorkload workload = new RubisWorkload();
+    workload.init(props);
+    Object threadState = workload.initThread(props, 0, 1);
+    DB db = new DB() {
+      @Override
+      public Status read(String table, String key, Set<String> fields, Map<String, ByteIterator> result) {
+        return Status.NOT_FOUND;
+      }
+
+      @Override
+      public Status scan(String table, String startkey, int recordcount, Set<String> fields,
+          Vector<HashMap<String, ByteIterator>> result) {
+        return Status.NOT_IMPLEMENTED;
+      }
+
+      @Override
+      public Status update(String table, String key, Map<String, ByteIterator> values) {
+        return Status.NOT_FOUND;
+      }
+
+      @Override
+      public Status insert(String table, String key, Map<String, ByteIterator> values) {
+        return Status.NOT_IMPLEMENTED;
+      }
+
+      @Override
+      public Status delete(String table, String key) {
+        return Status.NOT_IMPLEMENTED;
+      }
+    };
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(workload.doTransaction(db, threadState));
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.mongodb.Block;
+
+import site.ycsb.db.RUBiS.AsyncQueryPlan.Callback;
+
+/**
+ * SubscribersTest checks that the publishers complete their callback once.
+ */
+public class SubscribersTest {
+
+  /**
+   * Publishes the values synchronously once they are requested, stops when
+   * cancelled.
+   */
+  private static Publisher<Integer> publisher(final Integer... values) {
+    return new Publisher<Integer>() {
+      @Override
+      public void subscribe(final Subscriber<? super Integer> subscriber) {
+        final boolean[] cancelled = new boolean[1];
+        subscriber.onSubscribe(new Subscription() {
+          @Override
+          public void request(long n) {
+          }
+
+          @Override
+          public void cancel() {
+            cancelled[0] = true;
+          }
+        });
+        for (Integer value : values) {
+          if (!cancelled[0]) {
+            subscriber.onNext(value);
+          }
+        }
+        if (!cancelled[0]) {
+          subscriber.onComplete();
+        }
+      }
+    };
+  }
+
+  /**
+   * Keeps the result and failure of the callback and counts its calls.
+   */
+  private static final class Result<T> implements Callback<T> {
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicReference<T> result = new AtomicReference<T>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    @Override
+    public void onResult(T value, Throwable t) {
+      calls.incrementAndGet();
+      result.set(value);
+      failure.set(t);
+    }
+  }
+
+  @Test
+  public void testFirst() {
+    Result<Integer> result = new Result<Integer>();
+    Subscribers.first(publisher(3, 4), result);
+    assertThat(result.calls.get(), is(1));
+    assertThat(result.result.get(), is(3));
+
+    Result<Integer> empty = new Result<Integer>();
+    Subscribers.first(publisher(), empty);
+    assertThat(empty.calls.get(), is(1));
+    assertThat(empty.result.get(), nullValue());
+  }
+
+  @Test
+  public void testInto() {
+    Result<List<Integer>> result = new Result<List<Integer>>();
+    Subscribers.into(publisher(1, 2, 3), new ArrayList<Integer>(), result);
+    assertThat(result.calls.get(), is(1));
+    assertThat(result.result.get(), is(Arrays.asList(1, 2, 3)));
+    assertThat(result.failure.get(), nullValue());
+  }
+
+  @Test
+  public void testFailingBlockCancels() {
+    final List<Integer> applied = new ArrayList<Integer>();
+    Result<Void> result = new Result<Void>();
+    final IllegalStateException failure = new IllegalStateException();
+    Subscribers.forEach(publisher(1, 2, 3), new Block<Integer>() {
+      @Override
+      public void apply(Integer value) {
+        applied.add(value);
+        if (value == 2) {
+          throw failure;
+        }
+      }
+    }, result);
+    assertThat(result.calls.get(), is(1));
+    assertThat(result.failure.get(), is((Throwable) failure));
+    assertThat(applied, is(Arrays.asList(1, 2)));
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Test;
+
+import site.ycsb.db.RUBiS.UpdatePropagation.Write;
+
+/**
+ * UpdatePropagationTest checks the collections every write operation fans out
+ * to.
+ */
+public class UpdatePropagationTest {
+
+  @After
+  public void resetProperties() {
+    DataModel.setProperties(new Properties());
+  }
+
+  @Test
+  public void testUpdateUserWritesEveryCopy() {
+    assertThat(collections(UpdatePropagation.fanOut("UpdateUser", 1)), is(Arrays.asList("Users", "UsersComments",
+        "ItemsUsers", "ItemsUsersRegions", "BidsUsers", "BidsUsersItems", "ItemsBidsUsers")));
+  }
+
+  @Test
+  public void testPlaceBidWritesEveryCopy() {
+    assertThat(collections(UpdatePropagation.fanOut("PlaceBid", 1)), is(Arrays.asList("Bids", "BidsItems",
+        "BidsUsers", "BidsUsersItems", "ItemsBids", "ItemsBidsUsers")));
+  }
+
+  @Test
+  public void testAddCommentWritesEveryCopy() {
+    assertThat(collections(UpdatePropagation.fanOut("AddComment", 1)),
+        is(Arrays.asList("Comments", "UsersComments", "ItemsComments")));
+  }
+
+  /**
+   * Collections that are not generated hold no copy.
+   */
+  @Test
+  public void testOnlyGeneratedCollections() {
+    Properties props = new Properties();
+    props.setProperty("rubis.collections", "Users,ItemsBidsUsers,Comments");
+    DataModel.setProperties(props);
+
+    assertThat(collections(UpdatePropagation.fanOut("UpdateUser", 1)),
+        is(Arrays.asList("Users", "ItemsBidsUsers")));
+    assertThat(collections(UpdatePropagation.fanOut("AddComment", 1)), is(Arrays.asList("Comments")));
+  }
+
+  @Test
+  public void testUserWithoutItems() {
+    Properties props = new Properties();
+    props.setProperty("rubis.user.items", "0");
+    DataModel.setProperties(props);
+
+    assertNull(UpdatePropagation.fanOut("PlaceBid", 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownOperation() {
+    UpdatePropagation.fanOut("DeleteUser", 1);
+  }
+
+  private static List<String> collections(List<Write> writes) {
+    List<String> collections = new ArrayList<String>();
+    for (Write write : writes) {
+      collections.add(write.collection);
+    }
+    return collections;
+  }
+}
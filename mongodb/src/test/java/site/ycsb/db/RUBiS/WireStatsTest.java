@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020 YCSB contributors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package site.ycsb.db.RUBiS;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Properties;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+
+import site.ycsb.measurements.Measurements;
+
+/**
+ * WireStatsTest provides tests for attributing the command events of the
+ * driver to operations with the {@link WireStats}.
+ */
+public class WireStatsTest {
+
+  private static final ServerId SERVER = new ServerId(new ClusterId(), new ServerAddress());
+
+  private static final ConnectionDescription CONNECTION = new ConnectionDescription(SERVER);
+
+  private static final BsonDocument FIND =
+      new BsonDocument("find", new BsonString("Items")).append("filter", new BsonDocument("_id", new BsonInt32(1)));
+
+  private static final RawBsonDocument REPLY =
+      new RawBsonDocument(new BsonDocument("ok", new BsonInt32(1)), new BsonDocumentCodec());
+
+  @BeforeClass
+  public static void setUp() {
+    Measurements.setProperties(new Properties());
+  }
+
+  private static void send(WireStats stats, long elapsedNanos) {
+    stats.commandStarted(new CommandStartedEvent(1, CONNECTION, "rubis", "find", FIND));
+    stats.commandSucceeded(new CommandSucceededEvent(1, CONNECTION, "find", REPLY, elapsedNanos));
+  }
+
+  /**
+   * The commands between enter and exit are counted for the operation, with
+   * their encoded sizes.
+   */
+  @Test
+  public void testOperation() {
+    WireStats stats = new WireStats(true);
+    assertThat(stats.report(), is(nullValue()));
+
+    stats.enter("ViewItem");
+    send(stats, 2000000);
+    send(stats, 1000000);
+    stats.exit();
+
+    int request = new RawBsonDocument(FIND, new BsonDocumentCodec()).getByteBuffer().remaining();
+    int reply = REPLY.getByteBuffer().remaining();
+    assertThat(stats.report(), containsString("ViewItem: 1 operations, " + 2 * request + " request bytes, "
+        + 2 * reply + " reply bytes, 2 commands, 3 command ms"));
+  }
+
+  /**
+   * Without request bytes the commands are not encoded, the tally of the
+   * operation is returned by exit.
+   */
+  @Test
+  public void testWithoutRequestBytes() {
+    WireStats stats = new WireStats(false);
+    stats.enter("SearchItemsByCategory");
+    send(stats, 1000000);
+    WireStats.Tally tally = stats.exit();
+
+    assertThat(tally.getCommands(), is(1L));
+    assertThat(tally.getReplyBytes(), is((long) REPLY.getByteBuffer().remaining()));
+    assertThat(stats.exit(), is(nullValue()));
+    assertThat(stats.report(), not(containsString("request bytes")));
+  }
+
+  /**
+   * Commands outside of an operation are not counted.
+   */
+  @Test
+  public void testNoOperation() {
+    WireStats stats = new WireStats(false);
+    send(stats, 1000000);
+    stats.enter("Browse");
+    stats.exit();
+    send(stats, 1000000);
+
+    assertThat(stats.report(), containsString("Browse: 1 operations, 0 reply bytes, 0 commands"));
+  }
+
+  /**
+   * The commands of another thread are added to the operation once its forked
+   * tally is joined.
+   */
+  @Test
+  public void testFork() throws InterruptedException {
+    final WireStats stats = new WireStats(false);
+    assertThat(WireStats.fork(), is(nullValue()));
+
+    stats.enter("AboutMe");
+    send(stats, 1000000);
+    final WireStats.Tally tally = WireStats.fork();
+    Thread worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        WireStats.attach(tally);
+        try {
+          send(stats, 1000000);
+          send(stats, 1000000);
+        } finally {
+          WireStats.attach(null);
+        }
+      }
+    });
+    worker.start();
+    worker.join();
+    WireStats.join(tally);
+    stats.exit();
+
+    assertThat(stats.report(), containsString("AboutMe: 1 operations"));
+    assertThat(stats.report(), containsString("3 commands, 3 command ms"));
+  }
+
+  /**
+   * The time between entering and leaving the wait queue of the pool is counted
+   * apart from the command time.
+   */
+  @Test
+  public void testPoolWait() throws InterruptedException {
+    WireStats stats = new WireStats(false);
+    ConnectionPoolListener pool = stats.poolListener();
+
+    stats.enter("PutBid");
+    pool.waitQueueEntered(new ConnectionPoolWaitQueueEnteredEvent(SERVER));
+    Thread.sleep(20);
+    pool.waitQueueExited(new ConnectionPoolWaitQueueExitedEvent(SERVER));
+    send(stats, 1000000);
+    stats.exit();
+
+    assertThat(stats.report(), containsString("PutBid: 1 operations"));
+    assertThat(stats.report(), containsString("1 commands, 1 command ms"));
+    assertThat(stats.report(), not(containsString(", 0 pool wait ms")));
+  }
+}